@@ -0,0 +1,63 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD distance kernel using Vector API (jdk.incubator.vector) - tests as many positions at once,
+ * as the CPU has float lanes; instantiated reflectively by DistanceKernel, when available
+ *
+ * @author martin.ubl
+ */
+class VectorDistanceKernel extends DistanceKernel
+{
+    /** preferred vector shape of this CPU */
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    int selectWithin(float[] xs, float[] ys, int count, float cx, float cy, float radiusSq, int[] out)
+    {
+        int selected = 0;
+        int i = 0;
+        int bound = SPECIES.loopBound(count);
+
+        FloatVector vcx = FloatVector.broadcast(SPECIES, cx);
+        FloatVector vcy = FloatVector.broadcast(SPECIES, cy);
+
+        for (; i < bound; i += SPECIES.length())
+        {
+            FloatVector dx = FloatVector.fromArray(SPECIES, xs, i).sub(vcx);
+            FloatVector dy = FloatVector.fromArray(SPECIES, ys, i).sub(vcy);
+            VectorMask<Float> hit = dx.mul(dx).add(dy.mul(dy)).compare(VectorOperators.LE, radiusSq);
+
+            // most lanes miss, so just walk set bits of the mask
+            long bits = hit.toLong();
+            while (bits != 0)
+            {
+                out[selected++] = i + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+
+        // tail, shorter than vector
+        float dx, dy;
+        for (; i < count; i++)
+        {
+            dx = xs[i] - cx;
+            dy = ys[i] - cy;
+
+            out[selected] = i;
+            selected += (dx * dx + dy * dy <= radiusSq) ? 1 : 0;
+        }
+
+        return selected;
+    }
+
+    @Override
+    String getName()
+    {
+        return "SIMD ("+SPECIES.length()+" lanes)";
+    }
+}
@@ -0,0 +1,573 @@
+package cz.zcu.kiv.ups.agarclient.loadtest;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+
+import cz.zcu.kiv.ups.agarclient.enums.ObjectTypeId;
+import cz.zcu.kiv.ups.agarclient.enums.Opcodes;
+import cz.zcu.kiv.ups.agarclient.main.Main;
+import cz.zcu.kiv.ups.agarclient.network.GamePacket;
+
+/**
+ * Synthetic player - logs in (or registers), joins a room, requests world and then sends
+ * movement and eat requests the same way the game client does. Latency is measured between
+ * request and the response it causes; only one request of each kind is measured at a time
+ *
+ * @author martin.ubl
+ */
+class BotClient extends Connection
+{
+    /** time after which unanswered request is counted as timed out */
+    private static final long PENDING_TIMEOUT_MS = 5000;
+    /** maximum count of attempts to join a room */
+    private static final int JOIN_ATTEMPT_LIMIT = 5;
+    /** movement speed in world units per second */
+    private static final float MOVE_SPEED = 20.0f;
+    /** count of known opcodes */
+    private static final int OPCODE_COUNT = Opcodes.OPCODE_MAX.val() + 1;
+
+    /**
+     * Bot state
+     */
+    enum State
+    {
+        CONNECTING,
+        LOGIN,
+        REGISTER,
+        ROOM_LIST,
+        JOIN,
+        WORLD,
+        PLAYING,
+        FAILED
+    }
+
+    /** bot index */
+    private final int index;
+    /** player name */
+    private final String name;
+    /** load settings */
+    private final LoadGenerator.Settings settings;
+    /** runner owning this bot, collects latencies */
+    private final BotRunner runner;
+    /** random generator */
+    private final Random random;
+
+    /** current state */
+    private State state = State.CONNECTING;
+    /** time of connection attempt (System.nanoTime) */
+    final long startAt;
+
+    /** player ID assigned by server */
+    private int playerId = 0;
+    /** session key assigned by server */
+    private String sessionKey = null;
+    /** count of attempts to join a room */
+    private int joinAttempts = 0;
+
+    /** world width */
+    private float worldWidth = 0.0f;
+    /** world height */
+    private float worldHeight = 0.0f;
+    /** our position X */
+    private float posX = 0.0f;
+    /** our position Y */
+    private float posY = 0.0f;
+    /** our move angle */
+    private float moveAngle = 0.0f;
+    /** are we moving? */
+    private boolean moving = false;
+    /** time of last position update in milliseconds */
+    private long lastMoveTime = 0;
+
+    /** IDs of known world objects, eat request targets */
+    private int[] objectIds = new int[64];
+    /** count of known world objects */
+    private int objectCount = 0;
+
+    /** time of sending measured request (in nanoseconds), indexed by expected response opcode */
+    private final long[] pendingSince = new long[OPCODE_COUNT];
+
+    /** time of next heartbeat in milliseconds */
+    private long nextHeartbeat = 0;
+    /** time of next direction change in milliseconds */
+    private long nextDirection = 0;
+    /** time of next move start/stop in milliseconds */
+    private long nextMoveToggle = 0;
+    /** time of next eat request in milliseconds */
+    private long nextEat = 0;
+
+    /**
+     * Bot constructor
+     * @param channel socket channel, not connected yet
+     * @param index bot index
+     * @param settings load settings
+     * @param runner owning runner
+     * @param startAt time of connection attempt (System.nanoTime)
+     */
+    BotClient(SocketChannel channel, int index, LoadGenerator.Settings settings, BotRunner runner, long startAt)
+    {
+        super(channel);
+
+        this.index = index;
+        this.name = settings.namePrefix + index;
+        this.settings = settings;
+        this.runner = runner;
+        this.random = new Random(settings.seed + index);
+        this.startAt = startAt;
+    }
+
+    /**
+     * Retrieves bot state
+     * @return state
+     */
+    State getState()
+    {
+        return state;
+    }
+
+    /**
+     * Marks bot as failed and closes its connection
+     * @param reason failure description
+     */
+    void fail(String reason)
+    {
+        if (state == State.FAILED)
+            return;
+
+        runner.botFailed(name, state, reason);
+        state = State.FAILED;
+        close();
+    }
+
+    /**
+     * Starts measuring latency of request
+     * @param responseOpcode opcode of expected response
+     * @param now current time in nanoseconds
+     */
+    private void expect(Opcodes responseOpcode, long now)
+    {
+        if (pendingSince[responseOpcode.val()] == 0)
+            pendingSince[responseOpcode.val()] = now;
+    }
+
+    /**
+     * Finishes measuring latency of request, if there's any measured
+     * @param responseOpcode opcode of received response
+     */
+    private void fulfil(int responseOpcode)
+    {
+        long since = pendingSince[responseOpcode];
+        if (since == 0)
+            return;
+
+        pendingSince[responseOpcode] = 0;
+        runner.recordLatency(responseOpcode, (System.nanoTime() - since) / 1000L);
+    }
+
+    /**
+     * Sends packet, fails the bot if the output buffer is full
+     * @param packet packet to be sent
+     */
+    private void sendPacket(GamePacket packet)
+    {
+        if (!send(packet))
+            fail("output buffer full");
+    }
+
+    /**
+     * Called when the connection is established
+     * @param now current time in nanoseconds
+     */
+    void connected(long now)
+    {
+        state = State.LOGIN;
+        sendCredentials(Opcodes.CP_LOGIN, Opcodes.SP_LOGIN_RESPONSE, now);
+    }
+
+    /**
+     * Sends login or register request
+     * @param request request opcode
+     * @param response expected response opcode
+     * @param now current time in nanoseconds
+     */
+    private void sendCredentials(Opcodes request, Opcodes response, long now)
+    {
+        GamePacket gp = GamePacket.obtain(request.val());
+        gp.putString(name);
+        gp.putString(settings.password);
+        gp.putInt(Main.GAME_VERSION);
+        expect(response, now);
+        sendPacket(gp);
+    }
+
+    /**
+     * Sends room list request
+     * @param now current time in nanoseconds
+     */
+    private void sendRoomList(long now)
+    {
+        state = State.ROOM_LIST;
+
+        GamePacket gp = GamePacket.obtain(Opcodes.CP_ROOM_LIST.val());
+        gp.putByte(0); // free for all
+        expect(Opcodes.SP_ROOM_LIST_RESPONSE, now);
+        sendPacket(gp);
+    }
+
+    /**
+     * Sends world request
+     * @param reinit is it world reinitialization?
+     * @param now current time in nanoseconds
+     */
+    private void sendWorldRequest(boolean reinit, long now)
+    {
+        state = State.WORLD;
+
+        GamePacket gp = GamePacket.obtain(Opcodes.CP_WORLD_REQUEST.val());
+        gp.putByte(reinit ? 1 : 0);
+        expect(Opcodes.SP_NEW_WORLD, now);
+        sendPacket(gp);
+    }
+
+    /**
+     * Performs periodic actions - movement and eat requests
+     * @param now current time in nanoseconds
+     */
+    void tick(long now)
+    {
+        // forget requests, which were not answered for too long
+        for (int i = 0; i < OPCODE_COUNT; i++)
+        {
+            if (pendingSince[i] != 0 && (now - pendingSince[i]) / 1000000L > PENDING_TIMEOUT_MS)
+            {
+                pendingSince[i] = 0;
+                runner.recordTimeout(i);
+            }
+        }
+
+        if (state != State.PLAYING)
+            return;
+
+        long nowMs = now / 1000000L;
+        updatePosition(nowMs);
+
+        if (nowMs >= nextDirection)
+        {
+            moveAngle = (float) (random.nextDouble() * 2.0 * Math.PI);
+
+            GamePacket gp = GamePacket.obtain(Opcodes.CP_MOVE_DIRECTION.val());
+            gp.putFloat(moveAngle);
+            sendPacket(gp);
+
+            nextDirection = nowMs + jitter(settings.directionIntervalMs);
+        }
+
+        if (nowMs >= nextMoveToggle)
+        {
+            moving = !moving;
+
+            GamePacket gp = GamePacket.obtain(moving ? Opcodes.CP_MOVE_START.val() : Opcodes.CP_MOVE_STOP.val());
+            gp.putFloat(posX);
+            gp.putFloat(posY);
+            gp.putFloat(moveAngle);
+            sendPacket(gp);
+
+            // bots spend most of the time moving, as players do
+            nextMoveToggle = nowMs + (moving ? 4 : 1) * jitter(settings.directionIntervalMs);
+        }
+
+        if (nowMs >= nextHeartbeat)
+        {
+            GamePacket gp = GamePacket.obtain(Opcodes.CP_MOVE_HEARTBEAT.val());
+            gp.putFloat(posX);
+            gp.putFloat(posY);
+            expect(Opcodes.SP_MOVE_HEARTBEAT, now);
+            sendPacket(gp);
+
+            nextHeartbeat = nowMs + settings.heartbeatIntervalMs;
+        }
+
+        if (settings.eatIntervalMs > 0 && objectCount > 0 && nowMs >= nextEat)
+        {
+            GamePacket gp = GamePacket.obtain(Opcodes.CP_EAT_REQUEST.val());
+            gp.putByte(ObjectTypeId.PACKET_OBJECT_TYPE_WORLDOBJECT.val());
+            gp.putInt(objectIds[random.nextInt(objectCount)]);
+            expect(Opcodes.SP_OBJECT_EATEN, now);
+            sendPacket(gp);
+
+            nextEat = nowMs + jitter(settings.eatIntervalMs);
+        }
+    }
+
+    /**
+     * Retrieves randomized interval
+     * @param base base interval
+     * @return interval in range 0.5 - 1.5 of base interval
+     */
+    private long jitter(long base)
+    {
+        return base / 2 + (long) (random.nextDouble() * base);
+    }
+
+    /**
+     * Moves the player in current direction
+     * @param nowMs current time in milliseconds
+     */
+    private void updatePosition(long nowMs)
+    {
+        if (moving)
+        {
+            float dist = MOVE_SPEED * (nowMs - lastMoveTime) / 1000.0f;
+            posX = Math.max(0.0f, Math.min(worldWidth, posX + (float) Math.cos(moveAngle) * dist));
+            posY = Math.max(0.0f, Math.min(worldHeight, posY + (float) Math.sin(moveAngle) * dist));
+        }
+
+        lastMoveTime = nowMs;
+    }
+
+    /**
+     * Adds world object to eat request targets
+     * @param id object ID
+     */
+    private void addObject(int id)
+    {
+        if (objectCount == objectIds.length)
+        {
+            int[] arr = new int[objectIds.length * 2];
+            System.arraycopy(objectIds, 0, arr, 0, objectCount);
+            objectIds = arr;
+        }
+
+        objectIds[objectCount++] = id;
+    }
+
+    /**
+     * Removes world object from eat request targets
+     * @param id object ID
+     */
+    private void removeObject(int id)
+    {
+        for (int i = 0; i < objectCount; i++)
+        {
+            if (objectIds[i] == id)
+            {
+                objectIds[i] = objectIds[--objectCount];
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skips player info in packet
+     * @param packet packet
+     */
+    private static void skipPlayerInfo(GamePacket packet)
+    {
+        packet.getInt();    // id
+        packet.getString(); // name
+        packet.getInt();    // size
+        packet.getFloat();  // x
+        packet.getFloat();  // y
+        packet.getInt();    // color
+        packet.getByte();   // moving
+        packet.getByte();   // dead
+        packet.getFloat();  // angle
+    }
+
+    /**
+     * Reads players and objects from world packet
+     * @param packet new world or world update packet
+     */
+    private void readWorldContents(GamePacket packet)
+    {
+        int plcount = packet.getInt();
+        for (int i = 0; i < plcount; i++)
+            skipPlayerInfo(packet);
+
+        int objcount = packet.getInt();
+        for (int i = 0; i < objcount; i++)
+        {
+            addObject(packet.getInt());
+            packet.getFloat();  // x
+            packet.getFloat();  // y
+            packet.getByte();   // type
+            packet.getInt();    // param
+        }
+    }
+
+    @Override
+    protected void handlePacket(GamePacket packet) throws IOException
+    {
+        int opcode = packet.getOpcode();
+        long now = System.nanoTime();
+
+        // movement and eat responses are broadcast to all players, only those about us are responses
+        if (opcode != Opcodes.SP_MOVE_HEARTBEAT.val() && opcode != Opcodes.SP_OBJECT_EATEN.val())
+            fulfil(opcode);
+
+        if (opcode == Opcodes.SP_LOGIN_RESPONSE.val())
+        {
+            int rescode = packet.getByte();
+            if (rescode == 0 || rescode == 4)
+            {
+                playerId = packet.getInt();
+                sessionKey = packet.getString();
+
+                if (rescode == 0)
+                    sendRoomList(now);
+                else
+                {
+                    // server suggests session restore, we are still in some room
+                    GamePacket gp = GamePacket.obtain(Opcodes.CP_RESTORE_SESSION.val());
+                    gp.putString(sessionKey);
+                    gp.putInt(playerId);
+                    expect(Opcodes.SP_RESTORE_SESSION_RESPONSE, now);
+                    sendPacket(gp);
+                }
+            }
+            else if (rescode == 1) // no such user
+            {
+                state = State.REGISTER;
+                sendCredentials(Opcodes.CP_REGISTER, Opcodes.SP_REGISTER_RESPONSE, now);
+            }
+            else
+                fail("login refused with code "+rescode);
+        }
+        else if (opcode == Opcodes.SP_REGISTER_RESPONSE.val())
+        {
+            int rescode = packet.getByte();
+            if (rescode != 0)
+            {
+                fail("registration refused with code "+rescode);
+                return;
+            }
+
+            playerId = packet.getInt();
+            sessionKey = packet.getString();
+            sendRoomList(now);
+        }
+        else if (opcode == Opcodes.SP_RESTORE_SESSION_RESPONSE.val())
+        {
+            if (packet.getByte() == 0)
+                sendWorldRequest(true, now);
+            else
+                sendRoomList(now);
+        }
+        else if (opcode == Opcodes.SP_ROOM_LIST_RESPONSE.val())
+            handleRoomList(packet, now);
+        else if (opcode == Opcodes.SP_JOIN_ROOM_RESPONSE.val() || opcode == Opcodes.SP_CREATE_ROOM_RESPONSE.val())
+        {
+            int status = packet.getByte();
+            if (status == 0 || status == 4) // joined, or already in room
+                sendWorldRequest(false, now);
+            else if (++joinAttempts < JOIN_ATTEMPT_LIMIT)
+                sendRoomList(now);
+            else
+                fail("could not join room, last status "+status);
+        }
+        else if (opcode == Opcodes.SP_NEW_WORLD.val())
+        {
+            worldWidth = packet.getFloat();
+            worldHeight = packet.getFloat();
+
+            packet.getInt();    // id
+            packet.getString(); // name
+            packet.getInt();    // size
+            posX = packet.getFloat();
+            posY = packet.getFloat();
+            packet.getInt();    // color
+            moving = (packet.getByte() == 1);
+            packet.getByte();   // dead
+            moveAngle = packet.getFloat();
+
+            objectCount = 0;
+            readWorldContents(packet);
+
+            long nowMs = now / 1000000L;
+            lastMoveTime = nowMs;
+            nextHeartbeat = nowMs + settings.heartbeatIntervalMs;
+            nextDirection = nowMs + jitter(settings.directionIntervalMs);
+            nextMoveToggle = nowMs;
+            nextEat = nowMs + jitter(settings.eatIntervalMs);
+
+            state = State.PLAYING;
+
+            // request stats, as the game client does
+            sendPacket(GamePacket.obtain(Opcodes.CP_STATS.val()));
+        }
+        else if (opcode == Opcodes.SP_UPDATE_WORLD.val())
+            readWorldContents(packet);
+        else if (opcode == Opcodes.SP_NEW_OBJECT.val())
+            addObject(packet.getInt());
+        else if (opcode == Opcodes.SP_MOVE_HEARTBEAT.val())
+        {
+            if (packet.getInt() == playerId)
+                fulfil(opcode);
+        }
+        else if (opcode == Opcodes.SP_OBJECT_EATEN.val())
+        {
+            removeObject(packet.getInt());
+            if (packet.getInt() == playerId)
+                fulfil(opcode);
+        }
+        else if (opcode == Opcodes.SP_DESTROY_OBJECT.val())
+            removeObject(packet.getInt());
+        else if (opcode == Opcodes.SP_PLAYER_EATEN.val())
+        {
+            // we were eaten, start again
+            if (packet.getInt() == playerId)
+                sendWorldRequest(true, now);
+        }
+        else if (opcode == Opcodes.SP_PING.val())
+            sendPacket(GamePacket.obtain(Opcodes.CP_PONG.val()));
+        else if (opcode == Opcodes.SP_KICK.val())
+            fail("kicked by server");
+    }
+
+    /**
+     * Handles room list - joins room with free slot, or creates new one, if there is none
+     * @param packet room list packet
+     * @param now current time in nanoseconds
+     */
+    private void handleRoomList(GamePacket packet, long now)
+    {
+        int roomCount = packet.getInt();
+        int[] freeRooms = new int[roomCount];
+        int freeCount = 0;
+
+        for (int i = 0; i < roomCount; i++)
+        {
+            int id = packet.getInt();
+            packet.getByte(); // game type
+            int players = packet.getByte() & 0xFF;
+            int capacity = packet.getByte() & 0xFF;
+            packet.getString(); // name
+
+            if (players < capacity)
+                freeRooms[freeCount++] = id;
+        }
+
+        GamePacket gp;
+        state = State.JOIN;
+
+        if (freeCount > 0)
+        {
+            // spread bots over available rooms
+            gp = GamePacket.obtain(Opcodes.CP_JOIN_ROOM.val());
+            gp.putInt(freeRooms[index % freeCount]);
+            gp.putByte(0); // not a spectator
+            expect(Opcodes.SP_JOIN_ROOM_RESPONSE, now);
+        }
+        else
+        {
+            gp = GamePacket.obtain(Opcodes.CP_CREATE_ROOM.val());
+            gp.putString("Load "+name);
+            gp.putInt(0); // free for all
+            gp.putInt(settings.roomCapacity);
+            expect(Opcodes.SP_CREATE_ROOM_RESPONSE, now);
+        }
+
+        sendPacket(gp);
+    }
+}
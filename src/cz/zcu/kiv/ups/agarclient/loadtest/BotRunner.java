@@ -0,0 +1,366 @@
+package cz.zcu.kiv.ups.agarclient.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import cz.zcu.kiv.ups.agarclient.enums.Opcodes;
+import cz.zcu.kiv.ups.agarclient.misc.Log;
+
+/**
+ * Drives a group of synthetic players from single thread - all their sockets are
+ * non-blocking and served by one selector, so thousands of players need just a few threads
+ *
+ * @author martin.ubl
+ */
+class BotRunner implements Runnable
+{
+    /** maximum time between two ticks in milliseconds */
+    private static final int TICK_MS = 10;
+    /** count of known opcodes */
+    private static final int OPCODE_COUNT = Opcodes.OPCODE_MAX.val() + 1;
+
+    /** server address */
+    private final InetSocketAddress address;
+    /** selector serving all bot sockets */
+    private final Selector selector;
+    /** bots of this runner */
+    private final List<BotClient> bots = new ArrayList<BotClient>();
+    /** index of first bot, which was not started yet */
+    private int nextToStart = 0;
+
+    /** latency histograms, indexed by response opcode */
+    private final LatencyHistogram[] latency = new LatencyHistogram[OPCODE_COUNT];
+    /** count of timed out requests, indexed by response opcode */
+    private final long[] timeouts = new long[OPCODE_COUNT];
+
+    /** is the runner running? */
+    private volatile boolean running = true;
+
+    /** total count of received packets, published every tick */
+    private volatile long packetsIn = 0;
+    /** total count of sent packets, published every tick */
+    private volatile long packetsOut = 0;
+    /** total count of received bytes, published every tick */
+    private volatile long bytesIn = 0;
+    /** total count of sent bytes, published every tick */
+    private volatile long bytesOut = 0;
+    /** count of bots in playing state, published every tick */
+    private volatile int playingCount = 0;
+    /** count of failed bots, published every tick */
+    private volatile int failedCount = 0;
+
+    /**
+     * Runner constructor
+     * @param address server address
+     * @throws IOException when the selector could not be opened
+     */
+    BotRunner(InetSocketAddress address) throws IOException
+    {
+        this.address = address;
+        this.selector = Selector.open();
+
+        for (int i = 0; i < OPCODE_COUNT; i++)
+            latency[i] = new LatencyHistogram();
+    }
+
+    /**
+     * Adds bot to runner; bots have to be added in order of their start time, before the runner is started
+     * @param index bot index
+     * @param settings load settings
+     * @param startAt time of connection attempt (System.nanoTime)
+     * @throws IOException when the socket could not be opened
+     */
+    void addBot(int index, LoadGenerator.Settings settings, long startAt) throws IOException
+    {
+        bots.add(new BotClient(SocketChannel.open(), index, settings, this, startAt));
+    }
+
+    /**
+     * Stops the runner
+     */
+    void stop()
+    {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Records measured latency
+     * @param responseOpcode response opcode
+     * @param micros latency in microseconds
+     */
+    void recordLatency(int responseOpcode, long micros)
+    {
+        latency[responseOpcode].record(micros);
+    }
+
+    /**
+     * Records timed out request
+     * @param responseOpcode expected response opcode
+     */
+    synchronized void recordTimeout(int responseOpcode)
+    {
+        timeouts[responseOpcode]++;
+    }
+
+    /**
+     * Records bot failure
+     * @param name bot name
+     * @param state state the bot failed in
+     * @param reason failure description
+     */
+    void botFailed(String name, BotClient.State state, String reason)
+    {
+        Log.warn("Bot "+name+" failed in state "+state+": "+reason);
+    }
+
+    /**
+     * Retrieves latency histogram
+     * @param responseOpcode response opcode
+     * @return latency histogram
+     */
+    LatencyHistogram getLatency(int responseOpcode)
+    {
+        return latency[responseOpcode];
+    }
+
+    /**
+     * Retrieves count of timed out requests
+     * @param responseOpcode expected response opcode
+     * @return count of timeouts
+     */
+    synchronized long getTimeouts(int responseOpcode)
+    {
+        return timeouts[responseOpcode];
+    }
+
+    /**
+     * Retrieves total count of received packets
+     * @return packet count
+     */
+    long getPacketsIn()
+    {
+        return packetsIn;
+    }
+
+    /**
+     * Retrieves total count of sent packets
+     * @return packet count
+     */
+    long getPacketsOut()
+    {
+        return packetsOut;
+    }
+
+    /**
+     * Retrieves total count of received bytes
+     * @return byte count
+     */
+    long getBytesIn()
+    {
+        return bytesIn;
+    }
+
+    /**
+     * Retrieves total count of sent bytes
+     * @return byte count
+     */
+    long getBytesOut()
+    {
+        return bytesOut;
+    }
+
+    /**
+     * Retrieves count of bots in playing state
+     * @return bot count
+     */
+    int getPlayingCount()
+    {
+        return playingCount;
+    }
+
+    /**
+     * Retrieves count of failed bots
+     * @return bot count
+     */
+    int getFailedCount()
+    {
+        return failedCount;
+    }
+
+    /**
+     * Retrieves count of all bots
+     * @return bot count
+     */
+    int getBotCount()
+    {
+        return bots.size();
+    }
+
+    /**
+     * Starts connecting bots, whose start time has come
+     * @param now current time in nanoseconds
+     */
+    private void startBots(long now)
+    {
+        while (nextToStart < bots.size() && bots.get(nextToStart).startAt <= now)
+        {
+            BotClient bot = bots.get(nextToStart++);
+
+            try
+            {
+                bot.channel.configureBlocking(false);
+                bot.key = bot.channel.register(selector, SelectionKey.OP_CONNECT, bot);
+                if (bot.channel.connect(address))
+                    connected(bot, now);
+            }
+            catch (IOException e)
+            {
+                bot.fail("could not connect: "+e.toString());
+            }
+        }
+    }
+
+    /**
+     * Finishes bot connection
+     * @param bot connected bot
+     * @param now current time in nanoseconds
+     * @throws IOException on socket error
+     */
+    private void connected(BotClient bot, long now) throws IOException
+    {
+        bot.key.interestOps(SelectionKey.OP_READ);
+        bot.connected(now);
+        bot.flush();
+    }
+
+    /**
+     * Handles socket readiness
+     * @param key selection key
+     */
+    private void handleKey(SelectionKey key)
+    {
+        BotClient bot = (BotClient) key.attachment();
+
+        try
+        {
+            if (key.isConnectable())
+            {
+                bot.channel.finishConnect();
+                connected(bot, System.nanoTime());
+                return;
+            }
+
+            if (key.isReadable() && !bot.read())
+            {
+                bot.fail("connection closed by server");
+                return;
+            }
+
+            if (key.isValid())
+                bot.flush();
+        }
+        catch (IOException e)
+        {
+            bot.fail(e.toString());
+        }
+    }
+
+    /**
+     * Sums counters of all bots and publishes them
+     */
+    private void publishCounters()
+    {
+        long pin = 0, pout = 0, bin = 0, bout = 0;
+        int playing = 0, failed = 0;
+
+        for (BotClient bot : bots)
+        {
+            pin += bot.packetsIn;
+            pout += bot.packetsOut;
+            bin += bot.bytesIn;
+            bout += bot.bytesOut;
+
+            if (bot.getState() == BotClient.State.PLAYING)
+                playing++;
+            else if (bot.getState() == BotClient.State.FAILED)
+                failed++;
+        }
+
+        packetsIn = pin;
+        packetsOut = pout;
+        bytesIn = bin;
+        bytesOut = bout;
+        playingCount = playing;
+        failedCount = failed;
+    }
+
+    @Override
+    public void run()
+    {
+        while (running)
+        {
+            long now = System.nanoTime();
+            startBots(now);
+
+            try
+            {
+                selector.select(TICK_MS);
+            }
+            catch (IOException e)
+            {
+                Log.error("Selector error: "+e.toString());
+                break;
+            }
+
+            Iterator<SelectionKey> itr = selector.selectedKeys().iterator();
+            while (itr.hasNext())
+            {
+                SelectionKey key = itr.next();
+                itr.remove();
+
+                if (key.isValid())
+                    handleKey(key);
+            }
+
+            now = System.nanoTime();
+            for (BotClient bot : bots)
+            {
+                if (bot.getState() == BotClient.State.FAILED || bot.getState() == BotClient.State.CONNECTING)
+                    continue;
+
+                bot.tick(now);
+
+                try
+                {
+                    if (bot.getState() != BotClient.State.FAILED)
+                        bot.flush();
+                }
+                catch (IOException e)
+                {
+                    bot.fail(e.toString());
+                }
+            }
+
+            publishCounters();
+        }
+
+        for (BotClient bot : bots)
+            bot.close();
+
+        try
+        {
+            selector.close();
+        }
+        catch (IOException e)
+        {
+            //
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package cz.zcu.kiv.ups.agarclient.loadtest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import cz.zcu.kiv.ups.agarclient.network.FrameDecoder;
+import cz.zcu.kiv.ups.agarclient.network.GamePacket;
+
+/**
+ * Non-blocking connection used by both synthetic clients and stand-in server; received data
+ * are split to packets by the same frame decoder the game client uses, outgoing packets are
+ * accumulated in output buffer and written when the socket is writable
+ *
+ * @author martin.ubl
+ */
+abstract class Connection
+{
+    /** output buffer size */
+    private static final int OUT_BUFFER_SIZE = 256 * 1024;
+
+    /** socket channel */
+    protected final SocketChannel channel;
+    /** selection key of channel */
+    protected SelectionKey key;
+
+    /** decoder of received data */
+    private final FrameDecoder decoder = new FrameDecoder(FrameDecoder.MAX_FRAME_SIZE);
+    /** output buffer, in "write mode" */
+    private final ByteBuffer outBuffer = ByteBuffer.allocate(OUT_BUFFER_SIZE);
+
+    /** count of received packets */
+    long packetsIn = 0;
+    /** count of sent packets */
+    long packetsOut = 0;
+    /** count of received bytes */
+    long bytesIn = 0;
+    /** count of sent bytes */
+    long bytesOut = 0;
+
+    /**
+     * Connection constructor
+     * @param channel socket channel
+     */
+    protected Connection(SocketChannel channel)
+    {
+        this.channel = channel;
+    }
+
+    /**
+     * Handles received packet
+     * @param packet packet view, valid only during this call
+     * @throws IOException when the connection should be closed
+     */
+    protected abstract void handlePacket(GamePacket packet) throws IOException;
+
+    /**
+     * Appends packet to output buffer and returns it to pool
+     * @param packet packet to be sent
+     * @return was there enough space in output buffer?
+     */
+    protected boolean send(GamePacket packet)
+    {
+        ByteBuffer raw = packet.getRaw();
+        boolean fits = raw.remaining() <= outBuffer.remaining();
+
+        if (fits)
+        {
+            bytesOut += raw.remaining();
+            packetsOut++;
+            outBuffer.put(raw);
+        }
+
+        packet.recycle();
+        return fits;
+    }
+
+    /**
+     * Writes as much of output buffer as the socket accepts; waits for writability
+     * if something is left
+     * @throws IOException on write error
+     */
+    protected void flush() throws IOException
+    {
+        if (outBuffer.position() > 0)
+        {
+            outBuffer.flip();
+            channel.write(outBuffer);
+            outBuffer.compact();
+        }
+
+        if (key != null && key.isValid())
+        {
+            int ops = outBuffer.position() > 0 ? (SelectionKey.OP_READ | SelectionKey.OP_WRITE) : SelectionKey.OP_READ;
+            if (key.interestOps() != ops)
+                key.interestOps(ops);
+        }
+    }
+
+    /**
+     * Reads available data and handles all completely received packets
+     * @return false, if the connection was closed by remote side
+     * @throws IOException on read error
+     */
+    protected boolean read() throws IOException
+    {
+        int rd = channel.read(decoder.getBuffer());
+        if (rd < 0)
+            return false;
+
+        bytesIn += rd;
+
+        while (decoder.hasCompletePacket())
+        {
+            packetsIn++;
+            handlePacket(decoder.nextPacket());
+        }
+
+        decoder.compact();
+        return true;
+    }
+
+    /**
+     * Closes connection
+     */
+    protected void close()
+    {
+        if (key != null)
+            key.cancel();
+
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            //
+        }
+    }
+}
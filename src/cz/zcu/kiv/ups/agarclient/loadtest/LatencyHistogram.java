@@ -0,0 +1,181 @@
+package cz.zcu.kiv.ups.agarclient.loadtest;
+
+/**
+ * Histogram of latencies in microseconds. Buckets are log-linear - every power of two range
+ * is split to 32 sub-buckets, so the relative error of reported percentiles is about 3 %
+ * regardless of magnitude, and recording is just a few arithmetic operations
+ *
+ * @author martin.ubl
+ */
+public class LatencyHistogram
+{
+    /** sub-bucket count bits */
+    private static final int SUB_BITS = 5;
+    /** count of sub-buckets in every power of two range */
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    /** highest exponent tracked - values above 2^40 us (~12 days) are clamped */
+    private static final int MAX_EXPONENT = 40;
+    /** total bucket count */
+    private static final int BUCKET_COUNT = 2 * SUB_COUNT + (MAX_EXPONENT - SUB_BITS) * SUB_COUNT;
+
+    /** bucket counts */
+    private final long[] buckets = new long[BUCKET_COUNT];
+    /** total count of recorded values */
+    private long count = 0;
+    /** sum of recorded values */
+    private long sum = 0;
+    /** minimum recorded value */
+    private long min = Long.MAX_VALUE;
+    /** maximum recorded value */
+    private long max = 0;
+
+    /**
+     * Computes bucket index of given value
+     * @param value value
+     * @return bucket index
+     */
+    private static int bucketIndex(long value)
+    {
+        // values lower than 2*SUB_COUNT have their own bucket
+        if (value < 2 * SUB_COUNT)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT)
+            return BUCKET_COUNT - 1;
+
+        int shift = exponent - SUB_BITS;
+        return 2 * SUB_COUNT + (exponent - SUB_BITS - 1) * SUB_COUNT + (int) ((value >> shift) - SUB_COUNT);
+    }
+
+    /**
+     * Computes highest value falling into bucket with given index
+     * @param index bucket index
+     * @return highest value of bucket
+     */
+    private static long bucketHighValue(int index)
+    {
+        if (index < 2 * SUB_COUNT)
+            return index;
+
+        int exponent = (index - 2 * SUB_COUNT) / SUB_COUNT + SUB_BITS + 1;
+        int sub = (index - 2 * SUB_COUNT) % SUB_COUNT + SUB_COUNT;
+        int shift = exponent - SUB_BITS;
+
+        return (((long) sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Records single value
+     * @param micros latency in microseconds
+     */
+    public synchronized void record(long micros)
+    {
+        if (micros < 0)
+            micros = 0;
+
+        buckets[bucketIndex(micros)]++;
+        count++;
+        sum += micros;
+        if (micros < min)
+            min = micros;
+        if (micros > max)
+            max = micros;
+    }
+
+    /**
+     * Adds all values recorded in other histogram
+     * @param other histogram to be added
+     */
+    public void add(LatencyHistogram other)
+    {
+        LatencyHistogram copy = other.copy();
+
+        synchronized (this)
+        {
+            for (int i = 0; i < BUCKET_COUNT; i++)
+                buckets[i] += copy.buckets[i];
+
+            count += copy.count;
+            sum += copy.sum;
+            min = Math.min(min, copy.min);
+            max = Math.max(max, copy.max);
+        }
+    }
+
+    /**
+     * Creates copy of this histogram
+     * @return copy
+     */
+    public synchronized LatencyHistogram copy()
+    {
+        LatencyHistogram h = new LatencyHistogram();
+        System.arraycopy(buckets, 0, h.buckets, 0, BUCKET_COUNT);
+        h.count = count;
+        h.sum = sum;
+        h.min = min;
+        h.max = max;
+        return h;
+    }
+
+    /**
+     * Retrieves count of recorded values
+     * @return count of values
+     */
+    public synchronized long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Retrieves mean of recorded values
+     * @return mean value
+     */
+    public synchronized double getMean()
+    {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    /**
+     * Retrieves minimum recorded value
+     * @return minimum value
+     */
+    public synchronized long getMin()
+    {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * Retrieves maximum recorded value
+     * @return maximum value
+     */
+    public synchronized long getMax()
+    {
+        return max;
+    }
+
+    /**
+     * Retrieves value at given percentile
+     * @param percentile percentile (0 - 100)
+     * @return value, which given percentage of recorded values does not exceed
+     */
+    public synchronized long getPercentile(double percentile)
+    {
+        if (count == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(percentile / 100.0 * count);
+        if (rank < 1)
+            rank = 1;
+
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += buckets[i];
+            if (seen >= rank)
+                return Math.min(bucketHighValue(i), max);
+        }
+
+        return max;
+    }
+}
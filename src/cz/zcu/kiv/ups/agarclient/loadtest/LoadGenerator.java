@@ -0,0 +1,375 @@
+package cz.zcu.kiv.ups.agarclient.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import cz.zcu.kiv.ups.agarclient.enums.Opcodes;
+import cz.zcu.kiv.ups.agarclient.main.Main;
+import cz.zcu.kiv.ups.agarclient.misc.Log;
+
+/**
+ * Headless load generator - connects given count of synthetic players to game server, lets
+ * them play and reports throughput and latency percentiles. With --standin option, a local
+ * stand-in server is started, so the load generator can be run offline
+ *
+ * Usage: java -cp agarclient.jar cz.zcu.kiv.ups.agarclient.loadtest.LoadGenerator [options]
+ *
+ * @author martin.ubl
+ */
+public class LoadGenerator
+{
+    /** count of known opcodes */
+    private static final int OPCODE_COUNT = Opcodes.OPCODE_MAX.val() + 1;
+    /** reported latency percentiles */
+    private static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+
+    /**
+     * Load settings
+     */
+    static class Settings
+    {
+        /** server host */
+        String host = Main.DEFAULT_HOST;
+        /** server port */
+        int port = Main.DEFAULT_PORT;
+        /** should the stand-in server be started? */
+        boolean standIn = false;
+        /** count of synthetic players */
+        int bots = 50;
+        /** count of threads driving players */
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        /** test duration in seconds */
+        int durationSec = 60;
+        /** delay between connecting two players in milliseconds */
+        long rampMs = 20;
+        /** heartbeat interval in milliseconds (same as game client) */
+        long heartbeatIntervalMs = 500;
+        /** average interval between direction changes in milliseconds */
+        long directionIntervalMs = 1500;
+        /** average interval between eat requests in milliseconds, 0 to disable */
+        long eatIntervalMs = 250;
+        /** capacity of rooms created by players */
+        int roomCapacity = 50;
+        /** report interval in seconds */
+        int reportSec = 5;
+        /** player name prefix */
+        String namePrefix = "bot";
+        /** player password */
+        String password = "loadtest";
+        /** random seed */
+        long seed = 42;
+    }
+
+    /**
+     * Prints usage
+     */
+    private static void printUsage()
+    {
+        System.out.println("Options:");
+        System.out.println("  --host <host>         server host (default "+Main.DEFAULT_HOST+")");
+        System.out.println("  --port <port>         server port (default "+Main.DEFAULT_PORT+")");
+        System.out.println("  --standin             start local stand-in server (on --port, 0 for any free port)");
+        System.out.println("  --bots <n>            count of synthetic players");
+        System.out.println("  --threads <n>         count of threads driving players");
+        System.out.println("  --duration <s>        test duration in seconds");
+        System.out.println("  --ramp <ms>           delay between connecting two players");
+        System.out.println("  --heartbeat <ms>      heartbeat interval");
+        System.out.println("  --direction <ms>      average interval between direction changes");
+        System.out.println("  --eat <ms>            average interval between eat requests, 0 to disable");
+        System.out.println("  --room-capacity <n>   capacity of rooms created by players");
+        System.out.println("  --report <s>          report interval");
+        System.out.println("  --name <prefix>       player name prefix");
+        System.out.println("  --password <pwd>      player password");
+        System.out.println("  --seed <n>            random seed");
+    }
+
+    /**
+     * Parses CLI args
+     * @param args CLI args
+     * @return settings, or null if the args are not valid
+     */
+    static Settings parseArgs(String[] args)
+    {
+        Settings s = new Settings();
+
+        try
+        {
+            for (int i = 0; i < args.length; i++)
+            {
+                String arg = args[i];
+
+                if (arg.equals("--standin"))
+                {
+                    s.standIn = true;
+                    continue;
+                }
+
+                if (i + 1 >= args.length)
+                    return null;
+
+                String val = args[++i];
+
+                if (arg.equals("--host"))
+                    s.host = val;
+                else if (arg.equals("--port"))
+                    s.port = Integer.parseInt(val);
+                else if (arg.equals("--bots"))
+                    s.bots = Integer.parseInt(val);
+                else if (arg.equals("--threads"))
+                    s.threads = Math.max(1, Integer.parseInt(val));
+                else if (arg.equals("--duration"))
+                    s.durationSec = Integer.parseInt(val);
+                else if (arg.equals("--ramp"))
+                    s.rampMs = Long.parseLong(val);
+                else if (arg.equals("--heartbeat"))
+                    s.heartbeatIntervalMs = Long.parseLong(val);
+                else if (arg.equals("--direction"))
+                    s.directionIntervalMs = Long.parseLong(val);
+                else if (arg.equals("--eat"))
+                    s.eatIntervalMs = Long.parseLong(val);
+                else if (arg.equals("--room-capacity"))
+                    s.roomCapacity = Integer.parseInt(val);
+                else if (arg.equals("--report"))
+                    s.reportSec = Math.max(1, Integer.parseInt(val));
+                else if (arg.equals("--name"))
+                    s.namePrefix = val;
+                else if (arg.equals("--password"))
+                    s.password = val;
+                else if (arg.equals("--seed"))
+                    s.seed = Long.parseLong(val);
+                else
+                    return null;
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+
+        return s;
+    }
+
+    /**
+     * Computes value at given percentile of samples
+     * @param sorted sorted samples
+     * @param percentile percentile (0 - 100)
+     * @return value at percentile
+     */
+    private static double percentile(double[] sorted, double percentile)
+    {
+        if (sorted.length == 0)
+            return 0.0;
+
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    /**
+     * Formats microseconds as milliseconds
+     * @param micros time in microseconds
+     * @return formatted time
+     */
+    private static String ms(double micros)
+    {
+        return String.format(Locale.ROOT, "%9.2f", micros / 1000.0);
+    }
+
+    /**
+     * Prints final report
+     * @param runners all runners
+     * @param inRates received packets per second in every report interval
+     * @param outRates sent packets per second in every report interval
+     * @param elapsedSec test duration in seconds
+     */
+    private static void printSummary(List<BotRunner> runners, List<Double> inRates, List<Double> outRates, double elapsedSec)
+    {
+        long pin = 0, pout = 0, bin = 0, bout = 0;
+        int bots = 0, playing = 0, failed = 0;
+
+        for (BotRunner r : runners)
+        {
+            pin += r.getPacketsIn();
+            pout += r.getPacketsOut();
+            bin += r.getBytesIn();
+            bout += r.getBytesOut();
+            bots += r.getBotCount();
+            playing += r.getPlayingCount();
+            failed += r.getFailedCount();
+        }
+
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "Players: %d total, %d playing, %d failed", bots, playing, failed));
+        System.out.println(String.format(Locale.ROOT, "Total: in %d packets (%d B), out %d packets (%d B) in %.1f s", pin, bin, pout, bout, elapsedSec));
+
+        double[][] rates = { toSortedArray(inRates), toSortedArray(outRates) };
+        String[] rateNames = { "in", "out" };
+        System.out.println();
+        System.out.println("Throughput [packets/s]      p50       p90       p99       max");
+        for (int i = 0; i < rates.length; i++)
+        {
+            double[] r = rates[i];
+            System.out.println(String.format(Locale.ROOT, "  %-20s %9.1f %9.1f %9.1f %9.1f", rateNames[i],
+                    percentile(r, 50.0), percentile(r, 90.0), percentile(r, 99.0), percentile(r, 100.0)));
+        }
+
+        System.out.println();
+        System.out.println("Latency [ms]                   count  timeouts      mean       p50       p90       p99     p99.9       max");
+
+        String[] names = new String[OPCODE_COUNT];
+        for (Opcodes op : Opcodes.values())
+        {
+            if (names[op.val()] == null)
+                names[op.val()] = op.name();
+        }
+
+        for (int op = 0; op < OPCODE_COUNT; op++)
+        {
+            LatencyHistogram h = new LatencyHistogram();
+            long timeouts = 0;
+            for (BotRunner r : runners)
+            {
+                h.add(r.getLatency(op));
+                timeouts += r.getTimeouts(op);
+            }
+
+            if (h.getCount() == 0 && timeouts == 0)
+                continue;
+
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT, "  %-26s %9d %9d", names[op], h.getCount(), timeouts));
+            sb.append(' ').append(ms(h.getMean()));
+            for (double p : PERCENTILES)
+                sb.append(' ').append(ms(h.getPercentile(p)));
+            sb.append(' ').append(ms(h.getMax()));
+            System.out.println(sb.toString());
+        }
+    }
+
+    /**
+     * Converts list of samples to sorted array
+     * @param samples samples
+     * @return sorted array
+     */
+    private static double[] toSortedArray(List<Double> samples)
+    {
+        double[] arr = new double[samples.size()];
+        for (int i = 0; i < arr.length; i++)
+            arr[i] = samples.get(i);
+        Arrays.sort(arr);
+        return arr;
+    }
+
+    /**
+     * Runs load test
+     * @param s load settings
+     * @throws IOException when the sockets could not be opened
+     * @throws InterruptedException when interrupted while waiting
+     */
+    static void run(Settings s) throws IOException, InterruptedException
+    {
+        StandInServer server = null;
+        Thread serverThread = null;
+
+        if (s.standIn)
+        {
+            server = new StandInServer(s.port);
+            s.port = server.getPort();
+            serverThread = new Thread(server, "Stand-in server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+            Log.info("Stand-in server listening on port "+s.port);
+        }
+
+        InetSocketAddress address = new InetSocketAddress(s.host, s.port);
+        List<BotRunner> runners = new ArrayList<BotRunner>();
+        for (int i = 0; i < s.threads; i++)
+            runners.add(new BotRunner(address));
+
+        // players are started one by one, spread over runners
+        long start = System.nanoTime();
+        for (int i = 0; i < s.bots; i++)
+            runners.get(i % s.threads).addBot(i, s, start + i * s.rampMs * 1000000L);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < runners.size(); i++)
+        {
+            Thread t = new Thread(runners.get(i), "Load runner "+i);
+            t.setDaemon(true);
+            t.start();
+            threads.add(t);
+        }
+
+        Log.info("Load test: "+s.bots+" players on "+s.host+":"+s.port+", "+s.threads+" threads, "+s.durationSec+" s");
+
+        List<Double> inRates = new ArrayList<Double>();
+        List<Double> outRates = new ArrayList<Double>();
+        long lastIn = 0, lastOut = 0, lastBytesIn = 0, lastBytesOut = 0;
+        long lastTime = start;
+        long end = start + s.durationSec * 1000000000L;
+
+        while (System.nanoTime() < end)
+        {
+            Thread.sleep(Math.min(s.reportSec * 1000L, Math.max(1, (end - System.nanoTime()) / 1000000L)));
+
+            long now = System.nanoTime();
+            long pin = 0, pout = 0, bin = 0, bout = 0;
+            int playing = 0, failed = 0;
+            for (BotRunner r : runners)
+            {
+                pin += r.getPacketsIn();
+                pout += r.getPacketsOut();
+                bin += r.getBytesIn();
+                bout += r.getBytesOut();
+                playing += r.getPlayingCount();
+                failed += r.getFailedCount();
+            }
+
+            double sec = (now - lastTime) / 1.0e9;
+            double inRate = (pin - lastIn) / sec;
+            double outRate = (pout - lastOut) / sec;
+            inRates.add(inRate);
+            outRates.add(outRate);
+
+            System.out.println(String.format(Locale.ROOT, "[%5.0f s] playing %d, failed %d | in %.0f pkt/s %.1f kB/s | out %.0f pkt/s %.1f kB/s",
+                    (now - start) / 1.0e9, playing, failed, inRate, (bin - lastBytesIn) / sec / 1024.0, outRate, (bout - lastBytesOut) / sec / 1024.0));
+
+            lastIn = pin;
+            lastOut = pout;
+            lastBytesIn = bin;
+            lastBytesOut = bout;
+            lastTime = now;
+        }
+
+        for (BotRunner r : runners)
+            r.stop();
+        for (Thread t : threads)
+            t.join();
+
+        printSummary(runners, inRates, outRates, (System.nanoTime() - start) / 1.0e9);
+
+        if (server != null)
+            server.stop();
+    }
+
+    /**
+     * Load generator entry point
+     * @param args CLI args
+     * @throws Exception when the test could not be run
+     */
+    public static void main(String[] args) throws Exception
+    {
+        Settings s = parseArgs(args);
+        if (s == null)
+        {
+            printUsage();
+            System.exit(1);
+            return;
+        }
+
+        run(s);
+    }
+}
@@ -0,0 +1,693 @@
+package cz.zcu.kiv.ups.agarclient.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import cz.zcu.kiv.ups.agarclient.enums.ObjectTypeId;
+import cz.zcu.kiv.ups.agarclient.enums.Opcodes;
+import cz.zcu.kiv.ups.agarclient.main.Main;
+import cz.zcu.kiv.ups.agarclient.misc.Log;
+import cz.zcu.kiv.ups.agarclient.network.GamePacket;
+
+/**
+ * Minimal stand-in game server, so the load generator (and the game client) can run offline.
+ * It speaks the same protocol, but keeps only what's needed for answering requests - it
+ * accepts every login, does not check movement or collisions and answers every eat request
+ * for existing object. Heartbeats are echoed back to sender only, other movement packets
+ * are broadcast to the whole room
+ *
+ * @author martin.ubl
+ */
+public class StandInServer implements Runnable
+{
+    /** world width and height */
+    private static final float WORLD_SIZE = 200.0f;
+    /** count of food objects in every room */
+    private static final int FOOD_COUNT = 300;
+    /** count of rooms created on startup */
+    private static final int INITIAL_ROOM_COUNT = 4;
+    /** default room capacity */
+    private static final int DEFAULT_ROOM_CAPACITY = 100;
+    /** initial player size */
+    private static final int PLAYER_INITIAL_SIZE = 10;
+    /** ping interval in milliseconds */
+    private static final long PING_INTERVAL_MS = 2000;
+
+    /** listening socket */
+    private final ServerSocketChannel serverChannel;
+    /** selector serving all sockets */
+    private final Selector selector;
+    /** random generator */
+    private final Random random = new Random(1);
+
+    /** rooms */
+    private final List<Room> rooms = new ArrayList<Room>();
+    /** all connected sessions */
+    private final List<Session> sessions = new ArrayList<Session>();
+    /** next player ID */
+    private int nextPlayerId = 1;
+    /** next object ID */
+    private int nextObjectId = 1;
+
+    /** is the server running? */
+    private volatile boolean running = true;
+
+    /**
+     * Game room with its world
+     */
+    private class Room
+    {
+        /** room ID */
+        final int id;
+        /** room name */
+        final String name;
+        /** room capacity */
+        final int capacity;
+        /** players in room */
+        final List<Session> players = new ArrayList<Session>();
+
+        /** food object IDs */
+        final int[] foodIds = new int[FOOD_COUNT];
+        /** food object X positions */
+        final float[] foodX = new float[FOOD_COUNT];
+        /** food object Y positions */
+        final float[] foodY = new float[FOOD_COUNT];
+
+        /**
+         * Creates room and spawns its food
+         * @param id room ID
+         * @param name room name
+         * @param capacity room capacity
+         */
+        Room(int id, String name, int capacity)
+        {
+            this.id = id;
+            this.name = name;
+            this.capacity = capacity;
+
+            for (int i = 0; i < FOOD_COUNT; i++)
+                spawnFood(i);
+        }
+
+        /**
+         * Places new food object to slot
+         * @param slot food slot
+         */
+        void spawnFood(int slot)
+        {
+            foodIds[slot] = nextObjectId++;
+            foodX[slot] = random.nextFloat() * WORLD_SIZE;
+            foodY[slot] = random.nextFloat() * WORLD_SIZE;
+        }
+
+        /**
+         * Finds slot of food object
+         * @param objectId object ID
+         * @return slot, or -1 if not found
+         */
+        int findFood(int objectId)
+        {
+            for (int i = 0; i < FOOD_COUNT; i++)
+            {
+                if (foodIds[i] == objectId)
+                    return i;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Connected client session
+     */
+    private class Session extends Connection
+    {
+        /** player ID */
+        int playerId = 0;
+        /** player name */
+        String name = "";
+        /** room the player is in */
+        Room room = null;
+        /** player position X */
+        float posX = 0.0f;
+        /** player position Y */
+        float posY = 0.0f;
+        /** player move angle */
+        float moveAngle = 0.0f;
+        /** is player moving? */
+        boolean moving = false;
+        /** player size */
+        int size = PLAYER_INITIAL_SIZE;
+        /** player color */
+        int color = 0;
+        /** time of last ping in milliseconds */
+        long pingSentAt = 0;
+        /** measured latency in milliseconds */
+        int latency = 0;
+
+        /**
+         * Session constructor
+         * @param channel accepted socket channel
+         */
+        Session(SocketChannel channel)
+        {
+            super(channel);
+        }
+
+        @Override
+        protected void handlePacket(GamePacket packet) throws IOException
+        {
+            handleSessionPacket(this, packet);
+        }
+    }
+
+    /**
+     * Creates server listening on given port
+     * @param port port
+     * @throws IOException when the socket could not be bound
+     */
+    public StandInServer(int port) throws IOException
+    {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+
+        selector = Selector.open();
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        for (int i = 0; i < INITIAL_ROOM_COUNT; i++)
+            rooms.add(new Room(i + 1, "Stand-in "+(i + 1), DEFAULT_ROOM_CAPACITY));
+    }
+
+    /**
+     * Retrieves port the server listens on
+     * @return port
+     */
+    public int getPort()
+    {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops the server
+     */
+    public void stop()
+    {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Sends packet to session; sessions, which do not read their data, are disconnected
+     * @param session target session
+     * @param packet packet to be sent
+     */
+    private void send(Session session, GamePacket packet)
+    {
+        if (!session.send(packet))
+        {
+            Log.warn("Stand-in server: player "+session.playerId+" does not read data, disconnecting");
+            disconnect(session);
+        }
+    }
+
+    /**
+     * Writes player info to packet
+     * @param gp packet
+     * @param pl player
+     */
+    private static void putPlayerInfo(GamePacket gp, Session pl)
+    {
+        gp.putInt(pl.playerId);
+        gp.putString(pl.name);
+        gp.putInt(pl.size);
+        gp.putFloat(pl.posX);
+        gp.putFloat(pl.posY);
+        gp.putInt(pl.color);
+        gp.putByte(pl.moving ? 1 : 0);
+        gp.putByte(0); // not dead
+        gp.putFloat(pl.moveAngle);
+    }
+
+    /**
+     * Removes player from room and notifies the rest of room
+     * @param session leaving player
+     */
+    private void leaveRoom(Session session)
+    {
+        Room room = session.room;
+        if (room == null)
+            return;
+
+        room.players.remove(session);
+        session.room = null;
+
+        for (Session pl : new ArrayList<Session>(room.players))
+        {
+            GamePacket gp = GamePacket.obtain(Opcodes.SP_PLAYER_EXIT.val());
+            gp.putInt(session.playerId);
+            gp.putByte(0);
+            send(pl, gp);
+        }
+    }
+
+    /**
+     * Closes session
+     * @param session session to be closed
+     */
+    private void disconnect(Session session)
+    {
+        if (!sessions.remove(session))
+            return;
+
+        session.close();
+        leaveRoom(session);
+    }
+
+    /**
+     * Handles login and register request
+     * @param session requesting session
+     * @param packet request
+     * @param response response opcode
+     */
+    private void handleCredentials(Session session, GamePacket packet, Opcodes response)
+    {
+        String name = packet.getString();
+        packet.getString(); // password
+        int version = packet.getInt();
+
+        GamePacket gp = GamePacket.obtain(response.val());
+
+        if (version != Main.GAME_VERSION)
+            gp.putByte(3);
+        else
+        {
+            session.playerId = nextPlayerId++;
+            session.name = name;
+            session.color = random.nextInt(0xFFFFFF);
+
+            gp.putByte(0);
+            gp.putInt(session.playerId);
+            gp.putString("standin-"+session.playerId);
+        }
+
+        send(session, gp);
+    }
+
+    /**
+     * Joins player to room
+     * @param session joining player
+     * @param room room
+     * @param response response opcode
+     */
+    private void joinRoom(Session session, Room room, Opcodes response)
+    {
+        GamePacket gp = GamePacket.obtain(response.val());
+
+        if (room == null)
+            gp.putByte(3);
+        else if (session.room == room)
+            gp.putByte(4);
+        else if (room.players.size() >= room.capacity)
+            gp.putByte(1);
+        else
+        {
+            leaveRoom(session);
+            room.players.add(session);
+            session.room = room;
+            session.posX = random.nextFloat() * WORLD_SIZE;
+            session.posY = random.nextFloat() * WORLD_SIZE;
+            session.size = PLAYER_INITIAL_SIZE;
+            gp.putByte(0);
+        }
+
+        gp.putInt(room != null ? room.id : 0); // chat channel
+        send(session, gp);
+    }
+
+    /**
+     * Sends world to player
+     * @param session requesting player
+     * @param reinit is it reinitialization?
+     */
+    private void sendWorld(Session session, boolean reinit)
+    {
+        Room room = session.room;
+        if (room == null)
+            return;
+
+        GamePacket gp = GamePacket.obtain(Opcodes.SP_NEW_WORLD.val());
+        gp.putFloat(WORLD_SIZE);
+        gp.putFloat(WORLD_SIZE);
+        putPlayerInfo(gp, session);
+
+        gp.putInt(room.players.size() - 1);
+        for (Session pl : room.players)
+        {
+            if (pl != session)
+                putPlayerInfo(gp, pl);
+        }
+
+        gp.putInt(FOOD_COUNT);
+        for (int i = 0; i < FOOD_COUNT; i++)
+        {
+            gp.putInt(room.foodIds[i]);
+            gp.putFloat(room.foodX[i]);
+            gp.putFloat(room.foodY[i]);
+            gp.putByte(ObjectTypeId.OBJECT_TYPE_IDLEFOOD.val());
+            gp.putInt(0);
+        }
+
+        send(session, gp);
+
+        if (reinit)
+            return;
+
+        for (Session pl : new ArrayList<Session>(room.players))
+        {
+            if (pl == session)
+                continue;
+
+            GamePacket np = GamePacket.obtain(Opcodes.SP_NEW_PLAYER.val());
+            putPlayerInfo(np, session);
+            send(pl, np);
+        }
+    }
+
+    /**
+     * Sends movement packet to all other players in room
+     * @param session moving player
+     * @param opcode movement opcode
+     * @param withAngle should the angle be sent?
+     * @param withPosition should the position be sent?
+     */
+    private void broadcastMove(Session session, Opcodes opcode, boolean withAngle, boolean withPosition)
+    {
+        if (session.room == null)
+            return;
+
+        for (Session pl : new ArrayList<Session>(session.room.players))
+        {
+            if (pl == session)
+                continue;
+
+            GamePacket gp = GamePacket.obtain(opcode.val());
+            gp.putInt(session.playerId);
+            if (withPosition)
+            {
+                gp.putFloat(session.posX);
+                gp.putFloat(session.posY);
+            }
+            if (withAngle)
+                gp.putFloat(session.moveAngle);
+            send(pl, gp);
+        }
+    }
+
+    /**
+     * Handles eat request - every existing food object is eaten and respawned elsewhere
+     * @param session eating player
+     * @param packet request
+     */
+    private void handleEatRequest(Session session, GamePacket packet)
+    {
+        int type = packet.getByte();
+        int objectId = packet.getInt();
+
+        Room room = session.room;
+        if (room == null || type != ObjectTypeId.PACKET_OBJECT_TYPE_WORLDOBJECT.val())
+            return;
+
+        int slot = room.findFood(objectId);
+        if (slot < 0)
+            return;
+
+        session.size++;
+        room.spawnFood(slot);
+
+        for (Session pl : new ArrayList<Session>(room.players))
+        {
+            GamePacket gp = GamePacket.obtain(Opcodes.SP_OBJECT_EATEN.val());
+            gp.putInt(objectId);
+            gp.putInt(session.playerId);
+            gp.putInt(1);
+            send(pl, gp);
+
+            gp = GamePacket.obtain(Opcodes.SP_NEW_OBJECT.val());
+            gp.putInt(room.foodIds[slot]);
+            gp.putFloat(room.foodX[slot]);
+            gp.putFloat(room.foodY[slot]);
+            gp.putByte(ObjectTypeId.OBJECT_TYPE_IDLEFOOD.val());
+            gp.putInt(0);
+            send(pl, gp);
+        }
+    }
+
+    /**
+     * Handles packet received from session
+     * @param session session
+     * @param packet received packet
+     */
+    private void handleSessionPacket(Session session, GamePacket packet)
+    {
+        int opcode = packet.getOpcode();
+
+        if (opcode == Opcodes.CP_LOGIN.val())
+            handleCredentials(session, packet, Opcodes.SP_LOGIN_RESPONSE);
+        else if (opcode == Opcodes.CP_REGISTER.val())
+            handleCredentials(session, packet, Opcodes.SP_REGISTER_RESPONSE);
+        else if (opcode == Opcodes.CP_RESTORE_SESSION.val())
+        {
+            // sessions are not kept
+            GamePacket gp = GamePacket.obtain(Opcodes.SP_RESTORE_SESSION_RESPONSE.val());
+            gp.putByte(1);
+            send(session, gp);
+        }
+        else if (opcode == Opcodes.CP_ROOM_LIST.val())
+        {
+            GamePacket gp = GamePacket.obtain(Opcodes.SP_ROOM_LIST_RESPONSE.val());
+            gp.putInt(rooms.size());
+            for (Room room : rooms)
+            {
+                gp.putInt(room.id);
+                gp.putByte(0); // free for all
+                gp.putByte(Math.min(room.players.size(), 255));
+                gp.putByte(Math.min(room.capacity, 255));
+                gp.putString(room.name);
+            }
+            send(session, gp);
+        }
+        else if (opcode == Opcodes.CP_JOIN_ROOM.val())
+        {
+            int roomId = packet.getInt();
+            Room target = null;
+            for (Room room : rooms)
+            {
+                if (room.id == roomId)
+                    target = room;
+            }
+            joinRoom(session, target, Opcodes.SP_JOIN_ROOM_RESPONSE);
+        }
+        else if (opcode == Opcodes.CP_CREATE_ROOM.val())
+        {
+            String name = packet.getString();
+            packet.getInt(); // game type
+            int capacity = packet.getInt();
+
+            Room room = new Room(rooms.size() + 1, name, Math.max(1, Math.min(capacity, 255)));
+            rooms.add(room);
+            joinRoom(session, room, Opcodes.SP_CREATE_ROOM_RESPONSE);
+        }
+        else if (opcode == Opcodes.CP_WORLD_REQUEST.val())
+            sendWorld(session, packet.getByte() == 1);
+        else if (opcode == Opcodes.CP_MOVE_HEARTBEAT.val())
+        {
+            session.posX = packet.getFloat();
+            session.posY = packet.getFloat();
+
+            GamePacket gp = GamePacket.obtain(Opcodes.SP_MOVE_HEARTBEAT.val());
+            gp.putInt(session.playerId);
+            gp.putFloat(session.posX);
+            gp.putFloat(session.posY);
+            send(session, gp);
+        }
+        else if (opcode == Opcodes.CP_MOVE_DIRECTION.val())
+        {
+            session.moveAngle = packet.getFloat();
+            broadcastMove(session, Opcodes.SP_MOVE_DIRECTION, true, false);
+        }
+        else if (opcode == Opcodes.CP_MOVE_START.val() || opcode == Opcodes.CP_MOVE_STOP.val())
+        {
+            session.posX = packet.getFloat();
+            session.posY = packet.getFloat();
+            session.moveAngle = packet.getFloat();
+            session.moving = (opcode == Opcodes.CP_MOVE_START.val());
+
+            if (session.moving)
+                broadcastMove(session, Opcodes.SP_MOVE_START, true, false);
+            else
+                broadcastMove(session, Opcodes.SP_MOVE_STOP, false, true);
+        }
+        else if (opcode == Opcodes.CP_EAT_REQUEST.val())
+            handleEatRequest(session, packet);
+        else if (opcode == Opcodes.CP_STATS.val() && session.room != null)
+        {
+            GamePacket gp = GamePacket.obtain(Opcodes.SP_STATS_RESPONSE.val());
+            gp.putInt(session.room.players.size());
+            for (Session pl : session.room.players)
+            {
+                gp.putString(pl.name);
+                gp.putInt(pl.size);
+                gp.putInt(pl.latency);
+            }
+            send(session, gp);
+        }
+        else if (opcode == Opcodes.CP_PONG.val())
+        {
+            session.latency = (int) (System.currentTimeMillis() - session.pingSentAt);
+
+            GamePacket gp = GamePacket.obtain(Opcodes.SP_PING_PONG.val());
+            gp.putInt(session.latency);
+            send(session, gp);
+        }
+        else if (opcode == Opcodes.CP_PLAYER_EXIT.val())
+            leaveRoom(session);
+    }
+
+    /**
+     * Sends ping to all sessions
+     */
+    private void sendPings()
+    {
+        long now = System.currentTimeMillis();
+
+        for (Session session : new ArrayList<Session>(sessions))
+        {
+            session.pingSentAt = now;
+            send(session, GamePacket.obtain(Opcodes.SP_PING.val()));
+        }
+    }
+
+    /**
+     * Accepts all pending connections
+     * @throws IOException on socket error
+     */
+    private void accept() throws IOException
+    {
+        SocketChannel ch;
+        while ((ch = serverChannel.accept()) != null)
+        {
+            ch.configureBlocking(false);
+
+            Session session = new Session(ch);
+            session.key = ch.register(selector, SelectionKey.OP_READ, session);
+            sessions.add(session);
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        long nextPing = System.currentTimeMillis() + PING_INTERVAL_MS;
+
+        while (running)
+        {
+            try
+            {
+                selector.select(PING_INTERVAL_MS);
+            }
+            catch (IOException e)
+            {
+                Log.error("Stand-in server selector error: "+e.toString());
+                break;
+            }
+
+            Iterator<SelectionKey> itr = selector.selectedKeys().iterator();
+            while (itr.hasNext())
+            {
+                SelectionKey key = itr.next();
+                itr.remove();
+
+                if (!key.isValid())
+                    continue;
+
+                if (key.isAcceptable())
+                {
+                    try
+                    {
+                        accept();
+                    }
+                    catch (IOException e)
+                    {
+                        Log.error("Stand-in server accept error: "+e.toString());
+                    }
+                    continue;
+                }
+
+                Session session = (Session) key.attachment();
+                try
+                {
+                    if (key.isReadable() && !session.read())
+                        disconnect(session);
+                }
+                catch (IOException e)
+                {
+                    disconnect(session);
+                }
+            }
+
+            if (System.currentTimeMillis() >= nextPing)
+            {
+                sendPings();
+                nextPing = System.currentTimeMillis() + PING_INTERVAL_MS;
+            }
+
+            // responses of all sessions are written at once, after everything received was handled
+            for (Session session : new ArrayList<Session>(sessions))
+            {
+                try
+                {
+                    session.flush();
+                }
+                catch (IOException e)
+                {
+                    disconnect(session);
+                }
+            }
+        }
+
+        for (Session session : sessions)
+            session.close();
+
+        try
+        {
+            serverChannel.close();
+            selector.close();
+        }
+        catch (IOException e)
+        {
+            //
+        }
+    }
+
+    /**
+     * Runs stand-in server on its own
+     * @param args CLI args - optional port
+     * @throws IOException when the socket could not be bound
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : Main.DEFAULT_PORT;
+
+        StandInServer server = new StandInServer(port);
+        Log.info("Stand-in server listening on port "+server.getPort());
+        server.run();
+    }
+}
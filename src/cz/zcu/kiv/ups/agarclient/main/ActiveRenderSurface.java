@@ -0,0 +1,146 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import java.awt.AWTException;
+import java.awt.BufferCapabilities;
+import java.awt.Canvas;
+import java.awt.Graphics2D;
+import java.awt.ImageCapabilities;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+
+import cz.zcu.kiv.ups.agarclient.misc.Log;
+
+/**
+ * Surface for active rendering - heavyweight canvas with multi-buffered BufferStrategy, painted
+ * directly by game loop thread instead of waiting for Swing to schedule repaint. Enabled by
+ * system property -Dagarclient.render=active; -Dagarclient.buffers sets count of buffers (2 - 3)
+ *
+ * @author martin.ubl
+ */
+public class ActiveRenderSurface extends Canvas
+{
+    private static final long serialVersionUID = 1L;
+
+    /** name of system property selecting rendering mode */
+    public static final String RENDER_PROPERTY_NAME = "agarclient.render";
+    /** name of system property with count of buffers */
+    public static final String BUFFERS_PROPERTY_NAME = "agarclient.buffers";
+    /** name of system property enabling vertical synchronization */
+    public static final String VSYNC_PROPERTY_NAME = "agarclient.vsync";
+
+    /** count of buffers */
+    private final int bufferCount;
+    /** should page flipping be requested? */
+    private final boolean vsync;
+    /** buffer strategy, created when the surface becomes displayable */
+    private BufferStrategy strategy = null;
+
+    /**
+     * Creates surface
+     */
+    public ActiveRenderSurface()
+    {
+        bufferCount = Math.min(Math.max(Integer.getInteger(BUFFERS_PROPERTY_NAME, 2), 2), 3);
+        vsync = isVsyncEnabled();
+
+        // we paint it ourselves, and keys are handled by window
+        setIgnoreRepaint(true);
+        setFocusable(false);
+    }
+
+    /**
+     * Is active rendering selected?
+     * @return use active rendering?
+     */
+    public static boolean isActiveRenderingEnabled()
+    {
+        return "active".equalsIgnoreCase(System.getProperty(RENDER_PROPERTY_NAME, "passive"));
+    }
+
+    /**
+     * Is vertical synchronization requested?
+     * @return use vsync?
+     */
+    public static boolean isVsyncEnabled()
+    {
+        return Boolean.getBoolean(VSYNC_PROPERTY_NAME);
+    }
+
+    /**
+     * Creates buffer strategy, when possible
+     * @return is buffer strategy ready?
+     */
+    private boolean ensureStrategy()
+    {
+        if (strategy != null)
+            return true;
+
+        // buffer strategy needs native peer
+        if (!isDisplayable())
+            return false;
+
+        if (vsync)
+        {
+            // page flipping swaps buffers on vertical retrace, where the platform supports it
+            ImageCapabilities accelerated = new ImageCapabilities(true);
+            try
+            {
+                createBufferStrategy(bufferCount, new BufferCapabilities(accelerated, accelerated, BufferCapabilities.FlipContents.UNDEFINED));
+            }
+            catch (AWTException e)
+            {
+                Log.warn("Page flipping not available, using blitting: "+e.getMessage());
+                createBufferStrategy(bufferCount);
+            }
+        }
+        else
+            createBufferStrategy(bufferCount);
+
+        strategy = getBufferStrategy();
+        Log.info("Active rendering with "+bufferCount+" buffers"+(strategy.getCapabilities().isPageFlipping() ? ", page flipping" : ""));
+
+        return true;
+    }
+
+    /**
+     * Renders single frame using game canvas as a painter - called from game loop thread
+     * @param painter game canvas
+     */
+    void renderFrame(GameCanvas painter)
+    {
+        try
+        {
+            if (!ensureStrategy())
+                return;
+
+            // buffer contents may be lost (e.g. display mode change) at any time; repeat until it's shown
+            do
+            {
+                do
+                {
+                    Graphics2D g2 = (Graphics2D) strategy.getDrawGraphics();
+                    try
+                    {
+                        painter.doPaint(g2, getWidth(), getHeight());
+                    }
+                    finally
+                    {
+                        g2.dispose();
+                    }
+                }
+                while (strategy.contentsRestored());
+
+                strategy.show();
+            }
+            while (strategy.contentsLost());
+
+            // flush the pipeline, so the frame is on screen now and not when the system decides
+            Toolkit.getDefaultToolkit().sync();
+        }
+        catch (IllegalStateException e)
+        {
+            // the surface was removed from window in the meantime
+            strategy = null;
+        }
+    }
+}
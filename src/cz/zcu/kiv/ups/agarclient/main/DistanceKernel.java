@@ -0,0 +1,73 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import cz.zcu.kiv.ups.agarclient.misc.Log;
+
+/**
+ * Batch distance test - selects positions within radius from given point. Used for whole
+ * buckets of spatial index at once, so the positions are read from two contiguous arrays.
+ * The SIMD implementation (Vector API) is optional, it is built by "build-vector" Ant target
+ * on Java 16+, and used when the application runs with --add-modules jdk.incubator.vector;
+ * otherwise, the scalar implementation is used
+ *
+ * @author martin.ubl
+ */
+abstract class DistanceKernel
+{
+    /** name of system property, which disables SIMD implementation, when set to false */
+    static final String PROPERTY_NAME = "agarclient.simd";
+    /** class name of SIMD implementation */
+    private static final String VECTOR_KERNEL_CLASS = "cz.zcu.kiv.ups.agarclient.main.VectorDistanceKernel";
+
+    /** kernel instance used */
+    private static final DistanceKernel INSTANCE = create();
+
+    /**
+     * Retrieves kernel instance to be used
+     * @return kernel instance
+     */
+    static DistanceKernel getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Creates the best available kernel
+     * @return kernel instance
+     */
+    private static DistanceKernel create()
+    {
+        if (!Boolean.parseBoolean(System.getProperty(PROPERTY_NAME, "true")))
+            return new ScalarDistanceKernel();
+
+        try
+        {
+            DistanceKernel kernel = (DistanceKernel) Class.forName(VECTOR_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+            Log.info("Using "+kernel.getName()+" distance kernel");
+            return kernel;
+        }
+        catch (ReflectiveOperationException | LinkageError e)
+        {
+            // not built, or the incubator module was not added at runtime
+            return new ScalarDistanceKernel();
+        }
+    }
+
+    /**
+     * Selects positions within radius (including its border) from given point
+     * @param xs positions X
+     * @param ys positions Y
+     * @param count count of positions to test
+     * @param cx point X
+     * @param cy point Y
+     * @param radiusSq squared radius
+     * @param out array to store indices of selected positions to; has to hold at least count elements
+     * @return count of selected positions
+     */
+    abstract int selectWithin(float[] xs, float[] ys, int count, float cx, float cy, float radiusSq, int[] out);
+
+    /**
+     * Retrieves kernel name
+     * @return kernel name
+     */
+    abstract String getName();
+}
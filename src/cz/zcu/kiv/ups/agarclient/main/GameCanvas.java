@@ -5,17 +5,16 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.Toolkit;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
 import java.util.List;
 
 import javax.swing.JPanel;
-import javax.swing.Timer;
 
 import cz.zcu.kiv.ups.agarclient.enums.ObjectTypeId;
 import cz.zcu.kiv.ups.agarclient.enums.Opcodes;
+import cz.zcu.kiv.ups.agarclient.misc.Log;
 import cz.zcu.kiv.ups.agarclient.network.GamePacket;
 import cz.zcu.kiv.ups.agarclient.network.Networking;
 
@@ -24,21 +23,19 @@ import cz.zcu.kiv.ups.agarclient.network.Networking;
  *
  * @author martin.ubl
  */
-public strictfp class GameCanvas extends JPanel implements ActionListener
+public strictfp class GameCanvas extends JPanel
 {
     private static final long serialVersionUID = 1L;
 
-    /** Update timer */
-    private Timer timer;
-    /** Update timer delay */
-    private final int DELAY = 10;
-    /** Last update time to determine change multiplier */
-    private long lastUpdateTime = 0;
-    /** Last update of movement to server */
+    /** Game loop driving simulation and rendering */
+    private GameLoop gameLoop = null;
+    /** Simulation time in milliseconds, advanced by fixed steps */
+    private long simulationTime = 0;
+    /** Last update of movement to server (simulation time) */
     private long lastHeartbeatTime = 0;
-    /** Last update of eatable objects */
+    /** Last update of eatable objects (simulation time) */
     private long lastEatCheckTime = 0;
-    /** Flag for changing movement angle */
+    /** Flag for changing movement angle (accessed with playerObjectLock held) */
     private boolean movementAngleChanged = false;
 
     /** Coefficient for server-side position values to convert them to drawable units */
@@ -49,17 +46,41 @@ public strictfp class GameCanvas extends JPanel implements ActionListener
     private static final long EATBEAT_TIME_DELAY = 10;
     /** Player size coefficient */
     public static final float PLAYER_SIZE_COEF = 0.3f;
+    /** Colours of food density tiles, from sparse (single food) to dense */
+    private static final Color[] TILE_COLORS = createTileColors(16);
 
     /** Movement flags - up, left, down, right */
     private static boolean moveDirFlags[] = { false, false, false, false };
 
     /** Flag for "we have been eaten" */
-    private boolean weAreDead = false;
+    private volatile boolean weAreDead = false;
     /** Flag and status for "connection lost" */
-    private int connectionLost = 0;
+    private volatile int connectionLost = 0;
 
     /** parent frame */
     private GameWindow parentFrame = null;
+    /** reused result of eat checks */
+    private final IntersectionBatch eatBatch = new IntersectionBatch();
+    /** pre-rendered discs of objects and players, created by first painted frame */
+    private SpriteCache spriteCache = null;
+    /** camera zoom and level of detail rules */
+    private final LevelOfDetail levelOfDetail = new LevelOfDetail();
+    /** laid out player names and HUD strings */
+    private final TextCache textCache = new TextCache();
+    /** position X (in hundredths) shown in HUD */
+    private int hudPositionX = Integer.MIN_VALUE;
+    /** position Y (in hundredths) shown in HUD */
+    private int hudPositionY = Integer.MIN_VALUE;
+    /** latency shown in HUD */
+    private int hudLatency = Integer.MIN_VALUE;
+    /** HUD string with position and latency */
+    private String hudPositionText = null;
+    /** player count shown in HUD */
+    private int hudPlayerCount = Integer.MIN_VALUE;
+    /** HUD string with player count */
+    private String hudPlayerCountText = null;
+    /** surface for active rendering, null when painting through Swing */
+    private ActiveRenderSurface activeSurface = null;
 
     /**
      * Updates local player movement angle
@@ -71,7 +92,27 @@ public strictfp class GameCanvas extends JPanel implements ActionListener
 
         GameStorage gsInst = GameStorage.getInstance();
         LocalPlayer pl = gsInst.getLocalPlayer();
+        if (pl == null)
+            return;
+
+        // movement is simulated by game loop thread
+        GameStorage.playerObjectLock.lock();
+        try
+        {
+            updateMoveAngle(pl);
+        }
+        finally
+        {
+            GameStorage.playerObjectLock.unlock();
+        }
+    }
 
+    /**
+     * Updates local player movement angle; has to be called with playerObjectLock held
+     * @param pl local player
+     */
+    private void updateMoveAngle(LocalPlayer pl)
+    {
         float vx = 0.0f, vy = 0.0f;
 
         // up
@@ -158,9 +199,9 @@ public strictfp class GameCanvas extends JPanel implements ActionListener
 
         GamePacket gp;
         if (moving)
-            gp = new GamePacket(Opcodes.CP_MOVE_START.val());
+            gp = GamePacket.obtain(Opcodes.CP_MOVE_START.val());
         else
-            gp = new GamePacket(Opcodes.CP_MOVE_STOP.val());
+            gp = GamePacket.obtain(Opcodes.CP_MOVE_STOP.val());
 
         gp.putFloat(pl.positionX);
         gp.putFloat(pl.positionY);
@@ -178,7 +219,7 @@ public strictfp class GameCanvas extends JPanel implements ActionListener
         if (weAreDead)
             return;
 
-        GamePacket gp = new GamePacket(Opcodes.CP_MOVE_HEARTBEAT.val());
+        GamePacket gp = GamePacket.obtain(Opcodes.CP_MOVE_HEARTBEAT.val());
 
         gp.putFloat(pl.positionX);
         gp.putFloat(pl.positionY);
@@ -195,13 +236,27 @@ public strictfp class GameCanvas extends JPanel implements ActionListener
         if (weAreDead)
             return;
 
-        GamePacket gp = new GamePacket(Opcodes.CP_MOVE_DIRECTION.val());
+        GamePacket gp = GamePacket.obtain(Opcodes.CP_MOVE_DIRECTION.val());
 
         gp.putFloat(pl.moveAngle);
 
         Networking.getInstance().sendPacket(gp);
     }
 
+    /**
+     * Creates eat request packet
+     * @param objectType type of eaten object (player or world object)
+     * @param id ID of eaten object
+     * @return packet to be sent
+     */
+    private GamePacket createEatRequest(int objectType, int id)
+    {
+        GamePacket gp = GamePacket.obtain(Opcodes.CP_EAT_REQUEST.val());
+        gp.putByte(objectType);
+        gp.putInt(id);
+        return gp;
+    }
+
     /**
      * Initializes game canvas
      * @param fr parent frame
@@ -232,9 +287,9 @@ public strictfp class GameCanvas extends JPanel implements ActionListener
                 // leave game on escape key press
                 if (e.getKeyCode() == KeyEvent.VK_ESCAPE)
                 {
-                    timer.stop();
+                    stopGameLoop();
 
-                    GamePacket leavepkt = new GamePacket(Opcodes.CP_PLAYER_EXIT.val());
+                    GamePacket leavepkt = GamePacket.obtain(Opcodes.CP_PLAYER_EXIT.val());
                     Networking.getInstance().sendPacket(leavepkt);
 
                     parentFrame.returnToLobby();
@@ -256,7 +311,8 @@ public strictfp class GameCanvas extends JPanel implements ActionListener
                 // when we are dead, use space to restart the game
                 if (weAreDead && e.getKeyCode() == KeyEvent.VK_SPACE)
                 {
-                    GameStorage.getInstance().wipeAll();
+                    // storage belongs to game loop; wipe it there, before anything from the new world
+                    parentFrame.requestWipe();
 
                     // this will send "new world" request, just as when the game starts
                     parentFrame.initGame();
@@ -266,9 +322,64 @@ public strictfp class GameCanvas extends JPanel implements ActionListener
         // adds key listener to frame
         fr.addKeyListener(kap);
 
-        // creates timer and starts updating
-        timer = new Timer(DELAY, this);
-        timer.start();
+        // creates game loop and starts updating
+        gameLoop = new GameLoop(this);
+        gameLoop.start();
+    }
+
+    /**
+     * Creates colours of food density tiles - the same hue with growing opacity
+     * @param count count of density levels
+     * @return colours
+     */
+    private static Color[] createTileColors(int count)
+    {
+        Color[] colors = new Color[count];
+        for (int i = 0; i < count; i++)
+            colors[i] = new Color(0, 192, 0, 48 + i * 207 / (count - 1));
+        return colors;
+    }
+
+    /**
+     * Switches to active rendering to given surface; has to be called before initCanvas
+     * @param surface surface to render to
+     */
+    public void setActiveSurface(ActiveRenderSurface surface)
+    {
+        activeSurface = surface;
+    }
+
+    /**
+     * Stops game loop, if running, and waits for it to finish, so nothing is applied to storage
+     * afterwards; must not be called with any storage lock held, the last tick may need it
+     */
+    public void stopGameLoop()
+    {
+        assert !GameStorage.playerObjectLock.isHeldByCurrentThread() && !Thread.holdsLock(GameStorage.gridMapLock)
+                && !Thread.holdsLock(GameStorage.worldObjectLock) : "game loop cannot be stopped with storage lock held";
+
+        if (gameLoop != null)
+        {
+            gameLoop.shutDown();
+
+            if (Thread.currentThread() != gameLoop)
+            {
+                try
+                {
+                    gameLoop.join();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            gameLoop = null;
+
+            Log.info("Rendering finished: "+levelOfDetail.getStatistics());
+            if (spriteCache != null)
+                Log.info("Sprite cache: "+spriteCache.getStatistics());
+        }
     }
 
     @Override
@@ -278,7 +389,7 @@ public strictfp class GameCanvas extends JPanel implements ActionListener
         super.paint(g);
 
         // paint our stuff
-        doPaint((Graphics2D)g);
+        doPaint((Graphics2D)g, getWidth(), getHeight());
 
         // synchronize buffers
         Toolkit.getDefaultToolkit().sync();
@@ -287,8 +398,10 @@ public strictfp class GameCanvas extends JPanel implements ActionListener
     /**
      * Internal method for painting everything we need
      * @param g2 2D graphics object
+     * @param width width of painted area
+     * @param height height of painted area
      */
-    private void doPaint(Graphics2D g2)
+    void doPaint(Graphics2D g2, int width, int height)
     {
         // turn antialiasing on
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
@@ -296,19 +409,19 @@ public strictfp class GameCanvas extends JPanel implements ActionListener
         if (connectionLost > 0)
         {
             g2.setColor(Color.GRAY);
-            g2.fillRect(0, 0, getWidth(), getHeight());
+            g2.fillRect(0, 0, width, height);
 
             g2.setColor(Color.BLACK);
             String toDraw = "Spojení bylo ztraceno";
-            g2.drawString(toDraw, (getWidth() - g2.getFontMetrics().stringWidth(toDraw)) / 2, getHeight() / 2);
+            g2.drawString(toDraw, (width - g2.getFontMetrics().stringWidth(toDraw)) / 2, height / 2);
 
             toDraw = "Pokus o obnovení...";
-            g2.drawString(toDraw, (getWidth() - g2.getFontMetrics().stringWidth(toDraw)) / 2, getHeight() / 2 + 40);
+            g2.drawString(toDraw, (width - g2.getFontMetrics().stringWidth(toDraw)) / 2, height / 2 + 40);
 
             if (connectionLost == 2)
             {
                 toDraw = "Obnovování pozice ve hře...";
-                g2.drawString(toDraw, (getWidth() - g2.getFontMetrics().stringWidth(toDraw)) / 2, getHeight() / 2 + 60);
+                g2.drawString(toDraw, (width - g2.getFontMetrics().stringWidth(toDraw)) / 2, height / 2 + 60);
             }
 
             return;
@@ -318,95 +431,165 @@ public strictfp class GameCanvas extends JPanel implements ActionListener
         if (weAreDead)
         {
             g2.setColor(Color.GRAY);
-            g2.fillRect(0, 0, getWidth(), getHeight());
+            g2.fillRect(0, 0, width, height);
 
             g2.setColor(Color.BLACK);
             String toDraw = "Game Over :-(";
-            g2.drawString(toDraw, (getWidth() - g2.getFontMetrics().stringWidth(toDraw)) / 2, getHeight() / 2);
+            g2.drawString(toDraw, (width - g2.getFontMetrics().stringWidth(toDraw)) / 2, height / 2);
 
             toDraw = "Mezerník - opakovat hru";
-            g2.drawString(toDraw, (getWidth() - g2.getFontMetrics().stringWidth(toDraw)) / 2, getHeight() / 2 + 30);
+            g2.drawString(toDraw, (width - g2.getFontMetrics().stringWidth(toDraw)) / 2, height / 2 + 30);
             toDraw = "Escape - zpátky do lobby";
-            g2.drawString(toDraw, (getWidth() - g2.getFontMetrics().stringWidth(toDraw)) / 2, getHeight() / 2 + 45);
+            g2.drawString(toDraw, (width - g2.getFontMetrics().stringWidth(toDraw)) / 2, height / 2 + 45);
             return;
         }
 
 
         // clear background
         g2.setColor(Color.WHITE);
-        g2.fillRect(0, 0, getWidth(), getHeight());
+        g2.fillRect(0, 0, width, height);
 
-        GameStorage gsInst = GameStorage.getInstance();
         int plsize;
+        SpriteCache.Sprite sprite;
+
+        // renderer works with its own copy of world, so it never blocks storage updates
+        RenderSnapshot snap = GameStorage.getInstance().acquireSnapshot();
+        // world was not applied yet
+        if (!snap.hasLocalPlayer)
+            return;
+
+        textCache.begin(g2);
+
+        long paintStart = System.nanoTime();
+
+        // pixels per world unit, including zoom
+        float scale = snap.scale;
 
-        LocalPlayer pl = gsInst.getLocalPlayer();
         // get reference points
-        float refX = pl.positionX - (getWidth() / 2) / DRAW_UNIT_COEF;
-        float refY = pl.positionY - (getHeight() / 2) / DRAW_UNIT_COEF;
+        float refX = snap.localX - (width / 2) / scale;
+        float refY = snap.localY - (height / 2) / scale;
 
-        // retrieve everything we need to be drawn
-        synchronized (GameStorage.worldObjectLock)
+        // draw density tiles of aggregated idle food
+        if (snap.aggregated)
         {
-            List<WorldObject> wobjs = gsInst.getVisibleObjects();
-
-            // draw all objects
-            for (WorldObject obj : wobjs)
+            int tilePx = (int) Math.ceil(snap.tileSize * scale);
+            int count;
+            for (int row = 0; row < snap.tileRows; row++)
             {
-                if (obj.localIntersect)
-                    continue;
-
-                if (obj.typeId == ObjectTypeId.OBJECT_TYPE_IDLEFOOD.val()) // eatable food
-                    g2.setColor(Color.GREEN);
-                else if (obj.typeId == ObjectTypeId.OBJECT_TYPE_BONUSFOOD.val()) // bonuses
-                    g2.setColor(Color.BLUE);
-                else if (obj.typeId == ObjectTypeId.OBJECT_TYPE_TRAP.val()) // traps
-                    g2.setColor(Color.RED);
+                for (int col = 0; col < snap.tileColumns; col++)
+                {
+                    count = snap.tileCount[row * snap.tileColumns + col];
+                    if (count == 0)
+                        continue;
 
-                g2.fillOval((int)((obj.positionX - refX)*DRAW_UNIT_COEF), (int)((obj.positionY - refY)*DRAW_UNIT_COEF), 5, 5);
+                    g2.setColor(TILE_COLORS[Math.min(count, TILE_COLORS.length) - 1]);
+                    g2.fillRect((int)((snap.tileOriginX + col * snap.tileSize - refX)*scale), (int)((snap.tileOriginY + row * snap.tileSize - refY)*scale), tilePx, tilePx);
+                }
             }
         }
 
-        synchronized (GameStorage.playerObjectLock)
+        // discs are blitted from pre-rendered images, antialiased oval is too expensive to draw per object
+        if (spriteCache == null)
+            spriteCache = new SpriteCache();
+
+        BufferedImage objectSprite;
+
+        // draw all objects; snapshot holds just those within viewport
+        for (int i = 0; i < snap.objectCount; i++)
         {
-            List<PlayerObject> plrs = gsInst.getVisiblePlayers();
+            objectSprite = spriteCache.getObjectSprite(snap.objectType[i]);
+            if (objectSprite == null)
+                continue;
 
-            // draw all players
-            for (PlayerObject plr : plrs)
-            {
-                g2.setColor(new Color(plr.param));
-                plsize = (int)(plr.size * PLAYER_SIZE_COEF);
-                g2.fillOval((int)((plr.positionX - refX)*DRAW_UNIT_COEF) - plsize / 2, (int)((plr.positionY - refY)*DRAW_UNIT_COEF) - plsize / 2, plsize, plsize);
+            g2.drawImage(objectSprite, (int)((snap.objectX[i] - refX)*scale), (int)((snap.objectY[i] - refY)*scale), null);
+        }
 
-                g2.drawString(plr.name, (int)((plr.positionX - refX)*DRAW_UNIT_COEF) - g2.getFontMetrics().stringWidth(plr.name) / 2, (int)((plr.positionY - refY)*DRAW_UNIT_COEF) - plsize / 2 - 4);
-            }
+        // draw all players
+        for (int i = 0; i < snap.playerCount; i++)
+        {
+            plsize = (int)(snap.playerSize[i] * PLAYER_SIZE_COEF * snap.zoom);
+            sprite = spriteCache.getPlayerSprite(snap.playerColor[i], plsize);
+            if (sprite == null)
+                continue;
+
+            g2.drawImage(sprite.image, (int)((snap.playerX[i] - refX)*scale) - sprite.diameter / 2, (int)((snap.playerY[i] - refY)*scale) - sprite.diameter / 2, null);
+
+            // names of tiny players would be just clutter
+            if (!levelOfDetail.isLabelVisible(plsize))
+                continue;
+
+            g2.setColor(sprite.color);
+            textCache.drawCentered(g2, snap.playerName[i], (int)((snap.playerX[i] - refX)*scale), (int)((snap.playerY[i] - refY)*scale) - plsize / 2 - 4);
         }
 
         // paint our player
-        plsize = (int)(pl.size * PLAYER_SIZE_COEF);
-        g2.setColor(new Color(pl.param));
-        g2.fillOval((getWidth() - plsize) / 2, (getHeight() - plsize) / 2, plsize, plsize);
-        g2.drawString(pl.name, (getWidth() - g2.getFontMetrics().stringWidth(pl.name)) / 2, (getHeight() - plsize) / 2 - 4);
+        plsize = (int)(snap.localSize * PLAYER_SIZE_COEF * snap.zoom);
+        sprite = spriteCache.getPlayerSprite(snap.localColor, plsize);
+        if (sprite != null)
+        {
+            g2.drawImage(sprite.image, (width - sprite.diameter) / 2, (height - sprite.diameter) / 2, null);
+            g2.setColor(sprite.color);
+            textCache.drawCentered(g2, snap.localName, width / 2, (height - plsize) / 2 - 4);
+        }
 
         // draw UI
 
         g2.setColor(Color.BLACK);
-        g2.drawString(Math.round(pl.positionX*100.0f)/100.0f+" ; "+Math.round(pl.positionY*100.0f)/100.0f+" ; "+Main.getClientLatency()+"ms", 5, 15);
+        textCache.draw(g2, getHudPositionText(snap.localX, snap.localY), 5, 15);
+        textCache.drawRightAligned(g2, getHudPlayerCountText(), width - 10, 15);
 
-        String toDraw = Main.getPlayerCount() + " " + Main.getCountBasedString(Main.getPlayerCount(), "hráč", "hráči", "hráčů");
-        g2.drawString(toDraw, getWidth() - g2.getFontMetrics().stringWidth(toDraw) - 10, 15);
+        levelOfDetail.recordFrame(snap.aggregated, System.nanoTime() - paintStart);
+    }
+
+    /**
+     * Retrieves HUD string with position and latency; built again just when the shown values change
+     * @param x position X
+     * @param y position Y
+     * @return HUD string
+     */
+    private String getHudPositionText(float x, float y)
+    {
+        int posX = Math.round(x*100.0f);
+        int posY = Math.round(y*100.0f);
+        int latency = Main.getClientLatency();
+
+        if (hudPositionText == null || posX != hudPositionX || posY != hudPositionY || latency != hudLatency)
+        {
+            hudPositionX = posX;
+            hudPositionY = posY;
+            hudLatency = latency;
+            hudPositionText = posX/100.0f+" ; "+posY/100.0f+" ; "+latency+"ms";
+        }
+
+        return hudPositionText;
+    }
+
+    /**
+     * Retrieves HUD string with player count; built again just when the count changes
+     * @return HUD string
+     */
+    private String getHudPlayerCountText()
+    {
+        int count = Main.getPlayerCount();
+
+        if (hudPlayerCountText == null || count != hudPlayerCount)
+        {
+            hudPlayerCount = count;
+            hudPlayerCountText = count + " " + Main.getCountBasedString(count, "hráč", "hráči", "hráčů");
+        }
+
+        return hudPlayerCountText;
     }
 
     /**
      * Updates movement of local player and remote players
+     * @param diff simulated time step in milliseconds
      */
-    private void updateMovement()
+    private void updateMovement(int diff)
     {
         GameStorage gsInst = GameStorage.getInstance();
         LocalPlayer pl = gsInst.getLocalPlayer();
 
-        // calculate millisecond diff between updates
-        int diff = (int)(System.currentTimeMillis() - lastUpdateTime);
-
         // if our player is moving, update movement
         if (pl != null && pl.moving)
         {
@@ -428,21 +611,23 @@ public strictfp class GameCanvas extends JPanel implements ActionListener
 
             gsInst.movePlayer(pl, nx, ny);
 
-            if (System.currentTimeMillis() - lastEatCheckTime > EATBEAT_TIME_DELAY)
+            if (simulationTime - lastEatCheckTime >= EATBEAT_TIME_DELAY)
             {
-                lastEatCheckTime = System.currentTimeMillis();
+                lastEatCheckTime = simulationTime;
+
+                // one query for everything we touch, requests are then enqueued back to back,
+                // so the writer thread sends them in a single write
+                gsInst.collectIntersections(eatBatch);
 
-                WorldObject inters = gsInst.getCurrentIntersectionObject();
-                while (inters != null && !inters.localIntersect)
+                if (!eatBatch.isEmpty())
                 {
-                    GamePacket gp = new GamePacket(Opcodes.CP_EAT_REQUEST.val());
-                    gp.putByte( (inters instanceof PlayerObject) ? ObjectTypeId.PACKET_OBJECT_TYPE_PLAYER.val() : ObjectTypeId.PACKET_OBJECT_TYPE_WORLDOBJECT.val());
-                    gp.putInt(inters.id);
-                    Networking.getInstance().sendPacket(gp);
+                    Networking net = Networking.getInstance();
 
-                    inters.localIntersect = true;
+                    for (int i = 0; i < eatBatch.getObjectCount(); i++)
+                        net.sendPacket(createEatRequest(ObjectTypeId.PACKET_OBJECT_TYPE_WORLDOBJECT.val(), eatBatch.getObjectId(i)));
 
-                    inters = gsInst.getCurrentIntersectionObject();
+                    for (int i = 0; i < eatBatch.getPlayerCount(); i++)
+                        net.sendPacket(createEatRequest(ObjectTypeId.PACKET_OBJECT_TYPE_PLAYER.val(), eatBatch.getPlayerId(i)));
                 }
             }
 
@@ -454,10 +639,10 @@ public strictfp class GameCanvas extends JPanel implements ActionListener
             }
 
             // send movement update if needed
-            if (System.currentTimeMillis() - lastHeartbeatTime > HEARTBEAT_TIME_DELAY)
+            if (simulationTime - lastHeartbeatTime >= HEARTBEAT_TIME_DELAY)
             {
                 sendMoveHeartbeat(pl);
-                lastHeartbeatTime = System.currentTimeMillis();
+                lastHeartbeatTime = simulationTime;
             }
         }
 
@@ -490,19 +675,51 @@ public strictfp class GameCanvas extends JPanel implements ActionListener
         }
     }
 
-    @Override
-    public void actionPerformed(ActionEvent arg0)
+    /**
+     * Runs single simulation step - called from game loop thread
+     * @param diff simulated time step in milliseconds
+     */
+    void tick(int diff)
     {
-        synchronized (GameStorage.playerObjectLock)
+        GameStorage gsInst = GameStorage.getInstance();
+
+        // apply everything, what came from network since last tick
+        parentFrame.applyWorldEvents();
+
+        GameStorage.playerObjectLock.lock();
+        try
         {
+            // positions after network updates are the start point of interpolation
+            gsInst.storePreviousPositions();
+
             if (!weAreDead)
-                updateMovement();
+                updateMovement(diff);
+        }
+        finally
+        {
+            GameStorage.playerObjectLock.unlock();
         }
 
-        // paint has its own lock
-        repaint();
+        simulationTime += diff;
+    }
 
-        lastUpdateTime = System.currentTimeMillis();
+    /**
+     * Hands the state over to renderer and requests repaint - called from game loop thread
+     * @param alpha position between previous (0) and current (1) simulation tick
+     */
+    void render(float alpha)
+    {
+        if (activeSurface != null)
+        {
+            GameStorage.getInstance().publishSnapshot(activeSurface.getWidth(), activeSurface.getHeight(), levelOfDetail, alpha);
+            // paint right away from this thread
+            activeSurface.renderFrame(this);
+        }
+        else
+        {
+            GameStorage.getInstance().publishSnapshot(getWidth(), getHeight(), levelOfDetail, alpha);
+            repaint();
+        }
     }
 
 }
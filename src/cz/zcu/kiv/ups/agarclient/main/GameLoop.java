@@ -0,0 +1,216 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.util.concurrent.locks.LockSupport;
+
+import cz.zcu.kiv.ups.agarclient.misc.Log;
+
+/**
+ * Game loop thread - runs simulation in fixed time steps, independently of EDT and of how
+ * long a frame took, and renders frames at display rate, interpolated between last two
+ * simulation ticks. Timing uses monotonic System.nanoTime clock
+ *
+ * @author martin.ubl
+ */
+public class GameLoop extends Thread
+{
+    /** length of single simulation tick in milliseconds */
+    public static final int TICK_MILLIS = 10;
+    /** length of single simulation tick in nanoseconds */
+    private static final long TICK_NANOS = TICK_MILLIS * 1000000L;
+    /** longest frame time simulated at once; anything above is dropped, so a long stall does not cause a burst of ticks */
+    private static final long MAX_FRAME_NANOS = 250 * 1000000L;
+    /** name of system property with rendered frames per second */
+    public static final String FPS_PROPERTY_NAME = "agarclient.fps";
+    /** default rendered frames per second */
+    private static final int DEFAULT_FPS = 60;
+
+    /** canvas to simulate and render */
+    private final GameCanvas canvas;
+    /** time between two rendered frames */
+    private final long frameNanos;
+    /** is the loop running? */
+    private volatile boolean running = true;
+
+    /** count of simulation ticks */
+    private volatile long tickCount = 0;
+    /** count of rendered frames */
+    private volatile long frameCount = 0;
+    /** count of ticks, that took longer than tick length */
+    private volatile long overrunTickCount = 0;
+    /** longest tick duration in nanoseconds */
+    private volatile long maxTickNanos = 0;
+    /** total time spent in ticks in nanoseconds */
+    private volatile long totalTickNanos = 0;
+    /** most ticks run to catch up within single frame */
+    private volatile int maxTicksPerFrame = 0;
+    /** simulation time dropped due to stalls in nanoseconds */
+    private volatile long droppedNanos = 0;
+
+    /**
+     * Creates game loop
+     * @param canvas canvas to simulate and render
+     */
+    public GameLoop(GameCanvas canvas)
+    {
+        super("Game loop");
+        setDaemon(true);
+
+        this.canvas = canvas;
+
+        int fps = Integer.getInteger(FPS_PROPERTY_NAME, getDefaultFps());
+        this.frameNanos = 1000000000L / Math.max(fps, 1);
+    }
+
+    /**
+     * Retrieves default frame rate - display refresh rate when vertical synchronization is requested
+     * @return frames per second
+     */
+    private static int getDefaultFps()
+    {
+        if (!ActiveRenderSurface.isVsyncEnabled() || GraphicsEnvironment.isHeadless())
+            return DEFAULT_FPS;
+
+        int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+        if (rate == DisplayMode.REFRESH_RATE_UNKNOWN)
+            return DEFAULT_FPS;
+
+        return rate;
+    }
+
+    /**
+     * Stops the loop; the current frame is finished first
+     */
+    public void shutDown()
+    {
+        running = false;
+        LockSupport.unpark(this);
+    }
+
+    @Override
+    public void run()
+    {
+        long previous = System.nanoTime();
+        long nextFrame = previous;
+        long accumulator = 0;
+
+        while (running)
+        {
+            long now = System.nanoTime();
+            long frameTime = now - previous;
+            previous = now;
+
+            if (frameTime > MAX_FRAME_NANOS)
+            {
+                droppedNanos += frameTime - MAX_FRAME_NANOS;
+                frameTime = MAX_FRAME_NANOS;
+            }
+
+            accumulator += frameTime;
+
+            // simulate in fixed steps, as many as fit to elapsed time
+            int ticks = 0;
+            while (accumulator >= TICK_NANOS)
+            {
+                long tickStart = System.nanoTime();
+                canvas.tick(TICK_MILLIS);
+                long tickTime = System.nanoTime() - tickStart;
+
+                tickCount++;
+                totalTickNanos += tickTime;
+                if (tickTime > TICK_NANOS)
+                    overrunTickCount++;
+                if (tickTime > maxTickNanos)
+                    maxTickNanos = tickTime;
+
+                accumulator -= TICK_NANOS;
+                ticks++;
+            }
+
+            if (ticks > maxTicksPerFrame)
+                maxTicksPerFrame = ticks;
+
+            // render state between last two ticks, by the time left in accumulator
+            canvas.render((float) accumulator / TICK_NANOS);
+            frameCount++;
+
+            // wait for next frame; if we are late, do not try to catch up with frames
+            nextFrame += frameNanos;
+            long sleep = nextFrame - System.nanoTime();
+            if (sleep > 0)
+                LockSupport.parkNanos(sleep);
+            else
+                nextFrame = System.nanoTime();
+        }
+
+        Log.info("Game loop finished: "+getStatistics());
+    }
+
+    /**
+     * Retrieves count of simulation ticks
+     * @return tick count
+     */
+    public long getTickCount()
+    {
+        return tickCount;
+    }
+
+    /**
+     * Retrieves count of rendered frames
+     * @return frame count
+     */
+    public long getFrameCount()
+    {
+        return frameCount;
+    }
+
+    /**
+     * Retrieves count of ticks, that took longer than tick length
+     * @return overrun tick count
+     */
+    public long getOverrunTickCount()
+    {
+        return overrunTickCount;
+    }
+
+    /**
+     * Retrieves longest tick duration
+     * @return duration in microseconds
+     */
+    public long getMaxTickMicros()
+    {
+        return maxTickNanos / 1000;
+    }
+
+    /**
+     * Retrieves most ticks run to catch up within single frame
+     * @return tick count
+     */
+    public int getMaxTicksPerFrame()
+    {
+        return maxTicksPerFrame;
+    }
+
+    /**
+     * Retrieves simulation time dropped due to stalls
+     * @return dropped time in milliseconds
+     */
+    public long getDroppedMillis()
+    {
+        return droppedNanos / 1000000;
+    }
+
+    /**
+     * Retrieves human readable statistics
+     * @return statistics
+     */
+    public String getStatistics()
+    {
+        long ticks = tickCount;
+
+        return ticks+" ticks ("+overrunTickCount+" over "+TICK_MILLIS+"ms, avg "+(ticks == 0 ? 0 : totalTickNanos / ticks / 1000)
+                +"us, max "+getMaxTickMicros()+"us), "+frameCount+" frames, max "+maxTicksPerFrame+" ticks per frame, "
+                +getDroppedMillis()+"ms dropped";
+    }
+}
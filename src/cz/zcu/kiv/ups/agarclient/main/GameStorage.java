@@ -1,11 +1,14 @@
 package cz.zcu.kiv.ups.agarclient.main;
 
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
-import cz.zcu.kiv.ups.agarclient.misc.Pair;
+import cz.zcu.kiv.ups.agarclient.enums.ObjectTypeId;
+import cz.zcu.kiv.ups.agarclient.misc.ContentionTrackingLock;
+import cz.zcu.kiv.ups.agarclient.misc.IntList;
+import cz.zcu.kiv.ups.agarclient.misc.IntObjectMap;
+import cz.zcu.kiv.ups.agarclient.misc.Log;
 
 /**
  * Game storage - for storing runtime data about players, objects, etc.
@@ -18,7 +21,7 @@ public class GameStorage
     private static GameStorage INSTANCE = null;
 
     /** Cell size */
-    private static final float CELL_SIZE = 10.0f;
+    static final float CELL_SIZE = 10.0f;
     /** Visible offset of cells */
     private static final int CELL_VISIBLE_COUNT = 2;
 
@@ -27,12 +30,14 @@ public class GameStorage
     /** Minimum movement speed */
     public static final float MOVE_MS_COEF_MIN = 0.0015f; // 0.0025f
 
-    /** world object list monitor */
-    public static final Object worldObjectLock = new Object();
-    /** player object list monitor */
-    public static final Object playerObjectLock = new Object();
+    // locks have to be always taken in this order: playerObjectLock, gridMapLock, worldObjectLock
+
+    /** player object list lock, shared by game loop and UI thread */
+    public static final ContentionTrackingLock playerObjectLock = new ContentionTrackingLock("playerObjectLock");
     /** grid map list monitor */
     public static final Object gridMapLock = new Object();
+    /** world object list monitor */
+    public static final Object worldObjectLock = new Object();
 
     /** Map width */
     private float mapSizeX = 0.0f;
@@ -44,18 +49,47 @@ public class GameStorage
     /** Map grid height */
     private int mapGridSizeY = 0;
 
-    /** list of active cells */
-    private List<Pair<Integer>> activeCells = new LinkedList<Pair<Integer>>();
+    /** is there an active window (area of cells visible by local player)? */
+    private boolean hasActiveWindow = false;
+    /** lowest X index of active cell */
+    private int activeMinX = 0;
+    /** highest X index of active cell */
+    private int activeMaxX = -1;
+    /** lowest Y index of active cell */
+    private int activeMinY = 0;
+    /** highest Y index of active cell */
+    private int activeMaxY = -1;
 
     /** Local player object */
     private LocalPlayer localPlayer = null;
-    /** All visible world objects */
-    private List<WorldObject> worldObjects = new LinkedList<WorldObject>();
+    /** All visible world objects (except players), stored in columns */
+    private final WorldObjectStore worldObjects = new WorldObjectStore();
     /** All visible player objects */
     private List<PlayerObject> playerObjects = new LinkedList<PlayerObject>();
 
-    /** map of objects listed in grid */
-    private Map<Integer, Map<Integer, List<WorldObject>>> gridMap = new HashMap<Integer, Map<Integer, List<WorldObject>>>();
+    /** player objects indexed by ID (guarded by playerObjectLock) */
+    private final IntObjectMap<PlayerObject> playerObjectIndex = new IntObjectMap<PlayerObject>();
+
+    /** count of cells wiped since start (written with gridMapLock held) */
+    private volatile long wipedCellCount = 0;
+    /** count of world objects evicted by cell wipes since start (written with gridMapLock held) */
+    private volatile long evictedObjectCount = 0;
+
+    /** implementation of spatial index used */
+    private static final SpatialIndexType SPATIAL_INDEX_TYPE = SpatialIndexType.fromProperty();
+    /** spatial index of world object slots; players are not indexed */
+    private SpatialIndex spatialIndex = SPATIAL_INDEX_TYPE.create(worldObjects, 0.0f, 0.0f);
+    /** result of spatial index queries, reused (accessed with gridMapLock held) */
+    private final IntList queryResult = new IntList(64);
+
+    /** snapshot being filled by publisher */
+    private RenderSnapshot snapshotBack = new RenderSnapshot();
+    /** latest complete snapshot, exchanged between publisher and renderer */
+    private final AtomicReference<RenderSnapshot> snapshotMiddle = new AtomicReference<RenderSnapshot>(new RenderSnapshot());
+    /** snapshot being read by renderer */
+    private RenderSnapshot snapshotFront = new RenderSnapshot();
+    /** version of last published snapshot */
+    private long snapshotVersion = 0;
 
     /**
      * Retrieves GameStorage singleton instance
@@ -84,15 +118,22 @@ public class GameStorage
         mapGridSizeX = (int) (width / CELL_SIZE) + 1;
         mapGridSizeY = (int) (height / CELL_SIZE) + 1;
 
-        gridMap.clear();
+        // the same order as everywhere else: player, grid, world
+        assert !Thread.holdsLock(worldObjectLock) : "grid lock cannot be taken with world lock held";
 
-        // init grid map
-        for (int i = 0; i < mapGridSizeX; i++)
+        synchronized (gridMapLock)
         {
-            gridMap.put(i, new HashMap<Integer, List<WorldObject>>());
+            synchronized (worldObjectLock)
+            {
+                spatialIndex = SPATIAL_INDEX_TYPE.create(worldObjects, width, height);
+
+                // objects already in store have to be in the new index too, otherwise later
+                // updates would move them from cells they are not in, and they'd never be found
+                for (int slot = worldObjects.nextSlot(0); slot >= 0; slot = worldObjects.nextSlot(slot + 1))
+                    spatialIndex.insert(slot);
+            }
 
-            for (int j = 0; j < mapGridSizeY; j++)
-                gridMap.get(i).put(j,  new LinkedList<WorldObject>());
+            hasActiveWindow = false;
         }
     }
 
@@ -125,47 +166,68 @@ public class GameStorage
     }
 
     /**
-     * Adds new worldobject to world
-     * @param obj object to be added
+     * Adds new world object, or updates existing object with the same ID
+     * @param id object ID
+     * @param x position X
+     * @param y position Y
+     * @param typeId type id
+     * @param param parameter
+     * @return slot of added or updated object
      */
-    public void addWorldObject(WorldObject obj)
+    public int upsertWorldObject(int id, float x, float y, byte typeId, int param)
     {
-        if (!worldObjects.contains(obj))
+        synchronized (gridMapLock)
         {
             synchronized (worldObjectLock)
             {
-                worldObjects.add(obj);
-            }
+                int slot = worldObjects.findSlot(id);
 
-            synchronized (gridMapLock)
-            {
-                gridMap.get(getCellIndex(obj.positionX)).get(getCellIndex(obj.positionY)).add(obj);
+                if (slot < 0)
+                {
+                    slot = worldObjects.add(id, x, y, typeId, param);
+                    spatialIndex.insert(slot);
+                }
+                else
+                {
+                    float oldX = worldObjects.getX(slot);
+                    float oldY = worldObjects.getY(slot);
+
+                    worldObjects.update(slot, x, y, typeId, param);
+                    spatialIndex.move(slot, oldX, oldY);
+                }
+
+                return slot;
             }
         }
     }
 
     /**
      * Removes world object from world
-     * @param obj object to be removed
+     * @param id object ID
+     * @return was the object present?
      */
-    public void removeWorldObject(WorldObject obj)
+    public boolean removeWorldObject(int id)
     {
-        synchronized (worldObjectLock)
-        {
-            worldObjects.remove(obj);
-        }
-
         synchronized (gridMapLock)
         {
-            gridMap.get(getCellIndex(obj.positionX)).get(getCellIndex(obj.positionY)).remove(obj);
+            synchronized (worldObjectLock)
+            {
+                int slot = worldObjects.findSlot(id);
+                if (slot < 0)
+                    return false;
+
+                spatialIndex.remove(slot);
+                worldObjects.remove(slot);
+                return true;
+            }
         }
     }
 
     /**
-     * Retrieves all visible objects
-     * @return list of visible objects
+     * Retrieves all visible objects (except players); has to be accessed with worldObjectLock held
+     * @return visible objects
      */
-    public List<WorldObject> getVisibleObjects()
+    WorldObjectStore getVisibleObjects()
     {
         return worldObjects;
     }
@@ -176,18 +238,72 @@ public class GameStorage
      */
     public void addPlayerObject(PlayerObject obj)
     {
-        if (!playerObjects.contains(obj))
+        playerObjectLock.lock();
+        try
         {
-            synchronized (playerObjectLock)
-            {
-                playerObjects.add(obj);
-            }
+            if (playerObjectIndex.containsKey(obj.id))
+                return;
 
-            synchronized (gridMapLock)
-            {
-                gridMap.get(getCellIndex(obj.positionX)).get(getCellIndex(obj.positionY)).add(obj);
-            }
+            playerObjectIndex.put(obj.id, obj);
+            playerObjects.add(obj);
+        }
+        finally
+        {
+            playerObjectLock.unlock();
+        }
+    }
+
+    /**
+     * Adds new remote player, or updates existing player with the same ID
+     * @param id player ID
+     * @param x position X
+     * @param y position Y
+     * @param color player color
+     * @param size player size
+     * @param name player name
+     * @param moving is player moving?
+     * @param angle movement direction
+     * @return added or updated player
+     */
+    public PlayerObject upsertPlayerObject(int id, float x, float y, int color, int size, String name, boolean moving, float angle)
+    {
+        PlayerObject plr;
+
+        playerObjectLock.lock();
+        try
+        {
+            plr = playerObjectIndex.get(id);
+        }
+        finally
+        {
+            playerObjectLock.unlock();
+        }
+
+        if (plr == null)
+        {
+            plr = new PlayerObject(id, x, y, (byte) 0, color, size, name, moving, angle);
+            addPlayerObject(plr);
+            setPlayerSize(plr, size);
+            return plr;
+        }
+
+        playerObjectLock.lock();
+        try
+        {
+            plr.positionX = x;
+            plr.positionY = y;
+            plr.param = color;
+            plr.name = name;
+            plr.moving = moving;
+            plr.moveAngle = angle;
         }
+        finally
+        {
+            playerObjectLock.unlock();
+        }
+
+        setPlayerSize(plr, size);
+        return plr;
     }
 
     /**
@@ -196,14 +312,16 @@ public class GameStorage
      */
     public void removePlayerObject(PlayerObject obj)
     {
-        synchronized (playerObjectLock)
+        playerObjectLock.lock();
+        try
         {
             playerObjects.remove(obj);
+            if (playerObjectIndex.get(obj.id) == obj)
+                playerObjectIndex.remove(obj.id);
         }
-
-        synchronized (gridMapLock)
+        finally
         {
-            gridMap.get(getCellIndex(obj.positionX)).get(getCellIndex(obj.positionY)).remove(obj);
+            playerObjectLock.unlock();
         }
     }
 
@@ -214,27 +332,57 @@ public class GameStorage
      */
     private void wipeCell(int indexX, int indexY)
     {
-        List<WorldObject> wobl = gridMap.get(indexX).get(indexY);
-
-        // no cell at this coords
-        if (wobl == null)
+        if (!isValidCell(indexX, indexY))
             return;
 
-        // remove all world objects and players from that cell
+        // border cells also hold everything beyond map border
+        float minX = (indexX == 0) ? Float.NEGATIVE_INFINITY : indexX * CELL_SIZE;
+        float minY = (indexY == 0) ? Float.NEGATIVE_INFINITY : indexY * CELL_SIZE;
+        float maxX = (indexX == mapGridSizeX - 1) ? Float.POSITIVE_INFINITY : (indexX + 1) * CELL_SIZE;
+        float maxY = (indexY == mapGridSizeY - 1) ? Float.POSITIVE_INFINITY : (indexY + 1) * CELL_SIZE;
+
+        int evicted = 0;
+
+        // remove all world objects from that cell
         synchronized (worldObjectLock)
         {
-            worldObjects.removeAll(wobl);
+            queryResult.clear();
+            spatialIndex.removeRect(minX, minY, maxX, maxY, queryResult);
+
+            for (int i = 0; i < queryResult.size(); i++)
+            {
+                if (worldObjects.remove(queryResult.get(i)))
+                    evicted++;
+            }
         }
 
+        wipedCellCount++;
+        evictedObjectCount += evicted;
+
         // player objects will be removed by packet from server
         //playerObjects.removeAll(...);
+    }
+
+    /**
+     * Retrieves count of cells wiped since start
+     * @return count of wiped cells
+     */
+    public long getWipedCellCount()
+    {
+        return wipedCellCount;
+    }
 
-        // also clear contents of cell in cell map
-        wobl.clear();
+    /**
+     * Retrieves count of world objects evicted by cell wipes since start
+     * @return count of evicted objects
+     */
+    public long getEvictedObjectCount()
+    {
+        return evictedObjectCount;
     }
 
     /**
-     * Moves player in world, and between grid cells if necessary
+     * Moves player in world, and its interest area, if it's the local player
      * @param obj subject
      * @param nx new x
      * @param ny new y
@@ -249,79 +397,95 @@ public class GameStorage
         cellXNew = getCellIndex(nx);
         cellYNew = getCellIndex(ny);
 
-        synchronized (playerObjectLock)
+        // player lock is held for the whole move, removal of player below must not take it
+        // with grid lock already held
+        playerObjectLock.lock();
+        try
         {
             obj.positionX = nx;
             obj.positionY = ny;
-        }
 
-        synchronized (gridMapLock)
-        {
-            if (gridMap == null || gridMap.get(cellX) == null || gridMap.get(cellX).get(cellY) == null)
-                return;
-
-            // if player moved between cells, relocate
-            if (cellX != cellXNew || cellY != cellYNew || !gridMap.get(cellX).get(cellY).contains(obj))
+            synchronized (gridMapLock)
             {
-                gridMap.get(cellX).get(cellY).remove(obj);
-                gridMap.get(cellXNew).get(cellYNew).add(obj);
+                if (!isValidCell(cellX, cellY))
+                    return;
 
                 // if it was our local player, delete old objects in out-of-range cells
                 if (obj == localPlayer)
                 {
-                    List<Pair<Integer>> nowCells = new LinkedList<Pair<Integer>>();
-
-                    // retrieve currently active cells
-                    for (int i = cellXNew - CELL_VISIBLE_COUNT; i <= cellXNew + CELL_VISIBLE_COUNT; i++)
-                    {
-                        if (i < 0 || i >= mapGridSizeX)
-                            continue;
-
-                        for (int j = cellYNew - CELL_VISIBLE_COUNT; j <= cellYNew + CELL_VISIBLE_COUNT; j++)
-                        {
-                            if (j < 0 || j >= mapGridSizeY)
-                                continue;
+                    if (cellX != cellXNew || cellY != cellYNew || !hasActiveWindow)
+                        moveActiveWindow(cellXNew, cellYNew);
+                }
+                else if ((cellX != cellXNew || cellY != cellYNew) && !isCellActive(cellXNew, cellYNew))
+                {
+                    // remove out of range players
+                    if (Log.isDebugEnabled())
+                        Log.debug("Removing player from "+cellXNew+", "+cellYNew);
+                    removePlayerObject(obj);
+                }
+            }
+        }
+        finally
+        {
+            playerObjectLock.unlock();
+        }
+    }
 
-                            nowCells.add(new Pair<Integer>(i, j));
-                        }
-                    }
+    /**
+     * Is the cell within map?
+     * @param indexX X index of cell
+     * @param indexY Y index of cell
+     * @return is within map?
+     */
+    private boolean isValidCell(int indexX, int indexY)
+    {
+        return indexX >= 0 && indexX < mapGridSizeX && indexY >= 0 && indexY < mapGridSizeY;
+    }
 
-                    // get list of cells to be wiped
-                    List<Pair<Integer>> torem = new LinkedList<Pair<Integer>>();
-                    for (Pair<Integer> ip : activeCells)
-                    {
-                        if (!nowCells.contains(ip))
-                        {
-                            wipeCell(ip.first, ip.second);
-                            torem.add(ip);
-                        }
-                    }
+    /**
+     * Is the cell within active window?
+     * @param indexX X index of cell
+     * @param indexY Y index of cell
+     * @return is cell active?
+     */
+    private boolean isCellActive(int indexX, int indexY)
+    {
+        return hasActiveWindow && indexX >= activeMinX && indexX <= activeMaxX && indexY >= activeMinY && indexY <= activeMaxY;
+    }
 
-                    // remove all listed cells
-                    activeCells.removeAll(torem);
-                    torem = null;
+    /**
+     * Moves active window to be centered at given cell; wipes cells, which left the window
+     * @param cellX X index of center cell
+     * @param cellY Y index of center cell
+     */
+    private void moveActiveWindow(int cellX, int cellY)
+    {
+        // new window, clipped to map borders
+        int minX = Math.max(cellX - CELL_VISIBLE_COUNT, 0);
+        int maxX = Math.min(cellX + CELL_VISIBLE_COUNT, mapGridSizeX - 1);
+        int minY = Math.max(cellY - CELL_VISIBLE_COUNT, 0);
+        int maxY = Math.min(cellY + CELL_VISIBLE_COUNT, mapGridSizeY - 1);
+
+        // wipe cells of old window, which are not present in the new one
+        if (hasActiveWindow)
+        {
+            for (int i = activeMinX; i <= activeMaxX; i++)
+            {
+                boolean columnKept = (i >= minX && i <= maxX);
 
-                    // activate newly discovered cells
-                    for (Pair<Integer> ip : nowCells)
-                    {
-                        if (!activeCells.contains(ip))
-                            activeCells.add(ip);
-                    }
-                }
-                else
+                for (int j = activeMinY; j <= activeMaxY; j++)
                 {
-                    int iX = getCellIndex(obj.positionX);
-                    int iY = getCellIndex(obj.positionY);
-
-                    // remove out of range players
-                    if (!activeCells.contains(new Pair<Integer>(iX, iY)))
-                    {
-                        System.out.println("Removing player from "+iX+", "+iY);
-                        removePlayerObject(obj);
-                    }
+                    if (!columnKept || j < minY || j > maxY)
+                        wipeCell(i, j);
                 }
             }
         }
+
+        activeMinX = minX;
+        activeMaxX = maxX;
+        activeMinY = minY;
+        activeMaxY = maxY;
+        hasActiveWindow = true;
     }
 
     /**
@@ -343,104 +507,229 @@ public class GameStorage
      */
     public float getExactDistance(WorldObject a, WorldObject b)
     {
-        return (float) Math.sqrt(Math.pow(a.positionX - b.positionX, 2) + Math.pow(a.positionY - b.positionY, 2));
+        float dx = a.positionX - b.positionX;
+        float dy = a.positionY - b.positionY;
+
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Retrieves minimal distance of interaction with local player
+     * @return minimal distance
+     */
+    private float getInteractionDistance()
+    {
+        return (localPlayer.size / 2.0f) * GameCanvas.PLAYER_SIZE_COEF / GameCanvas.DRAW_UNIT_COEF;
     }
 
     /**
-     * Retrieves closest object in near grids
-     * @return closest object, if any
+     * Collects all world objects and players the local player currently intersects, using a single
+     * radius query and a single pass over players; collected objects and players are marked as locally consumed,
+     * so they are not drawn and not collected again
+     * @param batch batch to fill (cleared first)
      */
-    public WorldObject getClosestNearObject()
+    void collectIntersections(IntersectionBatch batch)
     {
-        int cellX = getCellIndex(localPlayer.positionX);
-        int cellY = getCellIndex(localPlayer.positionY);
+        batch.clear();
+
+        if (localPlayer == null)
+            return;
 
-        WorldObject closest = null;
-        float closestManhattan = 120000.0f, currDist;
+        float px = localPlayer.positionX;
+        float py = localPlayer.positionY;
+
+        float interDist = getInteractionDistance();
+        // set minimal distance to 0.2 if lower
+        // this is due to offering chance to smallest cells to gain size
+        float objectDist = Math.max(interDist, 0.2f);
+
+        // compare squared distances, no need for square root
+        float playerDistSq = interDist * interDist;
+        float dx, dy;
 
         synchronized (gridMapLock)
         {
-            if (gridMap == null)
-                return null;
+            synchronized (worldObjectLock)
+            {
+                queryResult.clear();
+                spatialIndex.queryRadius(px, py, objectDist, queryResult);
+
+                for (int k = 0; k < queryResult.size(); k++)
+                {
+                    int slot = queryResult.get(k);
 
-            // go through +1 and -1 sorrounding of our cell
-            for (int i = cellX - 1; i <= cellX + 1; i++)
+                    // exclude already locally consumed objects
+                    if (worldObjects.isIntersecting(slot))
+                        continue;
+
+                    // we are closer than minimum required distance... gotcha!
+                    worldObjects.setIntersecting(slot);
+                    batch.addObject(worldObjects.getId(slot));
+                }
+            }
+        }
+
+        playerObjectLock.lock();
+        try
+        {
+            for (PlayerObject ob : playerObjects)
             {
-                // do not allow to go past borders
-                if (i < 0)
-                    continue;
-                if (i >= mapGridSizeX)
-                    continue;
-                if (gridMap.get(i) == null)
+                // exclude local player and already locally consumed players
+                if (ob == localPlayer || ob.localIntersect)
                     continue;
 
-                // ..sorroundings in another direction
-                for (int j = cellY - 1; j <= cellY + 1; j++)
+                dx = ob.positionX - px;
+                dy = ob.positionY - py;
+
+                if (dx * dx + dy * dy <= playerDistSq)
                 {
-                    if (j < 0)
-                        continue;
-                    if (j >= mapGridSizeY)
-                        continue;
+                    ob.localIntersect = true;
+                    batch.addPlayer(ob.id);
+                }
+            }
+        }
+        finally
+        {
+            playerObjectLock.unlock();
+        }
+    }
 
-                    if (gridMap.get(i).get(j) == null)
-                        continue;
+    /**
+     * Copies current state of world within viewport to render snapshot and publishes it;
+     * to be called once per rendered frame, always from the same thread
+     * @param viewWidth viewport width (in pixels)
+     * @param viewHeight viewport height (in pixels)
+     * @param lod level of detail rules, determining zoom and food aggregation
+     * @param alpha position between previous (0) and current (1) simulation tick, for interpolation of players
+     */
+    void publishSnapshot(int viewWidth, int viewHeight, LevelOfDetail lod, float alpha)
+    {
+        RenderSnapshot snap = snapshotBack;
+        snap.clear();
 
-                    // get list reference
-                    List<WorldObject> wobjlist = gridMap.get(i).get(j);
+        playerObjectLock.lock();
+        try
+        {
+            if (localPlayer != null)
+                snap.setLocalPlayer(localPlayer, alpha);
+        }
+        finally
+        {
+            playerObjectLock.unlock();
+        }
+
+        // viewport is centered to local player; without him, there's nothing to render
+        if (snap.hasLocalPlayer)
+        {
+            snap.zoom = lod.updateZoom(snap.localSize);
+            snap.scale = GameCanvas.DRAW_UNIT_COEF * snap.zoom;
 
-                    // check for all objects
-                    for (WorldObject ob : wobjlist)
+            float viewHalfWidth = (viewWidth / 2) / snap.scale;
+            float viewHalfHeight = (viewHeight / 2) / snap.scale;
+
+            float minX = snap.localX - viewHalfWidth;
+            float maxX = snap.localX + viewHalfWidth;
+            float minY = snap.localY - viewHalfHeight;
+            float maxY = snap.localY + viewHalfHeight;
+
+            synchronized (gridMapLock)
+            {
+                synchronized (worldObjectLock)
+                {
+                    queryResult.clear();
+                    spatialIndex.queryRect(minX, minY, maxX, maxY, queryResult);
+
+                    // zoomed out view would be mostly food discs; count it to tiles instead
+                    boolean aggregate = lod.isAggregated(snap.zoom);
+                    if (aggregate)
+                        snap.beginTiles(minX, minY, maxX, maxY, lod.getTilePixels() / snap.scale);
+
+                    byte idleFood = (byte) ObjectTypeId.OBJECT_TYPE_IDLEFOOD.val();
+                    int slot;
+                    byte type;
+                    for (int i = 0; i < queryResult.size(); i++)
                     {
-                        // exclude local player, or already locally consumed objects
-                        if (ob == localPlayer || ob.localIntersect)
+                        slot = queryResult.get(i);
+
+                        // locally consumed objects are not drawn
+                        if (worldObjects.isIntersecting(slot))
                             continue;
 
-                        // if the target is player, count his size and use exact distance
-                        if (ob instanceof PlayerObject)
-                            currDist = getExactDistance(ob, localPlayer) - ((float)((PlayerObject) ob).size)*GameCanvas.PLAYER_SIZE_COEF / GameCanvas.DRAW_UNIT_COEF;
-                        else // otherwise use manhattan distance as relevant quick metric
-                            currDist = getManhattanDistance(ob, localPlayer);
-
-                        // if we found closer object, use it
-                        if (currDist < closestManhattan)
-                        {
-                            closestManhattan = currDist;
-                            closest = ob;
-                        }
+                        type = worldObjects.getType(slot);
+                        if (aggregate && type == idleFood)
+                            snap.addTileObject(worldObjects.getX(slot), worldObjects.getY(slot));
+                        else
+                            snap.addObject(worldObjects.getX(slot), worldObjects.getY(slot), type);
                     }
                 }
             }
+
+            playerObjectLock.lock();
+            try
+            {
+                float radius;
+                for (PlayerObject plr : playerObjects)
+                {
+                    // player is visible, if any part of him (or his name above) overlaps viewport
+                    radius = ((float) plr.size) * GameCanvas.PLAYER_SIZE_COEF / GameCanvas.DRAW_UNIT_COEF + 1.0f;
+                    if (plr.positionX + radius < minX || plr.positionX - radius > maxX
+                            || plr.positionY + radius < minY || plr.positionY - radius > maxY)
+                        continue;
+
+                    snap.addPlayer(plr, alpha);
+                }
+            }
+            finally
+            {
+                playerObjectLock.unlock();
+            }
         }
 
-        return closest;
+        snap.version = ++snapshotVersion;
+
+        // hand the snapshot over, and take the one renderer returned (or the unread one) for next fill
+        snapshotBack = snapshotMiddle.getAndSet(snap);
     }
 
     /**
-     * Retrieves object we currently intersects
-     * @return currently intersecting object
+     * Retrieves latest published render snapshot; to be called from renderer thread only.
+     * The snapshot stays valid until next call of this method
+     * @return latest snapshot
      */
-    public synchronized WorldObject getCurrentIntersectionObject()
+    RenderSnapshot acquireSnapshot()
     {
-        // select closest object
-        WorldObject closest = getClosestNearObject();
-        if (closest == null)
-            return null;
+        // three snapshots rotate, so the publisher never writes to the one we read
+        if (snapshotMiddle.get().version > snapshotFront.version)
+            snapshotFront = snapshotMiddle.getAndSet(snapshotFront);
 
-        // find exact distance of closest object
-        float exDist = getExactDistance(closest, localPlayer);
-        // calculate minimal distance of interaction with player
-        float minDist = (localPlayer.size / 2.0f) * GameCanvas.PLAYER_SIZE_COEF / GameCanvas.DRAW_UNIT_COEF;
-
-        // if the closest object is not player, set minimal distance to 0.2 if lower
-        // this is due to offering chance to smallest cells to gain size
-        if (!(closest instanceof PlayerObject) && minDist < 0.2f)
-            minDist = 0.2f;
+        return snapshotFront;
+    }
 
-        // if we are closer than minimum required distance... gotcha!
-        if (exDist <= minDist)
-            return closest;
+    /**
+     * Stores current positions of all players as start points of interpolation - called at the
+     * start of every simulation tick
+     */
+    public void storePreviousPositions()
+    {
+        playerObjectLock.lock();
+        try
+        {
+            if (localPlayer != null)
+            {
+                localPlayer.prevPositionX = localPlayer.positionX;
+                localPlayer.prevPositionY = localPlayer.positionY;
+            }
 
-        return null;
+            for (PlayerObject plr : playerObjects)
+            {
+                plr.prevPositionX = plr.positionX;
+                plr.prevPositionY = plr.positionY;
+            }
+        }
+        finally
+        {
+            playerObjectLock.unlock();
+        }
     }
 
     /**
@@ -459,33 +748,15 @@ public class GameStorage
      */
     public PlayerObject findPlayer(int id)
     {
-        synchronized (playerObjectLock)
+        playerObjectLock.lock();
+        try
         {
-            for (PlayerObject pl : playerObjects)
-            {
-                if (pl.id == id)
-                    return pl;
-            }
+            return playerObjectIndex.get(id);
         }
-        return null;
-    }
-
-    /**
-     * Finds world object using its ID
-     * @param id object ID
-     * @return world object
-     */
-    public WorldObject findObject(int id)
-    {
-        synchronized (worldObjectLock)
+        finally
         {
-            for (WorldObject ob : worldObjects)
-            {
-                if (ob.id == id)
-                    return ob;
-            }
+            playerObjectLock.unlock();
         }
-        return null;
     }
 
     /**
@@ -523,7 +794,8 @@ public class GameStorage
      */
     public void setPlayerSize(PlayerObject pl, int size)
     {
-        synchronized (playerObjectLock)
+        playerObjectLock.lock();
+        try
         {
             pl.size = size;
 
@@ -534,27 +806,42 @@ public class GameStorage
             else
                 pl.moveCoef = MOVE_MS_COEF_MAX - ((size - 12.0f)/(500.0f-12.0f))*(MOVE_MS_COEF_MAX - MOVE_MS_COEF_MIN);
 
-            System.out.println("Speed: "+pl.moveCoef);
+            if (Log.isDebugEnabled())
+                Log.debug("Speed: "+pl.moveCoef);
+        }
+        finally
+        {
+            playerObjectLock.unlock();
         }
     }
 
     /**
      * Wipes all existence from storage
      */
-    public synchronized void wipeAll()
+    public void wipeAll()
     {
-        synchronized (worldObjectLock)
-        {
-            worldObjects.clear();
-        }
-        synchronized (playerObjectLock)
+        assert !Thread.holdsLock(gridMapLock) && !Thread.holdsLock(worldObjectLock) : "player lock has to be taken before grid and world locks";
+
+        playerObjectLock.lock();
+        try
         {
             playerObjects.clear();
+            playerObjectIndex.clear();
+
+            synchronized (gridMapLock)
+            {
+                synchronized (worldObjectLock)
+                {
+                    worldObjects.clear();
+                }
+
+                spatialIndex.clear();
+                hasActiveWindow = false;
+            }
         }
-        synchronized (gridMapLock)
+        finally
         {
-            gridMap.clear();
-            activeCells.clear();
+            playerObjectLock.unlock();
         }
     }
 
@@ -2,15 +2,19 @@ package cz.zcu.kiv.ups.agarclient.main;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 
-import cz.zcu.kiv.ups.agarclient.enums.ObjectTypeId;
 import cz.zcu.kiv.ups.agarclient.enums.Opcodes;
+import cz.zcu.kiv.ups.agarclient.misc.Log;
+import cz.zcu.kiv.ups.agarclient.misc.SpscQueue;
 import cz.zcu.kiv.ups.agarclient.network.ConnectionState;
 import cz.zcu.kiv.ups.agarclient.network.GamePacket;
 import cz.zcu.kiv.ups.agarclient.network.Networking;
+import cz.zcu.kiv.ups.agarclient.network.PacketDispatcher;
+import cz.zcu.kiv.ups.agarclient.network.StringCache;
 
 /**
  * Game window - this is where the panel taking care of all magic rests
@@ -21,6 +25,11 @@ public class GameWindow extends JFrame implements NetworkStateReceiver
 {
     private static final long serialVersionUID = 1L;
 
+    /** player name cache size */
+    private static final int NAME_CACHE_SIZE = 256;
+    /** capacity of queue of decoded world events */
+    private static final int EVENT_QUEUE_CAPACITY = 8192;
+
     /** Game canvas */
     private GameCanvas canvas;
 
@@ -30,6 +39,19 @@ public class GameWindow extends JFrame implements NetworkStateReceiver
     /** parent lobby window we will return to after leaving room */
     private LobbyWindow parentWindow = null;
 
+    /** table of packet handlers */
+    private final PacketDispatcher packetDispatcher = new PacketDispatcher();
+
+    /** events decoded by networking thread, waiting to be applied by game tick */
+    private final SpscQueue<WorldEvent> worldEvents = new SpscQueue<WorldEvent>(EVENT_QUEUE_CAPACITY);
+    /** was wipe of storage requested from UI thread? */
+    private final AtomicBoolean wipeRequested = new AtomicBoolean(false);
+    /** was the event queue overflowed, so events are discarded until full world arrives? (guarded by Networking monitor) */
+    private boolean resyncPending = false;
+
+    /** cache of player names, so they are not decoded again with every world update */
+    private final StringCache nameCache = new StringCache(NAME_CACHE_SIZE);
+
     /**
      * Public constructor - retaining parent window
      * @param parent
@@ -37,6 +59,29 @@ public class GameWindow extends JFrame implements NetworkStateReceiver
     public GameWindow(LobbyWindow parent)
     {
         parentWindow = parent;
+
+        registerPacketHandlers();
+    }
+
+    /**
+     * Registers handlers of all game packets
+     */
+    private void registerPacketHandlers()
+    {
+        packetDispatcher.register(Opcodes.SP_NEW_WORLD, this::handleWorld);
+        packetDispatcher.register(Opcodes.SP_UPDATE_WORLD, this::handleWorld);
+        packetDispatcher.register(Opcodes.SP_MOVE_HEARTBEAT, this::handleMoveHeartbeat);
+        packetDispatcher.register(Opcodes.SP_MOVE_DIRECTION, this::handleMoveDirection);
+        packetDispatcher.register(Opcodes.SP_MOVE_START, this::handleMoveStart);
+        packetDispatcher.register(Opcodes.SP_MOVE_STOP, this::handleMoveStop);
+        packetDispatcher.register(Opcodes.SP_NEW_PLAYER, this::handleNewPlayer);
+        packetDispatcher.register(Opcodes.SP_NEW_OBJECT, this::handleNewObject);
+        packetDispatcher.register(Opcodes.SP_OBJECT_EATEN, this::handleObjectEaten);
+        packetDispatcher.register(Opcodes.SP_PLAYER_EATEN, this::handlePlayerEaten);
+        packetDispatcher.register(Opcodes.SP_DESTROY_OBJECT, this::handleDestroyObject);
+        packetDispatcher.register(Opcodes.SP_PLAYER_EXIT, this::handlePlayerExit);
+        packetDispatcher.register(Opcodes.SP_RESTORE_SESSION_RESPONSE, this::handleRestoreSessionResponse);
+        packetDispatcher.register(Opcodes.SP_STATS_RESPONSE, this::handleStatsResponse);
     }
 
     /**
@@ -76,6 +121,16 @@ public class GameWindow extends JFrame implements NetworkStateReceiver
 
         Networking.getInstance().registerStateReceiver(parentWindow);
 
+        // counters are written by networking thread with its monitor held
+        synchronized (Networking.getInstance())
+        {
+            Log.info("Game packets: "+packetDispatcher.getStatistics());
+        }
+
+        // game loop is joined, so storage is not touched by anyone else from now on
+        if (canvas != null)
+            canvas.stopGameLoop();
+
         GameStorage.getInstance().wipeAll();
         GameStorage.getInstance().setLocalPlayer(null);
 
@@ -92,7 +147,7 @@ public class GameWindow extends JFrame implements NetworkStateReceiver
      */
     public void initGame(boolean reinit)
     {
-        GamePacket gp = new GamePacket(Opcodes.CP_WORLD_REQUEST.val());
+        GamePacket gp = GamePacket.obtain(Opcodes.CP_WORLD_REQUEST.val());
         gp.putByte(reinit ? 1 : 0);
         Networking.getInstance().sendPacket(gp);
     }
@@ -105,393 +160,372 @@ public class GameWindow extends JFrame implements NetworkStateReceiver
         initGame(false);
     }
 
-    @Override
-    public boolean OnPacketReceived(GamePacket packet)
+    /**
+     * Passes decoded event to game tick; never blocks. The event queue allows just one producer
+     * at a time, so the caller has to hold Networking monitor - packet handlers and connection
+     * state changes are always called with it held. When the tick does not keep up and the
+     * queue overflows, events are not dropped one by one (that would leave us out of sync with
+     * server); instead, full world is requested again and everything until it arrives is discarded
+     * @param event event to be applied
+     */
+    private void postEvent(WorldEvent event)
     {
-        GameStorage gsInst = GameStorage.getInstance();
-        // TODO: rework this conditional madness
+        assert Thread.holdsLock(Networking.getInstance()) : "world events have to be posted with Networking monitor held";
 
-        // received packet about new world
-        if (packet.getOpcode() == Opcodes.SP_NEW_WORLD.val() || packet.getOpcode() == Opcodes.SP_UPDATE_WORLD.val())
+        if (resyncPending)
         {
-            int id, size, param;
-            float x, y, angle;
-            byte type;
-            boolean moving, dead, localDead;
-            String name;
-
-            localDead = false;
+            // everything before requested world is superseded by it
+            if (!(event instanceof WorldEvents.WorldUpdate) || !((WorldEvents.WorldUpdate) event).isNewWorld())
+                return;
 
-            // "our details" retrieval is received only on new world packet
-            if (packet.getOpcode() == Opcodes.SP_NEW_WORLD.val())
+            if (worldEvents.offer(new WorldEvents.WipeAll()) && worldEvents.offer(event))
             {
-                float sizeX, sizeY;
-
-                sizeX = packet.getFloat();
-                sizeY = packet.getFloat();
-                gsInst.setMapSize(sizeX, sizeY);
-
-                // at first, retrieve our details
-                id = packet.getInt();
-                name = packet.getString();
-                size = packet.getInt();
-                x = packet.getFloat();
-                y = packet.getFloat();
-                param = packet.getInt(); // color
-                moving = (packet.getByte() == 1);
-                localDead = (packet.getByte() == 1);
-                angle = packet.getFloat();
-
-                // store local player
-                Main.setPlayerId(id);
-                LocalPlayer plr = new LocalPlayer(id, x, y, (byte) 0, param, size, name, moving, angle);
-                gsInst.setLocalPlayer(plr);
-
-                // this will integrate player to grid map
-                gsInst.movePlayer(plr, x, y);
-                gsInst.setPlayerSize(plr, size);
+                Log.info("World resynchronized");
+                resyncPending = false;
             }
+            else
+                requestResync();
 
-            // retrieve count of players present in updatepacket
-            int plcount = packet.getInt();
+            return;
+        }
 
-            synchronized (Networking.getInstance())
-            {
-                // resolve all players
-                for (int i = 0; i < plcount; i++)
-                {
-                    id = packet.getInt();
-                    name = packet.getString();
-                    size = packet.getInt();
-                    x = packet.getFloat();
-                    y = packet.getFloat();
-                    param = packet.getInt(); // color
-                    moving = (packet.getByte() == 1);
-                    dead = (packet.getByte() == 1); // maybe won't be used at all here
-                    angle = packet.getFloat();
-
-                    // create player
-                    if (id != Main.getPlayerId())
-                    {
-                        PlayerObject plr = new PlayerObject(id, x, y, (byte) 0, param, size, name, moving, angle);
-                        gsInst.addPlayerObject(plr);
-                        gsInst.setPlayerSize(plr, size);
-                        gsInst.movePlayer(plr, x, y);
-                    }
-                }
-            }
+        if (!worldEvents.offer(event))
+        {
+            Log.warn("World event queue full, requesting full world");
+            requestResync();
+        }
+    }
 
-            // retrieve object count present in updatepacket
-            int objcount = packet.getInt();
+    /**
+     * Requests full world from server, all events are discarded until it arrives
+     */
+    private void requestResync()
+    {
+        resyncPending = true;
+        initGame(true);
+    }
 
-            synchronized (Networking.getInstance())
-            {
-                for (int i = 0; i < objcount; i++)
-                {
-                    id = packet.getInt();
-                    x = packet.getFloat();
-                    y = packet.getFloat();
-                    type = packet.getByte();
-                    param = packet.getInt();
-
-                    // create object
-                    gsInst.addWorldObject(new WorldObject(id, x, y, type, param));
-                }
-            }
+    /**
+     * Requests wipe of storage from UI thread; it's done by next game tick, before applying any
+     * event posted afterwards (event queue accepts events just from networking side)
+     */
+    void requestWipe()
+    {
+        wipeRequested.set(true);
+    }
 
-            // init canvas to be drawn (again just when new world is obtained)
-            if (packet.getOpcode() == Opcodes.SP_NEW_WORLD.val() && !gameInitialized)
-            {
-                canvas = new GameCanvas();
-                canvas.setSize(getPreferredSize());
-                add(canvas, BorderLayout.CENTER);
+    /**
+     * Applies all events decoded since last call - called from game tick
+     */
+    void applyWorldEvents()
+    {
+        GameStorage gsInst = GameStorage.getInstance();
+        WorldEvent event;
 
-                canvas.initCanvas(this);
-            }
+        // requested before anything, what is in the queue now, was answered
+        if (wipeRequested.getAndSet(false))
+            gsInst.wipeAll();
 
-            canvas.setWeAreDead(localDead);
+        while ((event = worldEvents.poll()) != null)
+            event.apply(this, gsInst);
+    }
+
+    /**
+     * Retrieves game canvas
+     * @return game canvas
+     */
+    GameCanvas getCanvas()
+    {
+        return canvas;
+    }
 
-            canvas.setConnectionLostState(0);
+    /**
+     * Reads player details block from packet
+     * @param packet received packet
+     * @return player details
+     */
+    private WorldEvents.PlayerInfo readPlayerInfo(GamePacket packet)
+    {
+        int id = packet.getInt();
+        String name = packet.getString(nameCache);
+        int size = packet.getInt();
+        float x = packet.getFloat();
+        float y = packet.getFloat();
+        int param = packet.getInt(); // color
+        boolean moving = (packet.getByte() == 1);
+        boolean dead = (packet.getByte() == 1); // won't be used for remote players
+        float angle = packet.getFloat();
+
+        return new WorldEvents.PlayerInfo(id, name, size, x, y, param, moving, angle);
+    }
 
-            gameInitialized = true;
+    /**
+     * Handles new world and world update packets
+     * @param packet received packet
+     */
+    private void handleWorld(GamePacket packet)
+    {
+        float sizeX = 0.0f, sizeY = 0.0f;
+        WorldEvents.PlayerInfo local = null;
+        boolean localDead = false;
 
-            // request stats
-            if (packet.getOpcode() == Opcodes.SP_NEW_WORLD.val())
-            {
-                GamePacket statsrq = new GamePacket(Opcodes.CP_STATS.val());
-                Networking.getInstance().sendPacket(statsrq);
-            }
-        }
-        // move heartbeat packet
-        else if (packet.getOpcode() == Opcodes.SP_MOVE_HEARTBEAT.val())
+        // "our details" retrieval is received only on new world packet
+        if (packet.getOpcode() == Opcodes.SP_NEW_WORLD.val())
         {
-            // get player ID and position
+            sizeX = packet.getFloat();
+            sizeY = packet.getFloat();
+
+            // at first, retrieve our details
             int id = packet.getInt();
+            String name = packet.getString(nameCache);
+            int size = packet.getInt();
             float x = packet.getFloat();
             float y = packet.getFloat();
-
-            synchronized (Networking.getInstance())
-            {
-                // find player and set position
-                PlayerObject plr = GameStorage.getInstance().findPlayer(id);
-                if (plr != null && id != Main.getPlayerId())
-                {
-                    GameStorage.getInstance().movePlayer(plr, x, y);
-                }
-            }
-        }
-        // move direction packet
-        else if (packet.getOpcode() == Opcodes.SP_MOVE_DIRECTION.val())
-        {
-            // get player ID and move angle
-            int id = packet.getInt();
+            int param = packet.getInt(); // color
+            boolean moving = (packet.getByte() == 1);
+            localDead = (packet.getByte() == 1);
             float angle = packet.getFloat();
 
-            synchronized (Networking.getInstance())
-            {
-                // find player and set move angle
-                PlayerObject plr = GameStorage.getInstance().findPlayer(id);
-                if (plr != null && id != Main.getPlayerId())
-                {
-                    plr.moveAngle = angle;
-                }
-            }
-        }
-        // move start packet
-        else if (packet.getOpcode() == Opcodes.SP_MOVE_START.val())
-        {
-            // get player ID and move angle
-            int id = packet.getInt();
-            float angle = packet.getFloat();
+            local = new WorldEvents.PlayerInfo(id, name, size, x, y, param, moving, angle);
 
-            // find player, set move angle and moving flag
-            synchronized (Networking.getInstance())
-            {
-                PlayerObject plr = GameStorage.getInstance().findPlayer(id);
-                if (plr != null && id != Main.getPlayerId())
-                {
-                    plr.moveAngle = angle;
-                    plr.moving = true;
-                }
-            }
+            // player ID is needed right away for decoding following packets
+            Main.setPlayerId(id);
         }
-        // move stop packet
-        else if (packet.getOpcode() == Opcodes.SP_MOVE_STOP.val())
-        {
-            // get player ID and position
-            int id = packet.getInt();
-            float x = packet.getFloat();
-            float y = packet.getFloat();
 
-            synchronized (Networking.getInstance())
-            {
-                // find player, set position and unset moving flag
-                PlayerObject plr = GameStorage.getInstance().findPlayer(id);
-                if (plr != null && id != Main.getPlayerId())
-                {
-                    GameStorage.getInstance().movePlayer(plr, x, y);
-                    plr.moving = false;
-                }
-            }
-        }
-        // new player packet
-        else if (packet.getOpcode() == Opcodes.SP_NEW_PLAYER.val())
+        // retrieve players present in updatepacket
+        int plcount = packet.getInt();
+        WorldEvents.PlayerInfo[] players = new WorldEvents.PlayerInfo[plcount];
+        for (int i = 0; i < plcount; i++)
+            players[i] = readPlayerInfo(packet);
+
+        // retrieve objects present in updatepacket
+        int objcount = packet.getInt();
+        int[] ids = new int[objcount];
+        float[] xs = new float[objcount];
+        float[] ys = new float[objcount];
+        byte[] types = new byte[objcount];
+        int[] params = new int[objcount];
+        for (int i = 0; i < objcount; i++)
         {
-            // standard player create block
-            int id, size, param;
-            float x, y, angle;
-            boolean moving, dead;
-            String name;
-
-            id = packet.getInt();
-            name = packet.getString();
-            size = packet.getInt();
-            x = packet.getFloat();
-            y = packet.getFloat();
-            param = packet.getInt(); // color
-            moving = (packet.getByte() == 1);
-            dead = (packet.getByte() == 1); // also won't be used here, probably
-            angle = packet.getFloat();
-
-            // create player, if it's not us
-            if (id != Main.getPlayerId())
-            {
-                synchronized (Networking.getInstance())
-                {
-                    System.out.println("Creating player "+name+" at "+x+" ; "+y);
-                    PlayerObject obj = gsInst.findPlayer(id);
-                    if (obj != null)
-                        gsInst.removePlayerObject(obj);
-
-                    PlayerObject plr = new PlayerObject(id, x, y, (byte) 0, param, size, name, moving, angle);
-                    gsInst.addPlayerObject(plr);
-                    gsInst.setPlayerSize(plr, size);
-                    gsInst.movePlayer(plr, x, y);
-                }
-            }
+            ids[i] = packet.getInt();
+            xs[i] = packet.getFloat();
+            ys[i] = packet.getFloat();
+            types[i] = packet.getByte();
+            params[i] = packet.getInt();
         }
-        // new object packet
-        else if (packet.getOpcode() == Opcodes.SP_NEW_OBJECT.val())
-        {
-            // standard object create block
-            int id, param;
-            byte type;
-            float x, y;
-
-            id = packet.getInt();
-            x = packet.getFloat();
-            y = packet.getFloat();
-            type = packet.getByte();
-            param = packet.getInt();
-
-            // create new object
-            synchronized (Networking.getInstance())
-            {
-                WorldObject obj = gsInst.findObject(id);
-                if (obj != null)
-                    gsInst.removeWorldObject(obj);
 
-                gsInst.addWorldObject(new WorldObject(id, x, y, type, param));
-            }
-        }
-        // object eaten packet
-        else if (packet.getOpcode() == Opcodes.SP_OBJECT_EATEN.val())
-        {
-            int objectId = packet.getInt();
-            int eaterId = packet.getInt();
-            int sizeChange = packet.getInt();
+        postEvent(new WorldEvents.WorldUpdate(sizeX, sizeY, local, localDead, players, ids, xs, ys, types, params));
 
-            /*WorldObject obj = GameStorage.getInstance().findObject(objectId);
-            if (obj != null)
-            {
-                GameStorage.getInstance().removeWorldObject(obj);
-            }*/
-
-            synchronized (Networking.getInstance())
-            {
-                if (eaterId == Main.getPlayerId())
-                {
-                    gsInst.changePlayerSize(gsInst.getLocalPlayer(), sizeChange);
-                }
-                else
-                {
-                    PlayerObject plr = GameStorage.getInstance().findPlayer(eaterId);
-                    if (plr != null)
-                        plr.size += sizeChange;
-                    else
-                        System.out.println("Could not find player "+eaterId);
-                }
-            }
-        }
-        // player eaten packet
-        else if (packet.getOpcode() == Opcodes.SP_PLAYER_EATEN.val())
+        // init canvas to be drawn (again just when new world is obtained)
+        if (packet.getOpcode() == Opcodes.SP_NEW_WORLD.val() && !gameInitialized)
         {
-            int subjectId = packet.getInt();
-            int eaterId = packet.getInt();
-            int sizeChange = packet.getInt();
+            canvas = new GameCanvas();
+            canvas.setSize(getPreferredSize());
 
-            if (subjectId == Main.getPlayerId())
+            if (ActiveRenderSurface.isActiveRenderingEnabled())
             {
-                // we had been eaten :-(
-                canvas.setWeAreDead(true);
+                // canvas just simulates and paints to surface driven by game loop
+                ActiveRenderSurface surface = new ActiveRenderSurface();
+                surface.setSize(getPreferredSize());
+                add(surface, BorderLayout.CENTER);
+                validate();
+
+                canvas.setActiveSurface(surface);
             }
             else
-            {
-                synchronized (Networking.getInstance())
-                {
-                    PlayerObject plr = GameStorage.getInstance().findPlayer(subjectId);
-                    if (plr != null)
-                        GameStorage.getInstance().removePlayerObject(plr);
-
-                    if (eaterId == Main.getPlayerId())
-                        gsInst.changePlayerSize(gsInst.getLocalPlayer(), sizeChange);
-                    else
-                    {
-                        plr = GameStorage.getInstance().findPlayer(subjectId);
-                        if (plr != null)
-                            gsInst.changePlayerSize(plr, sizeChange);
-                    }
-                }
-            }
-        }
-        // object destroy packet
-        else if (packet.getOpcode() == Opcodes.SP_DESTROY_OBJECT.val())
-        {
-            int objectId = packet.getInt();
-            byte type = packet.getByte();
-            byte reason = packet.getByte();
+                add(canvas, BorderLayout.CENTER);
 
-            synchronized (Networking.getInstance())
-            {
-                if (type == ObjectTypeId.PACKET_OBJECT_TYPE_WORLDOBJECT.val())
-                {
-                    WorldObject obj = GameStorage.getInstance().findObject(objectId);
-                    if (obj != null)
-                    {
-                        GameStorage.getInstance().removeWorldObject(obj);
-                        // TODO: animation?
-                    }
-                }
-                else if (type == ObjectTypeId.PACKET_OBJECT_TYPE_PLAYER.val())
-                {
-                    PlayerObject obj = GameStorage.getInstance().findPlayer(objectId);
-                    if (obj != null)
-                    {
-                        GameStorage.getInstance().removePlayerObject(obj);
-                        // TODO: animation?
-                    }
-                }
-            }
+            canvas.initCanvas(this);
         }
-        // player exit packet
-        else if (packet.getOpcode() == Opcodes.SP_PLAYER_EXIT.val())
+
+        gameInitialized = true;
+
+        // request stats
+        if (packet.getOpcode() == Opcodes.SP_NEW_WORLD.val())
         {
-            int playerId = packet.getInt();
-            byte reason = packet.getByte();
+            GamePacket statsrq = GamePacket.obtain(Opcodes.CP_STATS.val());
+            Networking.getInstance().sendPacket(statsrq);
+        }
+    }
 
-            PlayerObject obj = GameStorage.getInstance().findPlayer(playerId);
-            if (obj != null)
-            {
-                GameStorage.getInstance().removePlayerObject(obj);
-                // TODO: chat message about player leave
-            }
+    /**
+     * Handles move heartbeat packet
+     * @param packet received packet
+     */
+    private void handleMoveHeartbeat(GamePacket packet)
+    {
+        // get player ID and position
+        int id = packet.getInt();
+        float x = packet.getFloat();
+        float y = packet.getFloat();
+
+        postEvent(new WorldEvents.MoveHeartbeat(id, x, y));
+    }
+
+    /**
+     * Handles move direction packet
+     * @param packet received packet
+     */
+    private void handleMoveDirection(GamePacket packet)
+    {
+        // get player ID and move angle
+        int id = packet.getInt();
+        float angle = packet.getFloat();
+
+        postEvent(new WorldEvents.MoveDirection(id, angle));
+    }
+
+    /**
+     * Handles move start packet
+     * @param packet received packet
+     */
+    private void handleMoveStart(GamePacket packet)
+    {
+        // get player ID and move angle
+        int id = packet.getInt();
+        float angle = packet.getFloat();
+
+        postEvent(new WorldEvents.MoveStart(id, angle));
+    }
+
+    /**
+     * Handles move stop packet
+     * @param packet received packet
+     */
+    private void handleMoveStop(GamePacket packet)
+    {
+        // get player ID and position
+        int id = packet.getInt();
+        float x = packet.getFloat();
+        float y = packet.getFloat();
+
+        postEvent(new WorldEvents.MoveStop(id, x, y));
+    }
+
+    /**
+     * Handles new player packet
+     * @param packet received packet
+     */
+    private void handleNewPlayer(GamePacket packet)
+    {
+        postEvent(new WorldEvents.NewPlayer(readPlayerInfo(packet)));
+    }
+
+    /**
+     * Handles new object packet
+     * @param packet received packet
+     */
+    private void handleNewObject(GamePacket packet)
+    {
+        // standard object create block
+        int id = packet.getInt();
+        float x = packet.getFloat();
+        float y = packet.getFloat();
+        byte type = packet.getByte();
+        int param = packet.getInt();
+
+        postEvent(new WorldEvents.NewObject(id, x, y, type, param));
+    }
+
+    /**
+     * Handles object eaten packet
+     * @param packet received packet
+     */
+    private void handleObjectEaten(GamePacket packet)
+    {
+        int objectId = packet.getInt();
+        int eaterId = packet.getInt();
+        int sizeChange = packet.getInt();
+
+        postEvent(new WorldEvents.ObjectEaten(eaterId, sizeChange));
+    }
+
+    /**
+     * Handles player eaten packet
+     * @param packet received packet
+     */
+    private void handlePlayerEaten(GamePacket packet)
+    {
+        int subjectId = packet.getInt();
+        int eaterId = packet.getInt();
+        int sizeChange = packet.getInt();
+
+        postEvent(new WorldEvents.PlayerEaten(subjectId, eaterId, sizeChange));
+    }
+
+    /**
+     * Handles object destroy packet
+     * @param packet received packet
+     */
+    private void handleDestroyObject(GamePacket packet)
+    {
+        int objectId = packet.getInt();
+        byte type = packet.getByte();
+        byte reason = packet.getByte();
+
+        postEvent(new WorldEvents.DestroyObject(objectId, type));
+    }
+
+    /**
+     * Handles player exit packet
+     * @param packet received packet
+     */
+    private void handlePlayerExit(GamePacket packet)
+    {
+        int playerId = packet.getInt();
+        byte reason = packet.getByte();
+
+        postEvent(new WorldEvents.PlayerExit(playerId));
+    }
+
+    /**
+     * Handles session restore response packet
+     * @param packet received packet
+     */
+    private void handleRestoreSessionResponse(GamePacket packet)
+    {
+        int statusCode = packet.getByte();
+        if (statusCode != 0)
+        {
+            JOptionPane.showMessageDialog(null, "Přihlášení vypršelo, prosím, přihlašte se znovu!", "Nelze obnovit spojení", JOptionPane.ERROR_MESSAGE);
+            Networking.getInstance().disconnect();
         }
-        // session restore response packet
-        else if (packet.getOpcode() == Opcodes.SP_RESTORE_SESSION_RESPONSE.val())
+        else
         {
-            int statusCode = packet.getByte();
-            if (statusCode != 0)
+            int roomId = packet.getInt();
+            if (roomId != 0)
             {
-                JOptionPane.showMessageDialog(null, "Přihlášení vypršelo, prosím, přihlašte se znovu!", "Nelze obnovit spojení", JOptionPane.ERROR_MESSAGE);
-                Networking.getInstance().disconnect();
+                int chatChannel = packet.getInt();
             }
-            else
-            {
-                int roomId = packet.getInt();
-                if (roomId != 0)
-                {
-                    int chatChannel = packet.getInt();
-                }
 
-                initGame(true);
-            }
+            initGame(true);
         }
-        // statistics
-        else if (packet.getOpcode() == Opcodes.SP_STATS_RESPONSE.val())
-        {
-            int plCount = packet.getInt();
+    }
 
-            Main.setPlayerCount(plCount);
+    /**
+     * Handles statistics packet
+     * @param packet received packet
+     */
+    private void handleStatsResponse(GamePacket packet)
+    {
+        int plCount = packet.getInt();
 
-            for (int i = 0; i < plCount; i++)
-            {
-                // NYI
+        Main.setPlayerCount(plCount);
 
-                packet.getString(); // name
-                packet.getInt();    // size (score)
-                packet.getInt();    // latency
-            }
+        for (int i = 0; i < plCount; i++)
+        {
+            // NYI
+
+            packet.getString(nameCache); // name
+            packet.getInt();    // size (score)
+            packet.getInt();    // latency
         }
+    }
+
+    @Override
+    public boolean OnPacketReceived(GamePacket packet)
+    {
+        packetDispatcher.dispatch(packet);
 
         return true;
     }
@@ -503,7 +537,8 @@ public class GameWindow extends JFrame implements NetworkStateReceiver
         {
             if (canvas != null)
                 canvas.setConnectionLostState(1);
-            GameStorage.getInstance().wipeAll();
+            // wipe in order with other events, so nothing decoded before is applied afterwards
+            postEvent(new WorldEvents.WipeAll());
         }
         else if (state == ConnectionState.CONNECTED)
         {
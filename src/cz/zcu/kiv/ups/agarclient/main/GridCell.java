@@ -0,0 +1,168 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import java.util.Arrays;
+
+/**
+ * Bucket of world object slots (cell of spatial grid, or leaf of quadtree) - compact growable
+ * arrays of slots and their positions, so distance tests of whole bucket read just two
+ * contiguous float arrays; removal moves the last slot to the freed place, so the order
+ * of slots is not kept
+ *
+ * @author martin.ubl
+ */
+class GridCell
+{
+    /** initial cell capacity */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /** slots of objects in cell, valid in range 0 - count-1 */
+    private int[] slots = new int[INITIAL_CAPACITY];
+    /** positions X of objects in cell */
+    private float[] xs = new float[INITIAL_CAPACITY];
+    /** positions Y of objects in cell */
+    private float[] ys = new float[INITIAL_CAPACITY];
+    /** count of objects in cell */
+    private int count = 0;
+
+    /**
+     * Retrieves count of objects in cell
+     * @return count of objects
+     */
+    int size()
+    {
+        return count;
+    }
+
+    /**
+     * Retrieves object slot at given index
+     * @param index index (0 - size-1)
+     * @return object slot
+     */
+    int get(int index)
+    {
+        return slots[index];
+    }
+
+    /**
+     * Retrieves positions X of objects; valid in range 0 - size-1
+     * @return positions X
+     */
+    float[] getXs()
+    {
+        return xs;
+    }
+
+    /**
+     * Retrieves positions Y of objects; valid in range 0 - size-1
+     * @return positions Y
+     */
+    float[] getYs()
+    {
+        return ys;
+    }
+
+    /**
+     * Adds object slot to cell
+     * @param slot object slot
+     * @param x object position X
+     * @param y object position Y
+     */
+    void add(int slot, float x, float y)
+    {
+        if (count == slots.length)
+        {
+            int capacity = slots.length * 2;
+            slots = Arrays.copyOf(slots, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+        }
+
+        slots[count] = slot;
+        xs[count] = x;
+        ys[count] = y;
+        count++;
+    }
+
+    /**
+     * Finds index of object slot in cell
+     * @param slot object slot
+     * @return index, or -1 if not present
+     */
+    int indexOf(int slot)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (slots[i] == slot)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Is the object slot present in cell?
+     * @param slot object slot
+     * @return is present?
+     */
+    boolean contains(int slot)
+    {
+        return indexOf(slot) >= 0;
+    }
+
+    /**
+     * Updates position of object in cell
+     * @param slot object slot
+     * @param x new position X
+     * @param y new position Y
+     * @return was the slot present?
+     */
+    boolean update(int slot, float x, float y)
+    {
+        int index = indexOf(slot);
+        if (index < 0)
+            return false;
+
+        xs[index] = x;
+        ys[index] = y;
+        return true;
+    }
+
+    /**
+     * Removes object slot from cell
+     * @param slot object slot
+     * @return was the slot present?
+     */
+    boolean remove(int slot)
+    {
+        int index = indexOf(slot);
+        if (index < 0)
+            return false;
+
+        removeAt(index);
+        return true;
+    }
+
+    /**
+     * Removes object slot at given index
+     * @param index index (0 - size-1)
+     * @return removed object slot
+     */
+    int removeAt(int index)
+    {
+        int slot = slots[index];
+
+        count--;
+        slots[index] = slots[count];
+        xs[index] = xs[count];
+        ys[index] = ys[count];
+
+        return slot;
+    }
+
+    /**
+     * Removes all objects from cell
+     */
+    void clear()
+    {
+        count = 0;
+    }
+}
@@ -0,0 +1,101 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import java.util.Arrays;
+
+/**
+ * IDs of objects and players the local player intersects, collected by a single
+ * query; reused between queries
+ *
+ * @author martin.ubl
+ */
+class IntersectionBatch
+{
+    /** IDs of intersecting world objects */
+    private int[] objectIds = new int[16];
+    /** count of intersecting world objects */
+    private int objectCount = 0;
+    /** IDs of intersecting players */
+    private int[] playerIds = new int[4];
+    /** count of intersecting players */
+    private int playerCount = 0;
+
+    /**
+     * Clears batch contents
+     */
+    void clear()
+    {
+        objectCount = 0;
+        playerCount = 0;
+    }
+
+    /**
+     * Adds intersecting world object
+     * @param id object ID
+     */
+    void addObject(int id)
+    {
+        if (objectCount == objectIds.length)
+            objectIds = Arrays.copyOf(objectIds, objectCount * 2);
+
+        objectIds[objectCount++] = id;
+    }
+
+    /**
+     * Adds intersecting player
+     * @param id player ID
+     */
+    void addPlayer(int id)
+    {
+        if (playerCount == playerIds.length)
+            playerIds = Arrays.copyOf(playerIds, playerCount * 2);
+
+        playerIds[playerCount++] = id;
+    }
+
+    /**
+     * Retrieves count of intersecting world objects
+     * @return object count
+     */
+    int getObjectCount()
+    {
+        return objectCount;
+    }
+
+    /**
+     * Retrieves ID of intersecting world object
+     * @param index index within batch
+     * @return object ID
+     */
+    int getObjectId(int index)
+    {
+        return objectIds[index];
+    }
+
+    /**
+     * Retrieves count of intersecting players
+     * @return player count
+     */
+    int getPlayerCount()
+    {
+        return playerCount;
+    }
+
+    /**
+     * Retrieves ID of intersecting player
+     * @param index index within batch
+     * @return player ID
+     */
+    int getPlayerId(int index)
+    {
+        return playerIds[index];
+    }
+
+    /**
+     * Is the batch empty?
+     * @return is empty?
+     */
+    boolean isEmpty()
+    {
+        return objectCount == 0 && playerCount == 0;
+    }
+}
@@ -0,0 +1,175 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import cz.zcu.kiv.ups.agarclient.misc.Log;
+
+/**
+ * Camera zoom and level of detail rules - the view zooms out as local player grows, and when
+ * zoomed out enough, idle food is drawn as density tiles instead of individual discs and small
+ * remote players lose their name labels. Thresholds are read from system properties
+ * (agarclient.lod.*), paint time is measured separately for detailed and aggregated frames,
+ * so the thresholds can be tuned.
+ *
+ * @author martin.ubl
+ */
+class LevelOfDetail
+{
+    /** prefix of system properties with level of detail settings */
+    public static final String PROPERTY_PREFIX = "agarclient.lod.";
+    /** share of difference between target and current zoom applied per frame */
+    private static final float ZOOM_EASING = 0.1f;
+
+    /** is zoom enabled? */
+    private final boolean zoomEnabled;
+    /** diameter of local player in pixels, above which the view zooms out */
+    private final float zoomDiameter;
+    /** smallest zoom */
+    private final float minZoom;
+    /** zoom, below which idle food is aggregated to density tiles */
+    private final float aggregateZoom;
+    /** size of density tile in pixels */
+    private final int tilePixels;
+    /** diameter of remote player in pixels, below which his name is not drawn */
+    private final int labelDiameter;
+
+    /** current zoom; changed just by snapshot publisher */
+    private float zoom = 1.0f;
+
+    /** count of painted frames with detailed food */
+    private volatile long detailedFrameCount = 0;
+    /** total paint time of frames with detailed food in nanoseconds */
+    private volatile long detailedFrameNanos = 0;
+    /** longest paint time of frame with detailed food in nanoseconds */
+    private volatile long detailedFrameMaxNanos = 0;
+    /** count of painted frames with aggregated food */
+    private volatile long aggregatedFrameCount = 0;
+    /** total paint time of frames with aggregated food in nanoseconds */
+    private volatile long aggregatedFrameNanos = 0;
+    /** longest paint time of frame with aggregated food in nanoseconds */
+    private volatile long aggregatedFrameMaxNanos = 0;
+
+    /**
+     * Creates level of detail rules from system properties
+     */
+    LevelOfDetail()
+    {
+        zoomEnabled = !"false".equalsIgnoreCase(System.getProperty(PROPERTY_PREFIX + "zoom"));
+        zoomDiameter = Math.max(getFloatProperty("zoomDiameter", 60.0f), 1.0f);
+        minZoom = Math.min(Math.max(getFloatProperty("minZoom", 0.25f), 0.05f), 1.0f);
+        aggregateZoom = getFloatProperty("aggregateZoom", 0.6f);
+        tilePixels = Math.max(Integer.getInteger(PROPERTY_PREFIX + "tilePixels", 16), 2);
+        labelDiameter = Integer.getInteger(PROPERTY_PREFIX + "labelDiameter", 12);
+    }
+
+    /**
+     * Retrieves float system property with level of detail setting
+     * @param name property name without prefix
+     * @param def default value
+     * @return property value
+     */
+    private static float getFloatProperty(String name, float def)
+    {
+        String val = System.getProperty(PROPERTY_PREFIX + name);
+        if (val == null)
+            return def;
+
+        try
+        {
+            return Float.parseFloat(val);
+        }
+        catch (NumberFormatException e)
+        {
+            Log.warn("Invalid value of " + PROPERTY_PREFIX + name + ": " + val);
+            return def;
+        }
+    }
+
+    /**
+     * Moves zoom towards the one matching local player size - called once per published snapshot
+     * @param localSize local player size
+     * @return new zoom
+     */
+    float updateZoom(int localSize)
+    {
+        float target = 1.0f;
+        if (zoomEnabled)
+        {
+            // square root keeps the player growing on screen, just slower than in world
+            float diameter = localSize * GameCanvas.PLAYER_SIZE_COEF;
+            if (diameter > zoomDiameter)
+                target = Math.max((float) Math.sqrt(zoomDiameter / diameter), minZoom);
+        }
+
+        // ease in, so the view does not jump when player eats something big
+        zoom += (target - zoom) * ZOOM_EASING;
+        if (Math.abs(target - zoom) < 0.001f)
+            zoom = target;
+
+        return zoom;
+    }
+
+    /**
+     * Should idle food be aggregated to density tiles at given zoom?
+     * @param zoom zoom
+     * @return aggregate food?
+     */
+    boolean isAggregated(float zoom)
+    {
+        return zoom < aggregateZoom;
+    }
+
+    /**
+     * Retrieves size of density tile in pixels
+     * @return tile size
+     */
+    int getTilePixels()
+    {
+        return tilePixels;
+    }
+
+    /**
+     * Should name of remote player with given diameter on screen be drawn?
+     * @param diameter diameter in pixels
+     * @return draw name?
+     */
+    boolean isLabelVisible(int diameter)
+    {
+        return diameter >= labelDiameter;
+    }
+
+    /**
+     * Records paint time of single frame - called from rendering thread
+     * @param aggregated was food aggregated?
+     * @param nanos paint time in nanoseconds
+     */
+    void recordFrame(boolean aggregated, long nanos)
+    {
+        if (aggregated)
+        {
+            aggregatedFrameCount++;
+            aggregatedFrameNanos += nanos;
+            if (nanos > aggregatedFrameMaxNanos)
+                aggregatedFrameMaxNanos = nanos;
+        }
+        else
+        {
+            detailedFrameCount++;
+            detailedFrameNanos += nanos;
+            if (nanos > detailedFrameMaxNanos)
+                detailedFrameMaxNanos = nanos;
+        }
+    }
+
+    /**
+     * Retrieves human readable paint time statistics
+     * @return statistics
+     */
+    String getStatistics()
+    {
+        long detailed = detailedFrameCount;
+        long aggregated = aggregatedFrameCount;
+
+        return detailed+" detailed frames (avg "+(detailed == 0 ? 0 : detailedFrameNanos / detailed / 1000)+"us, max "+detailedFrameMaxNanos / 1000
+                +"us), "+aggregated+" aggregated frames (avg "+(aggregated == 0 ? 0 : aggregatedFrameNanos / aggregated / 1000)+"us, max "
+                +aggregatedFrameMaxNanos / 1000+"us)";
+    }
+}
@@ -23,6 +23,8 @@ import cz.zcu.kiv.ups.agarclient.enums.Opcodes;
 import cz.zcu.kiv.ups.agarclient.network.ConnectionState;
 import cz.zcu.kiv.ups.agarclient.network.GamePacket;
 import cz.zcu.kiv.ups.agarclient.network.Networking;
+import cz.zcu.kiv.ups.agarclient.network.PacketDispatcher;
+import cz.zcu.kiv.ups.agarclient.network.StringCache;
 
 /**
  * Window with all lobby information - room list, etc.
@@ -38,12 +40,31 @@ public class LobbyWindow extends JFrame implements NetworkStateReceiver, ActionL
     /** Rated game identifier */
     public static final int GAMETYPE_RATED = 1;
 
+    /** Room name cache size */
+    private static final int ROOM_NAME_CACHE_SIZE = 64;
+
     /** JList of all rooms retrieved from server */
     private JList<RoomListItem> roomList;
     /** Model for room list */
     private DefaultListModel<RoomListItem> roomListModel = new DefaultListModel<RoomListItem>();
     /** Button for joining room */
     private JButton joinButton, createButton;
+    /** Cache of room names, which repeat with every room list refresh */
+    private final StringCache roomNameCache = new StringCache(ROOM_NAME_CACHE_SIZE);
+
+    /** table of packet handlers */
+    private final PacketDispatcher packetDispatcher = new PacketDispatcher();
+
+    /**
+     * Constructor - registers handlers of lobby packets
+     */
+    public LobbyWindow()
+    {
+        packetDispatcher.register(Opcodes.SP_ROOM_LIST_RESPONSE, this::handleRoomListResponse);
+        packetDispatcher.register(Opcodes.SP_JOIN_ROOM_RESPONSE, this::handleJoinRoomResponse);
+        packetDispatcher.register(Opcodes.SP_CREATE_ROOM_RESPONSE, this::handleCreateRoomResponse);
+        packetDispatcher.register(Opcodes.SP_RESTORE_SESSION_RESPONSE, this::handleRestoreSessionResponse);
+    }
 
     /**
      * Initializes contents of this frame
@@ -127,7 +148,7 @@ public class LobbyWindow extends JFrame implements NetworkStateReceiver, ActionL
                 {
                     joinButton.setEnabled(false);
                     createButton.setEnabled(false);
-                    GamePacket gp = new GamePacket(Opcodes.CP_JOIN_ROOM.val());
+                    GamePacket gp = GamePacket.obtain(Opcodes.CP_JOIN_ROOM.val());
                     gp.putInt(rli.getRoomId());
                     gp.putByte(0); // spectator - 0 for now, TODO: will be implemented later
                     Networking.getInstance().sendPacket(gp);
@@ -152,7 +173,7 @@ public class LobbyWindow extends JFrame implements NetworkStateReceiver, ActionL
     {
         roomList.setEnabled(false);
 
-        GamePacket gp = new GamePacket(Opcodes.CP_ROOM_LIST.val());
+        GamePacket gp = GamePacket.obtain(Opcodes.CP_ROOM_LIST.val());
         gp.putByte(gametype);
         Networking.getInstance().sendPacket(gp);
     }
@@ -178,89 +199,109 @@ public class LobbyWindow extends JFrame implements NetworkStateReceiver, ActionL
         gw.initGame();
     }
 
-    @Override
-    public boolean OnPacketReceived(GamePacket packet)
+    /**
+     * Handles room list response packet
+     * @param packet received packet
+     */
+    private void handleRoomListResponse(GamePacket packet)
     {
-        // room list response
-        if (packet.getOpcode() == Opcodes.SP_ROOM_LIST_RESPONSE.val())
+        // fill room list from received packet
+        roomListModel.clear();
+        int roomCount = packet.getInt();
+        for (int i = 0; i < roomCount; i++)
         {
-            // fill room list from received packet
-            roomListModel.clear();
-            int roomCount = packet.getInt();
-            for (int i = 0; i < roomCount; i++)
-            {
-                roomListModel.addElement(new RoomListItem(
-                    packet.getInt(),    // ID
-                    packet.getByte(),   // game type
-                    packet.getByte(),   // player count
-                    packet.getByte(),   // capacity
-                    packet.getString()  // room name
-                ));
-            }
-
-            // enable roomList again
-            roomList.setEnabled(true);
+            roomListModel.addElement(new RoomListItem(
+                packet.getInt(),    // ID
+                packet.getByte(),   // game type
+                packet.getByte(),   // player count
+                packet.getByte(),   // capacity
+                packet.getString(roomNameCache)  // room name
+            ));
         }
-        else if (packet.getOpcode() == Opcodes.SP_JOIN_ROOM_RESPONSE.val())
-        {
-            int statusCode = packet.getByte();
-            int chatChannel = packet.getInt(); // TODO: chat
 
-            joinButton.setEnabled(true);
-            createButton.setEnabled(true);
+        // enable roomList again
+        roomList.setEnabled(true);
+    }
 
-            switch (statusCode)
-            {
-                case 0: // all OK
-                    switchToGame();
-                    break;
-                case 1: // failed due to capacity
-                    JOptionPane.showMessageDialog(null, "Tato místnost je plná!", "Nelze se připojit", JOptionPane.ERROR_MESSAGE);
-                    break;
-                case 2: // no spectators allowed
-                    JOptionPane.showMessageDialog(null, "Tato místnost nepřijímá spektátory!", "Nelze se připojit", JOptionPane.ERROR_MESSAGE);
-                    break;
-                case 3: // no such room (should not happen)
-                    JOptionPane.showMessageDialog(null, "Tato místnost již byla ukončena!", "Nelze se připojit", JOptionPane.ERROR_MESSAGE);
-                    break;
-                case 4: // already in room (should not happen)
-                    break;
-            }
-        }
-        else if (packet.getOpcode() == Opcodes.SP_CREATE_ROOM_RESPONSE.val())
+    /**
+     * Handles join room response packet
+     * @param packet received packet
+     */
+    private void handleJoinRoomResponse(GamePacket packet)
+    {
+        int statusCode = packet.getByte();
+        int chatChannel = packet.getInt(); // TODO: chat
+
+        joinButton.setEnabled(true);
+        createButton.setEnabled(true);
+
+        switch (statusCode)
         {
-            int statusCode = packet.getByte();
-            int chatChannel = packet.getInt(); // TODO: chat
+            case 0: // all OK
+                switchToGame();
+                break;
+            case 1: // failed due to capacity
+                JOptionPane.showMessageDialog(null, "Tato místnost je plná!", "Nelze se připojit", JOptionPane.ERROR_MESSAGE);
+                break;
+            case 2: // no spectators allowed
+                JOptionPane.showMessageDialog(null, "Tato místnost nepřijímá spektátory!", "Nelze se připojit", JOptionPane.ERROR_MESSAGE);
+                break;
+            case 3: // no such room (should not happen)
+                JOptionPane.showMessageDialog(null, "Tato místnost již byla ukončena!", "Nelze se připojit", JOptionPane.ERROR_MESSAGE);
+                break;
+            case 4: // already in room (should not happen)
+                break;
+        }
+    }
 
-            joinButton.setEnabled(true);
-            createButton.setEnabled(true);
+    /**
+     * Handles create room response packet
+     * @param packet received packet
+     */
+    private void handleCreateRoomResponse(GamePacket packet)
+    {
+        int statusCode = packet.getByte();
+        int chatChannel = packet.getInt(); // TODO: chat
 
-            switch (statusCode)
-            {
-                case 0: // all OK
-                    switchToGame();
-                    break;
-                case 1: // failed due to capacity
-                    JOptionPane.showMessageDialog(null, "Server již nedovoluje zakládat další místnosti!", "Nelze vytvořit", JOptionPane.ERROR_MESSAGE);
-                    break;
-                case 2: // invalid parameters
-                    JOptionPane.showMessageDialog(null, "Byly zadány neplatné parametry!", "Nelze vytvořit", JOptionPane.ERROR_MESSAGE);
-                    break;
-            }
+        joinButton.setEnabled(true);
+        createButton.setEnabled(true);
+
+        switch (statusCode)
+        {
+            case 0: // all OK
+                switchToGame();
+                break;
+            case 1: // failed due to capacity
+                JOptionPane.showMessageDialog(null, "Server již nedovoluje zakládat další místnosti!", "Nelze vytvořit", JOptionPane.ERROR_MESSAGE);
+                break;
+            case 2: // invalid parameters
+                JOptionPane.showMessageDialog(null, "Byly zadány neplatné parametry!", "Nelze vytvořit", JOptionPane.ERROR_MESSAGE);
+                break;
+        }
+    }
+
+    /**
+     * Handles session restore response packet
+     * @param packet received packet
+     */
+    private void handleRestoreSessionResponse(GamePacket packet)
+    {
+        int statusCode = packet.getByte();
+        if (statusCode != 0)
+        {
+            JOptionPane.showMessageDialog(null, "Přihlášení vypršelo, prosím, přihlašte se znovu!", "Nelze obnovit spojení", JOptionPane.ERROR_MESSAGE);
+            Networking.getInstance().disconnect();
         }
-        else if (packet.getOpcode() == Opcodes.SP_RESTORE_SESSION_RESPONSE.val())
+        else
         {
-            int statusCode = packet.getByte();
-            if (statusCode != 0)
-            {
-                JOptionPane.showMessageDialog(null, "Přihlášení vypršelo, prosím, přihlašte se znovu!", "Nelze obnovit spojení", JOptionPane.ERROR_MESSAGE);
-                Networking.getInstance().disconnect();
-            }
-            else
-            {
-                initRoomList(GAMETYPE_FREEFORALL);
-            }
+            initRoomList(GAMETYPE_FREEFORALL);
         }
+    }
+
+    @Override
+    public boolean OnPacketReceived(GamePacket packet)
+    {
+        packetDispatcher.dispatch(packet);
 
         return true;
     }
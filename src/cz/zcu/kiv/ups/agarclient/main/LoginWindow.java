@@ -15,9 +15,11 @@ import javax.swing.JPasswordField;
 import javax.swing.JTextField;
 
 import cz.zcu.kiv.ups.agarclient.enums.Opcodes;
+import cz.zcu.kiv.ups.agarclient.misc.Log;
 import cz.zcu.kiv.ups.agarclient.network.ConnectionState;
 import cz.zcu.kiv.ups.agarclient.network.GamePacket;
 import cz.zcu.kiv.ups.agarclient.network.Networking;
+import cz.zcu.kiv.ups.agarclient.network.PacketDispatcher;
 
 /**
  * Login window for retrieving server address and port, user name, password
@@ -44,6 +46,18 @@ public class LoginWindow extends JFrame implements NetworkStateReceiver
     /** result text label */
     private JLabel resultText;
 
+    /** table of packet handlers */
+    private final PacketDispatcher packetDispatcher = new PacketDispatcher();
+
+    /**
+     * Constructor - registers handlers of login packets
+     */
+    public LoginWindow()
+    {
+        packetDispatcher.register(Opcodes.SP_LOGIN_RESPONSE, this::handleLoginResponse);
+        packetDispatcher.register(Opcodes.SP_REGISTER_RESPONSE, this::handleRegisterResponse);
+    }
+
     /**
      * Initializes components inside this frame
      */
@@ -154,7 +168,7 @@ public class LoginWindow extends JFrame implements NetworkStateReceiver
                 Main.setPlayerName(usernameField.getText());
 
                 // build login packet
-                GamePacket gp = new GamePacket(Opcodes.CP_LOGIN.val());
+                GamePacket gp = GamePacket.obtain(Opcodes.CP_LOGIN.val());
 
                 gp.putString(usernameField.getText());
                 gp.putString(new String(passwordField.getPassword()));
@@ -182,7 +196,7 @@ public class LoginWindow extends JFrame implements NetworkStateReceiver
                 Main.setPlayerName(usernameField.getText());
 
                 // build register packet
-                GamePacket gp = new GamePacket(Opcodes.CP_REGISTER.val());
+                GamePacket gp = GamePacket.obtain(Opcodes.CP_REGISTER.val());
 
                 gp.putString(usernameField.getText());
                 gp.putString(new String(passwordField.getPassword()));
@@ -221,113 +235,126 @@ public class LoginWindow extends JFrame implements NetworkStateReceiver
         lw.initRoomList();
     }
 
-    @Override
-    public boolean OnPacketReceived(GamePacket packet)
+    /**
+     * Handles login response packet
+     * @param packet received packet
+     */
+    private void handleLoginResponse(GamePacket packet)
     {
-        if (packet.getOpcode() == Opcodes.SP_LOGIN_RESPONSE.val())
+        int rescode = packet.getByte();
+        int plid;
+        String sessKey;
+
+        switch (rescode)
         {
-            int rescode = packet.getByte();
-            int plid;
-            String sessKey;
+            case 0: // OK
+
+                // retrieve player ID and store it
+                plid = packet.getInt();
+                Main.setPlayerId(plid);
+
+                sessKey = packet.getString();
+                Main.setSessionKey(sessKey);
+                if (Log.isDebugEnabled())
+                    Log.debug("Session key: "+sessKey);
+
+                setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+                goToLobby();
+                return;
+            case 4: // OK, but server suggested session restore
+                // at this time, player is already in some room
+                // we will just send session restore request
+                plid = packet.getInt();
+                Main.setPlayerId(plid);
+
+                sessKey = packet.getString();
+                Main.setSessionKey(sessKey);
+                if (Log.isDebugEnabled())
+                    Log.debug("Session key: "+sessKey);
+
+                // create game window and pass everything
+
+                LobbyWindow lw = new LobbyWindow();
+                lw.initComponents();
+                lw.setVisible(false);
+
+                GameWindow gw = new GameWindow(lw);
+                gw.initComponents();
+                Networking.getInstance().registerStateReceiver(gw);
+
+                setVisible(false);
+                gw.setVisible(true);
+
+                Networking.getInstance().simulateSessionTimeout();
+
+                break;
+            case 1: // invalid name
+                resultText.setText("Neexistující uživatel!");
+                break;
+            case 2: // wrong password
+                resultText.setText("Nesprávné heslo!");
+                break;
+            case 3: // version mismatch
+                resultText.setText("Špatná verze hry!");
+                break;
+        }
 
-            switch (rescode)
-            {
-                case 0: // OK
-
-                    // retrieve player ID and store it
-                    plid = packet.getInt();
-                    Main.setPlayerId(plid);
-
-                    sessKey = packet.getString();
-                    Main.setSessionKey(sessKey);
-                    System.out.println("Session key: "+sessKey);
-
-                    setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
-                    goToLobby();
-                    return true;
-                case 4: // OK, but server suggested session restore
-                    // at this time, player is already in some room
-                    // we will just send session restore request
-                    plid = packet.getInt();
-                    Main.setPlayerId(plid);
-
-                    sessKey = packet.getString();
-                    Main.setSessionKey(sessKey);
-                    System.out.println("Session key: "+sessKey);
-
-                    // create game window and pass everything
-
-                    LobbyWindow lw = new LobbyWindow();
-                    lw.initComponents();
-                    lw.setVisible(false);
-
-                    GameWindow gw = new GameWindow(lw);
-                    gw.initComponents();
-                    Networking.getInstance().registerStateReceiver(gw);
-
-                    setVisible(false);
-                    gw.setVisible(true);
-
-                    Networking.getInstance().simulateSessionTimeout();
-
-                    break;
-                case 1: // invalid name
-                    resultText.setText("Neexistující uživatel!");
-                    break;
-                case 2: // wrong password
-                    resultText.setText("Nesprávné heslo!");
-                    break;
-                case 3: // version mismatch
-                    resultText.setText("Špatná verze hry!");
-                    break;
-            }
+        setButtonsEnabled(true);
+    }
 
-            setButtonsEnabled(true);
-        }
-        else if (packet.getOpcode() == Opcodes.SP_REGISTER_RESPONSE.val())
-        {
-            int rescode = packet.getByte();
+    /**
+     * Handles register response packet
+     * @param packet received packet
+     */
+    private void handleRegisterResponse(GamePacket packet)
+    {
+        int rescode = packet.getByte();
 
-            switch (rescode)
-            {
-                case 0: // OK
-
-                    int plid = packet.getInt();
-                    Main.setPlayerId(plid);
-
-                    String sessKey = packet.getString();
-                    Main.setSessionKey(sessKey);
-
-                    setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
-                    goToLobby();
-                    break;
-                case 1: // invalid name
-                    resultText.setText("Neexistující uživatel!");
-                    break;
-                case 2: // name too short
-                    resultText.setText("Uživatelské jméno je příliš krátké!");
-                    break;
-                case 3: // name too long
-                    resultText.setText("Uživatelské jméno je příliš dlouhé!");
-                    break;
-                case 4: // password too short
-                    resultText.setText("Heslo je příliš krátké!");
-                    break;
-                case 5: // password too long
-                    resultText.setText("Heslo je příliš dlouhé!");
-                    break;
-                case 6: // name is taken
-                    resultText.setText("Uživatelské jméno již bylo registrováno!");
-                    break;
-                case 7: // version mismatch
-                    resultText.setText("Špatná verze hry!");
-                    break;
-
-            }
+        switch (rescode)
+        {
+            case 0: // OK
+
+                int plid = packet.getInt();
+                Main.setPlayerId(plid);
+
+                String sessKey = packet.getString();
+                Main.setSessionKey(sessKey);
+
+                setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+                goToLobby();
+                break;
+            case 1: // invalid name
+                resultText.setText("Neexistující uživatel!");
+                break;
+            case 2: // name too short
+                resultText.setText("Uživatelské jméno je příliš krátké!");
+                break;
+            case 3: // name too long
+                resultText.setText("Uživatelské jméno je příliš dlouhé!");
+                break;
+            case 4: // password too short
+                resultText.setText("Heslo je příliš krátké!");
+                break;
+            case 5: // password too long
+                resultText.setText("Heslo je příliš dlouhé!");
+                break;
+            case 6: // name is taken
+                resultText.setText("Uživatelské jméno již bylo registrováno!");
+                break;
+            case 7: // version mismatch
+                resultText.setText("Špatná verze hry!");
+                break;
 
-            setButtonsEnabled(true);
         }
 
+        setButtonsEnabled(true);
+    }
+
+    @Override
+    public boolean OnPacketReceived(GamePacket packet)
+    {
+        packetDispatcher.dispatch(packet);
+
         return true;
     }
 
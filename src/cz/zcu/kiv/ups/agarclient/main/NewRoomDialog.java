@@ -134,7 +134,7 @@ public class NewRoomDialog extends JDialog
 
                 String roomName = roomNameField.getText();
 
-                GamePacket gp = new GamePacket(Opcodes.CP_CREATE_ROOM.val());
+                GamePacket gp = GamePacket.obtain(Opcodes.CP_CREATE_ROOM.val());
                 gp.putString(roomName);
                 gp.putInt(Integer.parseInt(((JSpinner.DefaultEditor)spinner.getEditor()).getTextField().getText()));
                 gp.putInt(sel.getSize());
@@ -17,6 +17,10 @@ public class PlayerObject extends WorldObject
     protected int size;
     /** coefficient of movement speed */
     protected float moveCoef;
+    /** position X at the start of current simulation tick */
+    protected float prevPositionX;
+    /** position Y at the start of current simulation tick */
+    protected float prevPositionY;
 
     /**
      * Constructor of player object
@@ -39,6 +43,8 @@ public class PlayerObject extends WorldObject
         this.moving = moving;
         this.moveAngle = moveAngle;
         this.moveCoef = GameStorage.MOVE_MS_COEF_MAX;
+        this.prevPositionX = posX;
+        this.prevPositionY = posY;
     }
 
     @Override
@@ -0,0 +1,434 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import cz.zcu.kiv.ups.agarclient.misc.IntList;
+
+/**
+ * Adaptive quadtree of world object slots. Leaves split, when they hold too many objects,
+ * and subtrees collapse back to a leaf, when they get sparse, so crowded areas (around bonus
+ * spawns, large players) are finely divided while empty areas cost a single node.
+ * Positions outside of map fall to border leaves.
+ *
+ * @author martin.ubl
+ */
+class QuadtreeIndex implements SpatialIndex
+{
+    /** count of objects in leaf, that causes its split */
+    private static final int LEAF_CAPACITY = 32;
+    /** count of objects in subtree, that causes its collapse to leaf */
+    private static final int COLLAPSE_THRESHOLD = LEAF_CAPACITY / 2;
+    /** maximum tree depth; leaves at this depth never split */
+    private static final int MAX_DEPTH = 12;
+
+    /**
+     * Single node of quadtree
+     */
+    private static final class Node
+    {
+        /** node left */
+        final float minX;
+        /** node top */
+        final float minY;
+        /** node right */
+        final float maxX;
+        /** node bottom */
+        final float maxY;
+        /** node center X */
+        final float centerX;
+        /** node center Y */
+        final float centerY;
+        /** node depth, root is 0 */
+        final int depth;
+
+        /** children (top-left, top-right, bottom-left, bottom-right), null for leaf */
+        Node[] children = null;
+        /** objects of leaf, null for inner node */
+        GridCell bucket = new GridCell();
+        /** count of objects in whole subtree */
+        int total = 0;
+
+        /**
+         * Creates leaf node
+         * @param minX node left
+         * @param minY node top
+         * @param maxX node right
+         * @param maxY node bottom
+         * @param depth node depth
+         */
+        Node(float minX, float minY, float maxX, float maxY, int depth)
+        {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.centerX = (minX + maxX) / 2.0f;
+            this.centerY = (minY + maxY) / 2.0f;
+            this.depth = depth;
+        }
+
+        /**
+         * Retrieves child containing position
+         * @param x position X
+         * @param y position Y
+         * @return child node
+         */
+        Node childAt(float x, float y)
+        {
+            return children[(x < centerX ? 0 : 1) + (y < centerY ? 0 : 2)];
+        }
+    }
+
+    /** store of object positions */
+    private final WorldObjectStore store;
+    /** indexed area width */
+    private final float width;
+    /** indexed area height */
+    private final float height;
+    /** root node */
+    private Node root;
+    /** batch distance test */
+    private final DistanceKernel kernel = DistanceKernel.getInstance();
+    /** indices selected by distance test, reused */
+    private int[] hits = new int[64];
+
+    /**
+     * Creates empty quadtree
+     * @param store store of object positions
+     * @param width indexed area width (in world units)
+     * @param height indexed area height (in world units)
+     */
+    QuadtreeIndex(WorldObjectStore store, float width, float height)
+    {
+        this.store = store;
+        this.width = Math.max(width, 0.0f);
+        this.height = Math.max(height, 0.0f);
+        this.root = new Node(0.0f, 0.0f, this.width, this.height, 0);
+    }
+
+    /**
+     * Finds leaf containing position
+     * @param x position X
+     * @param y position Y
+     * @return leaf node
+     */
+    private Node leafAt(float x, float y)
+    {
+        Node node = root;
+        while (node.children != null)
+            node = node.childAt(x, y);
+        return node;
+    }
+
+    /**
+     * Does the node contain position? Border nodes also contain everything beyond map border
+     * @param node node
+     * @param x position X
+     * @param y position Y
+     * @return does it contain the position?
+     */
+    private boolean contains(Node node, float x, float y)
+    {
+        return (x >= node.minX || node.minX <= 0.0f) && (x < node.maxX || node.maxX >= width)
+                && (y >= node.minY || node.minY <= 0.0f) && (y < node.maxY || node.maxY >= height);
+    }
+
+    /**
+     * Splits leaf to four children and distributes its objects among them
+     * @param node leaf to split
+     */
+    private void split(Node node)
+    {
+        int depth = node.depth + 1;
+
+        node.children = new Node[] {
+            new Node(node.minX, node.minY, node.centerX, node.centerY, depth),
+            new Node(node.centerX, node.minY, node.maxX, node.centerY, depth),
+            new Node(node.minX, node.centerY, node.centerX, node.maxY, depth),
+            new Node(node.centerX, node.centerY, node.maxX, node.maxY, depth)
+        };
+
+        GridCell bucket = node.bucket;
+        node.bucket = null;
+
+        float[] xs = bucket.getXs(), ys = bucket.getYs();
+        for (int i = 0; i < bucket.size(); i++)
+        {
+            Node child = node.childAt(xs[i], ys[i]);
+            child.bucket.add(bucket.get(i), xs[i], ys[i]);
+            child.total++;
+        }
+
+        // all objects could fall to the same child (identical positions)
+        for (Node child : node.children)
+        {
+            if (child.total > LEAF_CAPACITY && depth < MAX_DEPTH)
+                split(child);
+        }
+    }
+
+    /**
+     * Collapses subtree to a single leaf
+     * @param node subtree root
+     */
+    private void collapse(Node node)
+    {
+        GridCell bucket = new GridCell();
+        gather(node, bucket);
+
+        node.children = null;
+        node.bucket = bucket;
+    }
+
+    /**
+     * Copies all objects of subtree to bucket
+     * @param node subtree root
+     * @param bucket target bucket
+     */
+    private void gather(Node node, GridCell bucket)
+    {
+        if (node.children == null)
+        {
+            float[] xs = node.bucket.getXs(), ys = node.bucket.getYs();
+            for (int i = 0; i < node.bucket.size(); i++)
+                bucket.add(node.bucket.get(i), xs[i], ys[i]);
+            return;
+        }
+
+        for (Node child : node.children)
+            gather(child, bucket);
+    }
+
+    /**
+     * Adds object to subtree
+     * @param node subtree root
+     * @param slot object slot
+     * @param x object position X
+     * @param y object position Y
+     */
+    private void insert(Node node, int slot, float x, float y)
+    {
+        while (node.children != null)
+        {
+            node.total++;
+            node = node.childAt(x, y);
+        }
+
+        node.bucket.add(slot, x, y);
+        node.total++;
+
+        if (node.total > LEAF_CAPACITY && node.depth < MAX_DEPTH)
+            split(node);
+    }
+
+    /**
+     * Removes object from subtree and collapses sparse nodes on the way back
+     * @param node subtree root
+     * @param slot object slot
+     * @param x object position X
+     * @param y object position Y
+     * @return was the object present?
+     */
+    private boolean remove(Node node, int slot, float x, float y)
+    {
+        if (node.children == null)
+        {
+            if (!node.bucket.remove(slot))
+                return false;
+
+            node.total--;
+            return true;
+        }
+
+        if (!remove(node.childAt(x, y), slot, x, y))
+            return false;
+
+        node.total--;
+        if (node.total <= COLLAPSE_THRESHOLD)
+            collapse(node);
+
+        return true;
+    }
+
+    @Override
+    public void insert(int slot)
+    {
+        insert(root, slot, store.getX(slot), store.getY(slot));
+    }
+
+    @Override
+    public void move(int slot, float oldX, float oldY)
+    {
+        float x = store.getX(slot), y = store.getY(slot);
+
+        // still within the same leaf, just update position
+        Node leaf = leafAt(oldX, oldY);
+        if (contains(leaf, x, y))
+        {
+            leaf.bucket.update(slot, x, y);
+            return;
+        }
+
+        if (remove(root, slot, oldX, oldY))
+            insert(root, slot, x, y);
+    }
+
+    @Override
+    public boolean remove(int slot)
+    {
+        return remove(root, slot, store.getX(slot), store.getY(slot));
+    }
+
+    /**
+     * Does the node overlap rectangle? Border nodes are considered to reach to infinity,
+     * as they hold also objects outside of map
+     * @param node node
+     * @param minX rectangle left
+     * @param minY rectangle top
+     * @param maxX rectangle right
+     * @param maxY rectangle bottom
+     * @return does it overlap?
+     */
+    private boolean overlaps(Node node, float minX, float minY, float maxX, float maxY)
+    {
+        return (node.minX <= maxX || node.minX <= 0.0f) && (node.maxX >= minX || node.maxX >= width)
+                && (node.minY <= maxY || node.minY <= 0.0f) && (node.maxY >= minY || node.maxY >= height);
+    }
+
+    /**
+     * Collects objects within rectangle from subtree
+     * @param node subtree root
+     * @param minX rectangle left
+     * @param minY rectangle top
+     * @param maxX rectangle right
+     * @param maxY rectangle bottom
+     * @param out list to append slots to
+     */
+    private void queryRect(Node node, float minX, float minY, float maxX, float maxY, IntList out)
+    {
+        if (node.total == 0 || !overlaps(node, minX, minY, maxX, maxY))
+            return;
+
+        if (node.children != null)
+        {
+            for (Node child : node.children)
+                queryRect(child, minX, minY, maxX, maxY, out);
+            return;
+        }
+
+        GridCell bucket = node.bucket;
+        float[] xs = bucket.getXs(), ys = bucket.getYs();
+
+        for (int k = 0; k < bucket.size(); k++)
+        {
+            if (xs[k] >= minX && xs[k] < maxX && ys[k] >= minY && ys[k] < maxY)
+                out.add(bucket.get(k));
+        }
+    }
+
+    @Override
+    public void queryRect(float minX, float minY, float maxX, float maxY, IntList out)
+    {
+        if (minX < maxX && minY < maxY)
+            queryRect(root, minX, minY, maxX, maxY, out);
+    }
+
+    /**
+     * Collects objects within circle from subtree
+     * @param node subtree root
+     * @param x center X
+     * @param y center Y
+     * @param radius circle radius
+     * @param out list to append slots to
+     */
+    private void queryRadius(Node node, float x, float y, float radius, IntList out)
+    {
+        if (node.total == 0 || !overlaps(node, x - radius, y - radius, x + radius, y + radius))
+            return;
+
+        if (node.children != null)
+        {
+            for (Node child : node.children)
+                queryRadius(child, x, y, radius, out);
+            return;
+        }
+
+        GridCell bucket = node.bucket;
+        if (hits.length < bucket.size())
+            hits = new int[bucket.size() * 2];
+
+        // test whole leaf at once
+        int selected = kernel.selectWithin(bucket.getXs(), bucket.getYs(), bucket.size(), x, y, radius * radius, hits);
+        for (int k = 0; k < selected; k++)
+            out.add(bucket.get(hits[k]));
+    }
+
+    @Override
+    public void queryRadius(float x, float y, float radius, IntList out)
+    {
+        queryRadius(root, x, y, radius, out);
+    }
+
+    /**
+     * Removes objects within rectangle from subtree
+     * @param node subtree root
+     * @param minX rectangle left
+     * @param minY rectangle top
+     * @param maxX rectangle right
+     * @param maxY rectangle bottom
+     * @param out list to append removed slots to
+     * @return count of removed objects
+     */
+    private int removeRect(Node node, float minX, float minY, float maxX, float maxY, IntList out)
+    {
+        if (node.total == 0 || !overlaps(node, minX, minY, maxX, maxY))
+            return 0;
+
+        int removed = 0;
+
+        if (node.children != null)
+        {
+            for (Node child : node.children)
+                removed += removeRect(child, minX, minY, maxX, maxY, out);
+
+            node.total -= removed;
+            if (removed > 0 && node.total <= COLLAPSE_THRESHOLD)
+                collapse(node);
+
+            return removed;
+        }
+
+        GridCell bucket = node.bucket;
+        float[] xs = bucket.getXs(), ys = bucket.getYs();
+
+        // go backwards, removal moves the last slot to the freed place
+        for (int k = bucket.size() - 1; k >= 0; k--)
+        {
+            if (xs[k] >= minX && xs[k] < maxX && ys[k] >= minY && ys[k] < maxY)
+            {
+                out.add(bucket.removeAt(k));
+                removed++;
+            }
+        }
+
+        node.total -= removed;
+        return removed;
+    }
+
+    @Override
+    public void removeRect(float minX, float minY, float maxX, float maxY, IntList out)
+    {
+        if (minX < maxX && minY < maxY)
+            removeRect(root, minX, minY, maxX, maxY, out);
+    }
+
+    @Override
+    public int size()
+    {
+        return root.total;
+    }
+
+    @Override
+    public void clear()
+    {
+        root = new Node(0.0f, 0.0f, width, height, 0);
+    }
+}
@@ -0,0 +1,203 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import java.util.Arrays;
+
+/**
+ * Copy of everything the renderer needs from game storage. Snapshots are filled by
+ * GameStorage.publishSnapshot once per tick and handed over to renderer without locking.
+ * Arrays are reused between ticks and only grow.
+ *
+ * @author martin.ubl
+ */
+class RenderSnapshot
+{
+    /** initial capacity of object arrays */
+    private static final int INITIAL_OBJECT_CAPACITY = 256;
+    /** initial capacity of player arrays */
+    private static final int INITIAL_PLAYER_CAPACITY = 16;
+
+    /** snapshot version; higher is newer */
+    long version = 0;
+
+    /** is there any local player? */
+    boolean hasLocalPlayer = false;
+    /** local player position X */
+    float localX;
+    /** local player position Y */
+    float localY;
+    /** local player size */
+    int localSize;
+    /** local player color */
+    int localColor;
+    /** local player name */
+    String localName;
+
+    /** pixels per world unit */
+    float scale = GameCanvas.DRAW_UNIT_COEF;
+    /** camera zoom (1 - no zoom) */
+    float zoom = 1.0f;
+
+    /** is idle food aggregated to density tiles? */
+    boolean aggregated = false;
+    /** density tile size (in world units) */
+    float tileSize;
+    /** position X of left edge of first tile column */
+    float tileOriginX;
+    /** position Y of top edge of first tile row */
+    float tileOriginY;
+    /** count of tile columns */
+    int tileColumns = 0;
+    /** count of tile rows */
+    int tileRows = 0;
+    /** count of idle food in each tile, row by row */
+    int[] tileCount = new int[0];
+
+    /** count of world objects */
+    int objectCount = 0;
+    /** world object positions X */
+    float[] objectX = new float[INITIAL_OBJECT_CAPACITY];
+    /** world object positions Y */
+    float[] objectY = new float[INITIAL_OBJECT_CAPACITY];
+    /** world object types */
+    byte[] objectType = new byte[INITIAL_OBJECT_CAPACITY];
+
+    /** count of players */
+    int playerCount = 0;
+    /** player positions X */
+    float[] playerX = new float[INITIAL_PLAYER_CAPACITY];
+    /** player positions Y */
+    float[] playerY = new float[INITIAL_PLAYER_CAPACITY];
+    /** player sizes */
+    int[] playerSize = new int[INITIAL_PLAYER_CAPACITY];
+    /** player colors */
+    int[] playerColor = new int[INITIAL_PLAYER_CAPACITY];
+    /** player names */
+    String[] playerName = new String[INITIAL_PLAYER_CAPACITY];
+
+    /**
+     * Clears snapshot contents, keeps allocated arrays
+     */
+    void clear()
+    {
+        hasLocalPlayer = false;
+        localName = null;
+        aggregated = false;
+        objectCount = 0;
+        // drop name references, so removed players can be collected
+        Arrays.fill(playerName, 0, playerCount, null);
+        playerCount = 0;
+    }
+
+    /**
+     * Interpolates position between previous and current tick
+     * @param prev position at previous tick
+     * @param curr position at current tick
+     * @param alpha interpolation factor (0 - 1)
+     * @return interpolated position
+     */
+    private static float interpolate(float prev, float curr, float alpha)
+    {
+        return prev + (curr - prev) * alpha;
+    }
+
+    /**
+     * Sets local player state
+     * @param pl local player
+     * @param alpha position between previous and current tick
+     */
+    void setLocalPlayer(LocalPlayer pl, float alpha)
+    {
+        hasLocalPlayer = true;
+        localX = interpolate(pl.prevPositionX, pl.positionX, alpha);
+        localY = interpolate(pl.prevPositionY, pl.positionY, alpha);
+        localSize = pl.size;
+        localColor = pl.param;
+        localName = pl.name;
+    }
+
+    /**
+     * Prepares empty density tiles covering given area; tiles are aligned to multiples of tile size,
+     * so they do not shift with moving camera
+     * @param minX left edge of area
+     * @param minY top edge of area
+     * @param maxX right edge of area
+     * @param maxY bottom edge of area
+     * @param size tile size (in world units)
+     */
+    void beginTiles(float minX, float minY, float maxX, float maxY, float size)
+    {
+        aggregated = true;
+        tileSize = size;
+        tileOriginX = (float) Math.floor(minX / size) * size;
+        tileOriginY = (float) Math.floor(minY / size) * size;
+        tileColumns = (int) ((maxX - tileOriginX) / size) + 1;
+        tileRows = (int) ((maxY - tileOriginY) / size) + 1;
+
+        int count = tileColumns * tileRows;
+        if (tileCount.length < count)
+            tileCount = new int[count];
+        else
+            Arrays.fill(tileCount, 0, count, 0);
+    }
+
+    /**
+     * Counts idle food to density tile containing given position
+     * @param x position X
+     * @param y position Y
+     */
+    void addTileObject(float x, float y)
+    {
+        int col = (int) ((x - tileOriginX) / tileSize);
+        int row = (int) ((y - tileOriginY) / tileSize);
+
+        if (col >= 0 && col < tileColumns && row >= 0 && row < tileRows)
+            tileCount[row * tileColumns + col]++;
+    }
+
+    /**
+     * Adds world object
+     * @param x position X
+     * @param y position Y
+     * @param type object type id
+     */
+    void addObject(float x, float y, byte type)
+    {
+        if (objectCount == objectX.length)
+        {
+            int capacity = objectCount * 2;
+            objectX = Arrays.copyOf(objectX, capacity);
+            objectY = Arrays.copyOf(objectY, capacity);
+            objectType = Arrays.copyOf(objectType, capacity);
+        }
+
+        objectX[objectCount] = x;
+        objectY[objectCount] = y;
+        objectType[objectCount] = type;
+        objectCount++;
+    }
+
+    /**
+     * Adds player
+     * @param plr player
+     * @param alpha position between previous and current tick
+     */
+    void addPlayer(PlayerObject plr, float alpha)
+    {
+        if (playerCount == playerX.length)
+        {
+            int capacity = playerCount * 2;
+            playerX = Arrays.copyOf(playerX, capacity);
+            playerY = Arrays.copyOf(playerY, capacity);
+            playerSize = Arrays.copyOf(playerSize, capacity);
+            playerColor = Arrays.copyOf(playerColor, capacity);
+            playerName = Arrays.copyOf(playerName, capacity);
+        }
+
+        playerX[playerCount] = interpolate(plr.prevPositionX, plr.positionX, alpha);
+        playerY[playerCount] = interpolate(plr.prevPositionY, plr.positionY, alpha);
+        playerSize[playerCount] = plr.size;
+        playerColor[playerCount] = plr.param;
+        playerName[playerCount] = plr.name;
+        playerCount++;
+    }
+}
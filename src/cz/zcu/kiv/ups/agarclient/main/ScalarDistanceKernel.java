@@ -0,0 +1,34 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+/**
+ * Scalar distance kernel; the loop has no branches (index is always written, output position
+ * moves only for hits), so JIT is free to unroll it and vectorize the arithmetic
+ *
+ * @author martin.ubl
+ */
+class ScalarDistanceKernel extends DistanceKernel
+{
+    @Override
+    int selectWithin(float[] xs, float[] ys, int count, float cx, float cy, float radiusSq, int[] out)
+    {
+        int selected = 0;
+        float dx, dy;
+
+        for (int i = 0; i < count; i++)
+        {
+            dx = xs[i] - cx;
+            dy = ys[i] - cy;
+
+            out[selected] = i;
+            selected += (dx * dx + dy * dy <= radiusSq) ? 1 : 0;
+        }
+
+        return selected;
+    }
+
+    @Override
+    String getName()
+    {
+        return "scalar";
+    }
+}
@@ -0,0 +1,246 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import cz.zcu.kiv.ups.agarclient.misc.IntList;
+
+/**
+ * Uniform spatial grid of world object slots - flat array of cells, indexed by cx * height + cy. Only
+ * a reference per cell is allocated for the whole map, cells themselves are allocated when
+ * the first object is inserted, so the memory needed scales with count of objects.
+ * Positions outside of map are clamped to border cells.
+ *
+ * @author martin.ubl
+ */
+class SpatialGrid implements SpatialIndex
+{
+    /** store of object positions */
+    private final WorldObjectStore store;
+    /** cell size (in world units) */
+    private final float cellSize;
+    /** grid width (in cells) */
+    private final int width;
+    /** grid height (in cells) */
+    private final int height;
+    /** cells, null until something is inserted */
+    private final GridCell[] cells;
+    /** count of indexed objects */
+    private int count = 0;
+    /** batch distance test */
+    private final DistanceKernel kernel = DistanceKernel.getInstance();
+    /** indices selected by distance test, reused */
+    private int[] hits = new int[64];
+
+    /**
+     * Creates empty grid
+     * @param store store of object positions
+     * @param cellSize cell size (in world units)
+     * @param width grid width (in cells)
+     * @param height grid height (in cells)
+     */
+    SpatialGrid(WorldObjectStore store, float cellSize, int width, int height)
+    {
+        this.store = store;
+        this.cellSize = cellSize;
+        this.width = Math.max(width, 0);
+        this.height = Math.max(height, 0);
+        this.cells = new GridCell[this.width * this.height];
+    }
+
+    /**
+     * Converts position to column index, clamped to grid
+     * @param x position X
+     * @return column index
+     */
+    private int columnOf(float x)
+    {
+        return Math.min(Math.max((int) (x / cellSize), 0), width - 1);
+    }
+
+    /**
+     * Converts position to row index, clamped to grid
+     * @param y position Y
+     * @return row index
+     */
+    private int rowOf(float y)
+    {
+        return Math.min(Math.max((int) (y / cellSize), 0), height - 1);
+    }
+
+    /**
+     * Retrieves cell containing position
+     * @param x position X
+     * @param y position Y
+     * @param create should the cell be allocated, if it does not exist yet?
+     * @return cell, or null if it does not exist (or the grid is empty)
+     */
+    private GridCell cellAt(float x, float y, boolean create)
+    {
+        if (cells.length == 0)
+            return null;
+
+        int index = columnOf(x) * height + rowOf(y);
+        GridCell cell = cells[index];
+
+        if (cell == null && create)
+        {
+            cell = new GridCell();
+            cells[index] = cell;
+        }
+
+        return cell;
+    }
+
+    @Override
+    public void insert(int slot)
+    {
+        float x = store.getX(slot), y = store.getY(slot);
+
+        GridCell cell = cellAt(x, y, true);
+        if (cell != null)
+        {
+            cell.add(slot, x, y);
+            count++;
+        }
+    }
+
+    @Override
+    public void move(int slot, float oldX, float oldY)
+    {
+        float x = store.getX(slot), y = store.getY(slot);
+
+        GridCell oldCell = cellAt(oldX, oldY, false);
+        if (oldCell == null)
+            return;
+
+        GridCell newCell = cellAt(x, y, true);
+
+        // still within the same cell, just update position
+        if (oldCell == newCell)
+            oldCell.update(slot, x, y);
+        else if (oldCell.remove(slot))
+            newCell.add(slot, x, y);
+    }
+
+    @Override
+    public boolean remove(int slot)
+    {
+        GridCell cell = cellAt(store.getX(slot), store.getY(slot), false);
+        if (cell == null || !cell.remove(slot))
+            return false;
+
+        count--;
+        return true;
+    }
+
+    @Override
+    public void queryRect(float minX, float minY, float maxX, float maxY, IntList out)
+    {
+        if (cells.length == 0 || minX >= maxX || minY >= maxY)
+            return;
+
+        int maxCx = columnOf(maxX), maxCy = rowOf(maxY);
+        GridCell cell;
+        float[] xs, ys;
+
+        for (int cx = columnOf(minX); cx <= maxCx; cx++)
+        {
+            // cells of one column are adjacent in array
+            int base = cx * height;
+            for (int cy = rowOf(minY); cy <= maxCy; cy++)
+            {
+                cell = cells[base + cy];
+                if (cell == null)
+                    continue;
+
+                xs = cell.getXs();
+                ys = cell.getYs();
+
+                for (int k = 0; k < cell.size(); k++)
+                {
+                    // border cells overlap rectangle just partially
+                    if (xs[k] >= minX && xs[k] < maxX && ys[k] >= minY && ys[k] < maxY)
+                        out.add(cell.get(k));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void queryRadius(float x, float y, float radius, IntList out)
+    {
+        if (cells.length == 0)
+            return;
+
+        int maxCx = columnOf(x + radius), maxCy = rowOf(y + radius);
+        float radiusSq = radius * radius;
+        GridCell cell;
+        int selected;
+
+        for (int cx = columnOf(x - radius); cx <= maxCx; cx++)
+        {
+            int base = cx * height;
+            for (int cy = rowOf(y - radius); cy <= maxCy; cy++)
+            {
+                cell = cells[base + cy];
+                if (cell == null)
+                    continue;
+
+                if (hits.length < cell.size())
+                    hits = new int[cell.size() * 2];
+
+                // test whole cell at once
+                selected = kernel.selectWithin(cell.getXs(), cell.getYs(), cell.size(), x, y, radiusSq, hits);
+                for (int k = 0; k < selected; k++)
+                    out.add(cell.get(hits[k]));
+            }
+        }
+    }
+
+    @Override
+    public void removeRect(float minX, float minY, float maxX, float maxY, IntList out)
+    {
+        if (cells.length == 0 || minX >= maxX || minY >= maxY)
+            return;
+
+        int maxCx = columnOf(maxX), maxCy = rowOf(maxY);
+        GridCell cell;
+        float[] xs, ys;
+
+        for (int cx = columnOf(minX); cx <= maxCx; cx++)
+        {
+            int base = cx * height;
+            for (int cy = rowOf(minY); cy <= maxCy; cy++)
+            {
+                cell = cells[base + cy];
+                if (cell == null)
+                    continue;
+
+                xs = cell.getXs();
+                ys = cell.getYs();
+
+                // go backwards, removal moves the last slot to the freed place
+                for (int k = cell.size() - 1; k >= 0; k--)
+                {
+                    if (xs[k] >= minX && xs[k] < maxX && ys[k] >= minY && ys[k] < maxY)
+                    {
+                        out.add(cell.removeAt(k));
+                        count--;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return count;
+    }
+
+    @Override
+    public void clear()
+    {
+        for (int i = 0; i < cells.length; i++)
+            cells[i] = null;
+        count = 0;
+    }
+}
@@ -0,0 +1,76 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import cz.zcu.kiv.ups.agarclient.misc.IntList;
+
+/**
+ * Spatial index of world object slots. Positions are read from world object store, so the index
+ * has to be told about every change: insert after the object was stored, remove before its
+ * position changes, and move after the store was updated with new position.
+ * Rectangles are half-open (min inclusive, max exclusive). All query methods append to the
+ * output list, they do not clear it.
+ *
+ * @author martin.ubl
+ */
+interface SpatialIndex
+{
+    /**
+     * Inserts object
+     * @param slot object slot
+     */
+    public void insert(int slot);
+
+    /**
+     * Updates position of object already present in index; the store holds the new position
+     * @param slot object slot
+     * @param oldX previous position X
+     * @param oldY previous position Y
+     */
+    public void move(int slot, float oldX, float oldY);
+
+    /**
+     * Removes object; the store still holds its current position
+     * @param slot object slot
+     * @return was the object present?
+     */
+    public boolean remove(int slot);
+
+    /**
+     * Retrieves all objects within rectangle
+     * @param minX rectangle left
+     * @param minY rectangle top
+     * @param maxX rectangle right
+     * @param maxY rectangle bottom
+     * @param out list to append slots to
+     */
+    public void queryRect(float minX, float minY, float maxX, float maxY, IntList out);
+
+    /**
+     * Retrieves all objects within circle (including its border)
+     * @param x center X
+     * @param y center Y
+     * @param radius circle radius
+     * @param out list to append slots to
+     */
+    public void queryRadius(float x, float y, float radius, IntList out);
+
+    /**
+     * Removes all objects within rectangle from index
+     * @param minX rectangle left
+     * @param minY rectangle top
+     * @param maxX rectangle right
+     * @param maxY rectangle bottom
+     * @param out list to append removed slots to
+     */
+    public void removeRect(float minX, float minY, float maxX, float maxY, IntList out);
+
+    /**
+     * Retrieves count of indexed objects
+     * @return count of objects
+     */
+    public int size();
+
+    /**
+     * Removes all objects from index
+     */
+    public void clear();
+}
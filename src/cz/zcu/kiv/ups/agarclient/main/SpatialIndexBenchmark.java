@@ -0,0 +1,422 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import java.util.Locale;
+import java.util.Random;
+
+import cz.zcu.kiv.ups.agarclient.misc.IntList;
+
+/**
+ * Benchmark of spatial index implementations - replays the same synthetic workload (object
+ * updates, eat checks, viewport queries, cell evictions) on every implementation for given
+ * density profile, and recommends the fastest one
+ *
+ * Usage: java -cp agarclient.jar cz.zcu.kiv.ups.agarclient.main.SpatialIndexBenchmark [options]
+ *
+ * @author martin.ubl
+ */
+public class SpatialIndexBenchmark
+{
+    /** profile with objects spread evenly over the map */
+    private static final String PROFILE_UNIFORM = "uniform";
+    /** profile with most objects clustered in hotspots */
+    private static final String PROFILE_HOTSPOT = "hotspot";
+
+    /** eat check radius (big player) */
+    private static final float EAT_RADIUS = 2.0f;
+    /** half of viewport size, in world units (700px / GameCanvas.DRAW_UNIT_COEF / 2) */
+    private static final float VIEW_HALF_SIZE = 700.0f / GameCanvas.DRAW_UNIT_COEF / 2.0f;
+    /** share of objects updated in every tick */
+    private static final float MOVE_SHARE = 0.02f;
+    /** count of ticks between two cell evictions */
+    private static final int EVICT_INTERVAL = 10;
+
+    /** benchmark phases */
+    private static final String[] PHASES = { "insert", "move", "radius", "rect", "evict" };
+
+    /**
+     * Benchmark settings
+     */
+    static class Settings
+    {
+        /** density profile (uniform, hotspot, or all) */
+        String profile = "all";
+        /** count of objects */
+        int objects = 20000;
+        /** map size (width and height) */
+        float mapSize = 500.0f;
+        /** count of hotspots */
+        int hotspots = 8;
+        /** share of objects placed in hotspots */
+        float hotspotShare = 0.9f;
+        /** hotspot radius (standard deviation of distance from its center) */
+        float hotspotRadius = 6.0f;
+        /** count of measured ticks */
+        int ticks = 2000;
+        /** count of warmup runs before measurement */
+        int warmup = 3;
+        /** count of measured runs; the best one of each implementation is reported */
+        int runs = 3;
+        /** random seed */
+        long seed = 42;
+    }
+
+    /**
+     * Result of single run
+     */
+    private static class Result
+    {
+        /** time spent in each phase */
+        final long[] phaseNanos = new long[PHASES.length];
+        /** count of operations in each phase */
+        final long[] phaseOps = new long[PHASES.length];
+        /** count of query results, to compare implementations */
+        long resultCount = 0;
+
+        /**
+         * Retrieves total time of run
+         * @return time in nanoseconds
+         */
+        long totalNanos()
+        {
+            long total = 0;
+            for (long n : phaseNanos)
+                total += n;
+            return total;
+        }
+    }
+
+    /**
+     * Generator of object positions for density profile
+     */
+    private static class PositionSource
+    {
+        /** settings */
+        private final Settings settings;
+        /** is this the hotspot profile? */
+        private final boolean clustered;
+        /** random generator */
+        private final Random random;
+        /** hotspot centers X */
+        private final float[] hotspotX;
+        /** hotspot centers Y */
+        private final float[] hotspotY;
+
+        /** last generated position X */
+        float x;
+        /** last generated position Y */
+        float y;
+
+        /**
+         * Creates position source
+         * @param settings settings
+         * @param clustered should the positions be clustered in hotspots?
+         * @param random random generator
+         */
+        PositionSource(Settings settings, boolean clustered, Random random)
+        {
+            this.settings = settings;
+            this.clustered = clustered;
+            this.random = random;
+
+            hotspotX = new float[Math.max(settings.hotspots, 1)];
+            hotspotY = new float[hotspotX.length];
+            for (int i = 0; i < hotspotX.length; i++)
+            {
+                hotspotX[i] = random.nextFloat() * settings.mapSize;
+                hotspotY[i] = random.nextFloat() * settings.mapSize;
+            }
+        }
+
+        /**
+         * Generates next position
+         */
+        void next()
+        {
+            if (clustered && random.nextFloat() < settings.hotspotShare)
+            {
+                int h = random.nextInt(hotspotX.length);
+                x = clamp(hotspotX[h] + (float) random.nextGaussian() * settings.hotspotRadius);
+                y = clamp(hotspotY[h] + (float) random.nextGaussian() * settings.hotspotRadius);
+            }
+            else
+            {
+                x = random.nextFloat() * settings.mapSize;
+                y = random.nextFloat() * settings.mapSize;
+            }
+        }
+
+        /**
+         * Clamps coordinate to map
+         * @param v coordinate
+         * @return clamped coordinate
+         */
+        float clamp(float v)
+        {
+            return Math.min(Math.max(v, 0.0f), settings.mapSize);
+        }
+    }
+
+    /**
+     * Runs workload on given index implementation
+     * @param type index implementation
+     * @param settings settings
+     * @param clustered use hotspot profile?
+     * @param ticks count of ticks
+     * @return run result
+     */
+    private static Result run(SpatialIndexType type, Settings settings, boolean clustered, int ticks)
+    {
+        Random random = new Random(settings.seed);
+        PositionSource pos = new PositionSource(settings, clustered, random);
+        WorldObjectStore store = new WorldObjectStore();
+        SpatialIndex index = type.create(store, settings.mapSize, settings.mapSize);
+        IntList out = new IntList(256);
+        Result res = new Result();
+        int nextId = 1;
+        long start;
+
+        // initial fill
+        start = System.nanoTime();
+        for (int i = 0; i < settings.objects; i++)
+        {
+            pos.next();
+            index.insert(store.add(nextId++, pos.x, pos.y, (byte) 0, 0));
+        }
+        res.phaseNanos[0] += System.nanoTime() - start;
+        res.phaseOps[0] += settings.objects;
+
+        int moveCount = Math.max(1, (int) (settings.objects * MOVE_SHARE));
+        int cellCount = (int) (settings.mapSize / GameStorage.CELL_SIZE) + 1;
+
+        for (int tick = 0; tick < ticks; tick++)
+        {
+            // position updates from server
+            start = System.nanoTime();
+            for (int i = 0; i < moveCount; i++)
+            {
+                int slot = store.nextSlot(random.nextInt(store.getSlotLimit()));
+                if (slot < 0)
+                    continue;
+
+                float oldX = store.getX(slot), oldY = store.getY(slot);
+                store.update(slot, pos.clamp(oldX + random.nextFloat() - 0.5f), pos.clamp(oldY + random.nextFloat() - 0.5f), (byte) 0, 0);
+                index.move(slot, oldX, oldY);
+            }
+            res.phaseNanos[1] += System.nanoTime() - start;
+            res.phaseOps[1] += moveCount;
+
+            // players go where the food is, so center queries on a random object
+            pos.next();
+            float px = pos.x, py = pos.y;
+
+            // eat check, eaten objects respawn elsewhere
+            start = System.nanoTime();
+            out.clear();
+            index.queryRadius(px, py, EAT_RADIUS, out);
+            // implementations return objects in different order; removing them in the same order
+            // keeps reuse of free slots, and so the rest of the run, identical for all of them
+            out.sort();
+            for (int i = 0; i < out.size(); i++)
+            {
+                index.remove(out.get(i));
+                store.remove(out.get(i));
+            }
+            for (int i = 0; i < out.size(); i++)
+            {
+                pos.next();
+                index.insert(store.add(nextId++, pos.x, pos.y, (byte) 0, 0));
+            }
+            res.phaseNanos[2] += System.nanoTime() - start;
+            res.phaseOps[2]++;
+            res.resultCount += out.size();
+
+            // viewport
+            start = System.nanoTime();
+            out.clear();
+            index.queryRect(px - VIEW_HALF_SIZE, py - VIEW_HALF_SIZE, px + VIEW_HALF_SIZE, py + VIEW_HALF_SIZE, out);
+            res.phaseNanos[3] += System.nanoTime() - start;
+            res.phaseOps[3]++;
+            res.resultCount += out.size();
+
+            // eviction of a cell leaving interest area; the objects come back later
+            if (tick % EVICT_INTERVAL == 0)
+            {
+                int cx = random.nextInt(cellCount), cy = random.nextInt(cellCount);
+
+                start = System.nanoTime();
+                out.clear();
+                index.removeRect(cx * GameStorage.CELL_SIZE, cy * GameStorage.CELL_SIZE, (cx + 1) * GameStorage.CELL_SIZE, (cy + 1) * GameStorage.CELL_SIZE, out);
+                out.sort();
+                for (int i = 0; i < out.size(); i++)
+                    store.remove(out.get(i));
+                for (int i = 0; i < out.size(); i++)
+                {
+                    pos.next();
+                    index.insert(store.add(nextId++, pos.x, pos.y, (byte) 0, 0));
+                }
+                res.phaseNanos[4] += System.nanoTime() - start;
+                res.phaseOps[4]++;
+                res.resultCount += out.size();
+            }
+        }
+
+        if (index.size() != store.size())
+            System.out.println("WARNING: "+type.getPropertyValue()+" index holds "+index.size()+" objects, store "+store.size());
+
+        return res;
+    }
+
+    /**
+     * Benchmarks all implementations with given profile
+     * @param settings settings
+     * @param clustered use hotspot profile?
+     */
+    private static void benchmarkProfile(Settings settings, boolean clustered)
+    {
+        String profile = clustered ? PROFILE_HOTSPOT : PROFILE_UNIFORM;
+        SpatialIndexType[] types = SpatialIndexType.values();
+        Result[] results = new Result[types.length];
+
+        // warm up all implementations first, so the measured runs use compiled code
+        for (int w = 0; w < settings.warmup; w++)
+        {
+            for (SpatialIndexType type : types)
+                run(type, settings, clustered, Math.max(settings.ticks / 4, 1));
+        }
+
+        // interleave implementations, so that a hiccup of machine does not hurt just one of them
+        for (int r = 0; r < settings.runs; r++)
+        {
+            for (int t = 0; t < types.length; t++)
+            {
+                Result res = run(types[t], settings, clustered, settings.ticks);
+                if (results[t] == null || res.totalNanos() < results[t].totalNanos())
+                    results[t] = res;
+            }
+        }
+
+        System.out.println();
+        System.out.println("Profile: "+profile+" ("+settings.objects+" objects, map "+settings.mapSize+", "+settings.ticks+" ticks)");
+
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT, "%-10s", "index"));
+        for (String phase : PHASES)
+            sb.append(String.format(Locale.ROOT, " %12s", phase+" ns"));
+        sb.append(String.format(Locale.ROOT, " %12s %10s", "total ms", "results"));
+        System.out.println(sb);
+
+        int best = 0;
+        for (int t = 0; t < types.length; t++)
+        {
+            Result r = results[t];
+
+            sb = new StringBuilder(String.format(Locale.ROOT, "%-10s", types[t].getPropertyValue()));
+            for (int p = 0; p < PHASES.length; p++)
+                sb.append(String.format(Locale.ROOT, " %12.1f", r.phaseOps[p] == 0 ? 0.0 : (double) r.phaseNanos[p] / r.phaseOps[p]));
+            sb.append(String.format(Locale.ROOT, " %12.2f %10d", r.totalNanos() / 1000000.0, r.resultCount));
+            System.out.println(sb);
+
+            if (r.resultCount != results[0].resultCount)
+                System.out.println("WARNING: "+types[t].getPropertyValue()+" returned different results than "+types[0].getPropertyValue());
+
+            if (r.totalNanos() < results[best].totalNanos())
+                best = t;
+        }
+
+        System.out.println("Recommended: -D"+SpatialIndexType.PROPERTY_NAME+"="+types[best].getPropertyValue());
+    }
+
+    /**
+     * Prints usage
+     */
+    private static void printUsage()
+    {
+        System.out.println("Options:");
+        System.out.println("  --profile <p>         density profile: "+PROFILE_UNIFORM+", "+PROFILE_HOTSPOT+" or all");
+        System.out.println("  --objects <n>         count of objects");
+        System.out.println("  --map <size>          map width and height");
+        System.out.println("  --hotspots <n>        count of hotspots");
+        System.out.println("  --hotspot-share <f>   share of objects placed in hotspots (0 - 1)");
+        System.out.println("  --hotspot-radius <f>  hotspot radius");
+        System.out.println("  --ticks <n>           count of measured ticks");
+        System.out.println("  --warmup <n>          count of warmup runs");
+        System.out.println("  --runs <n>            count of measured runs, the best one is reported");
+        System.out.println("  --seed <n>            random seed");
+    }
+
+    /**
+     * Parses CLI args
+     * @param args CLI args
+     * @return settings, or null if the args are not valid
+     */
+    static Settings parseArgs(String[] args)
+    {
+        Settings s = new Settings();
+
+        try
+        {
+            for (int i = 0; i < args.length; i++)
+            {
+                String arg = args[i];
+
+                if (i + 1 >= args.length)
+                    return null;
+
+                String val = args[++i];
+
+                if (arg.equals("--profile"))
+                    s.profile = val;
+                else if (arg.equals("--objects"))
+                    s.objects = Math.max(1, Integer.parseInt(val));
+                else if (arg.equals("--map"))
+                    s.mapSize = Math.max(1.0f, Float.parseFloat(val));
+                else if (arg.equals("--hotspots"))
+                    s.hotspots = Math.max(1, Integer.parseInt(val));
+                else if (arg.equals("--hotspot-share"))
+                    s.hotspotShare = Float.parseFloat(val);
+                else if (arg.equals("--hotspot-radius"))
+                    s.hotspotRadius = Float.parseFloat(val);
+                else if (arg.equals("--ticks"))
+                    s.ticks = Math.max(1, Integer.parseInt(val));
+                else if (arg.equals("--warmup"))
+                    s.warmup = Math.max(0, Integer.parseInt(val));
+                else if (arg.equals("--runs"))
+                    s.runs = Math.max(1, Integer.parseInt(val));
+                else if (arg.equals("--seed"))
+                    s.seed = Long.parseLong(val);
+                else
+                    return null;
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+
+        if (!s.profile.equals(PROFILE_UNIFORM) && !s.profile.equals(PROFILE_HOTSPOT) && !s.profile.equals("all"))
+            return null;
+
+        return s;
+    }
+
+    /**
+     * Benchmark entry point
+     * @param args CLI args
+     */
+    public static void main(String[] args)
+    {
+        Settings settings = parseArgs(args);
+        if (settings == null)
+        {
+            printUsage();
+            System.exit(1);
+            return;
+        }
+
+        System.out.println("Distance kernel: "+DistanceKernel.getInstance().getName());
+
+        if (!settings.profile.equals(PROFILE_HOTSPOT))
+            benchmarkProfile(settings, false);
+        if (!settings.profile.equals(PROFILE_UNIFORM))
+            benchmarkProfile(settings, true);
+    }
+}
@@ -0,0 +1,82 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import cz.zcu.kiv.ups.agarclient.misc.Log;
+
+/**
+ * Available spatial index implementations; the one used by game storage is selected
+ * by system property (-Dagarclient.spatialIndex=grid|quadtree)
+ *
+ * @author martin.ubl
+ */
+enum SpatialIndexType
+{
+    /** uniform grid with fixed cell size - cheapest, when objects are spread evenly */
+    GRID("grid")
+    {
+        @Override
+        SpatialIndex create(WorldObjectStore store, float width, float height)
+        {
+            return new SpatialGrid(store, GameStorage.CELL_SIZE, (int) (width / GameStorage.CELL_SIZE) + 1, (int) (height / GameStorage.CELL_SIZE) + 1);
+        }
+    },
+    /** adaptive quadtree - keeps query cost stable, when objects cluster in hotspots */
+    QUADTREE("quadtree")
+    {
+        @Override
+        SpatialIndex create(WorldObjectStore store, float width, float height)
+        {
+            return new QuadtreeIndex(store, width, height);
+        }
+    };
+
+    /** name of system property selecting the implementation */
+    static final String PROPERTY_NAME = "agarclient.spatialIndex";
+
+    /** name used in system property */
+    private final String propertyValue;
+
+    /**
+     * Constructor
+     * @param propertyValue name used in system property
+     */
+    private SpatialIndexType(String propertyValue)
+    {
+        this.propertyValue = propertyValue;
+    }
+
+    /**
+     * Creates empty index of this type
+     * @param store store of object positions
+     * @param width map width
+     * @param height map height
+     * @return new index
+     */
+    abstract SpatialIndex create(WorldObjectStore store, float width, float height);
+
+    /**
+     * Retrieves name used in system property
+     * @return property value
+     */
+    String getPropertyValue()
+    {
+        return propertyValue;
+    }
+
+    /**
+     * Retrieves type selected by system property
+     * @return selected type, uniform grid by default
+     */
+    static SpatialIndexType fromProperty()
+    {
+        String value = System.getProperty(PROPERTY_NAME, GRID.propertyValue);
+
+        for (SpatialIndexType type : values())
+        {
+            if (type.propertyValue.equalsIgnoreCase(value))
+                return type;
+        }
+
+        Log.warn("Unknown spatial index '"+value+"', using "+GRID.propertyValue);
+        return GRID;
+    }
+}
@@ -0,0 +1,193 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cz.zcu.kiv.ups.agarclient.enums.ObjectTypeId;
+
+/**
+ * Cache of pre-rendered antialiased discs - world objects and players are drawn by blitting
+ * translucent images instead of rasterizing antialiased ovals each frame. World object sprites
+ * are fixed (one per type), player sprites are keyed by colour and quantised diameter and kept
+ * in LRU order, so growing players do not fill the memory. Used just by rendering thread.
+ *
+ * @author martin.ubl
+ */
+class SpriteCache
+{
+    /** name of system property with maximum count of cached player sprites */
+    public static final String CAPACITY_PROPERTY_NAME = "agarclient.spriteCache";
+    /** default maximum count of cached player sprites */
+    private static final int DEFAULT_CAPACITY = 256;
+    /** diameter of world object disc in pixels */
+    static final int OBJECT_DIAMETER = 5;
+    /** diameter, up to which player sprites are kept in exact size */
+    private static final int EXACT_DIAMETER_LIMIT = 64;
+    /** count of quantisation steps per power of two above exact limit (error below 1/32 of size) */
+    private static final int QUANTISATION_STEPS = 32;
+
+    /**
+     * Cached player sprite
+     */
+    static class Sprite
+    {
+        /** pre-rendered disc */
+        final BufferedImage image;
+        /** disc colour, for drawing of related text */
+        final Color color;
+        /** diameter of disc in pixels */
+        final int diameter;
+
+        /**
+         * Creates sprite
+         * @param image pre-rendered disc
+         * @param color disc colour
+         * @param diameter disc diameter
+         */
+        Sprite(BufferedImage image, Color color, int diameter)
+        {
+            this.image = image;
+            this.color = color;
+            this.diameter = diameter;
+        }
+    }
+
+    /** sprites of world objects, indexed by object type; null for types, that are not drawn */
+    private final BufferedImage[] objectSprites;
+    /** player sprites in access order, key is quantised diameter and RGB colour */
+    private final LinkedHashMap<Long, Sprite> playerSprites;
+    /** graphics configuration to create images compatible with screen; null when headless */
+    private final GraphicsConfiguration graphicsConfig;
+
+    /** count of player sprite lookups served from cache */
+    private long hitCount = 0;
+    /** count of player sprites rendered */
+    private long missCount = 0;
+
+    /**
+     * Creates sprite cache
+     */
+    SpriteCache()
+    {
+        final int capacity = Math.max(Integer.getInteger(CAPACITY_PROPERTY_NAME, DEFAULT_CAPACITY), 1);
+
+        graphicsConfig = GraphicsEnvironment.isHeadless() ? null
+                : GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+
+        playerSprites = new LinkedHashMap<Long, Sprite>(capacity * 2, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Sprite> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+
+        objectSprites = new BufferedImage[ObjectTypeId.OBJECT_TYPE_TRAP.val() + 1];
+        objectSprites[ObjectTypeId.OBJECT_TYPE_IDLEFOOD.val()] = renderDisc(Color.GREEN, OBJECT_DIAMETER);
+        objectSprites[ObjectTypeId.OBJECT_TYPE_BONUSFOOD.val()] = renderDisc(Color.BLUE, OBJECT_DIAMETER);
+        objectSprites[ObjectTypeId.OBJECT_TYPE_TRAP.val()] = renderDisc(Color.RED, OBJECT_DIAMETER);
+    }
+
+    /**
+     * Retrieves sprite of world object
+     * @param type object type
+     * @return sprite, or null if this type is not drawn
+     */
+    BufferedImage getObjectSprite(int type)
+    {
+        if (type < 0 || type >= objectSprites.length)
+            return null;
+        return objectSprites[type];
+    }
+
+    /**
+     * Retrieves sprite of player disc, renders it when not cached
+     * @param rgb player colour
+     * @param diameter requested diameter in pixels
+     * @return sprite with diameter close to requested one, or null if there's nothing to draw
+     */
+    Sprite getPlayerSprite(int rgb, int diameter)
+    {
+        if (diameter <= 0)
+            return null;
+
+        int quantised = quantise(diameter);
+        Long key = Long.valueOf(((long) quantised << 32) | (rgb & 0xFFFFFFFFL));
+
+        Sprite sprite = playerSprites.get(key);
+        if (sprite != null)
+        {
+            hitCount++;
+            return sprite;
+        }
+
+        missCount++;
+        Color color = new Color(rgb);
+        sprite = new Sprite(renderDisc(color, quantised), color, quantised);
+        playerSprites.put(key, sprite);
+
+        return sprite;
+    }
+
+    /**
+     * Quantises diameter, so slowly growing players do not need new sprite every frame
+     * @param diameter diameter in pixels
+     * @return quantised diameter
+     */
+    private static int quantise(int diameter)
+    {
+        if (diameter <= EXACT_DIAMETER_LIMIT)
+            return diameter;
+
+        int step = Integer.highestOneBit(diameter) / QUANTISATION_STEPS;
+        return ((diameter + step / 2) / step) * step;
+    }
+
+    /**
+     * Renders antialiased disc to translucent image
+     * @param color disc colour
+     * @param diameter disc diameter in pixels
+     * @return rendered image
+     */
+    private BufferedImage renderDisc(Color color, int diameter)
+    {
+        BufferedImage image;
+        if (graphicsConfig != null)
+            image = graphicsConfig.createCompatibleImage(diameter, diameter, Transparency.TRANSLUCENT);
+        else
+            image = new BufferedImage(diameter, diameter, BufferedImage.TYPE_INT_ARGB);
+
+        Graphics2D g2 = image.createGraphics();
+        try
+        {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setColor(color);
+            g2.fillOval(0, 0, diameter, diameter);
+        }
+        finally
+        {
+            g2.dispose();
+        }
+
+        return image;
+    }
+
+    /**
+     * Retrieves human readable cache statistics
+     * @return statistics
+     */
+    String getStatistics()
+    {
+        return playerSprites.size()+" player sprites cached, "+hitCount+" hits, "+missCount+" rendered";
+    }
+}
@@ -0,0 +1,144 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of laid out strings - player names and HUD texts are converted to glyph vectors once
+ * and then just drawn, without measuring and shaping the string every frame. Entries are kept
+ * in LRU order; whole cache is dropped when font or rendering context changes. Used just by
+ * rendering thread.
+ *
+ * @author martin.ubl
+ */
+class TextCache
+{
+    /** name of system property with maximum count of cached strings */
+    public static final String CAPACITY_PROPERTY_NAME = "agarclient.textCache";
+    /** default maximum count of cached strings */
+    private static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * Laid out string
+     */
+    static class Text
+    {
+        /** glyphs of string */
+        final GlyphVector glyphs;
+        /** advance width of string in pixels */
+        final int width;
+
+        /**
+         * Creates laid out string
+         * @param glyphs glyphs of string
+         */
+        Text(GlyphVector glyphs)
+        {
+            this.glyphs = glyphs;
+            this.width = (int) glyphs.getLogicalBounds().getWidth();
+        }
+    }
+
+    /** laid out strings in access order */
+    private final LinkedHashMap<String, Text> texts;
+    /** font, for which strings were laid out */
+    private Font font = null;
+    /** rendering context, for which strings were laid out */
+    private FontRenderContext renderContext = null;
+
+    /**
+     * Creates text cache
+     */
+    TextCache()
+    {
+        final int capacity = Math.max(Integer.getInteger(CAPACITY_PROPERTY_NAME, DEFAULT_CAPACITY), 1);
+
+        texts = new LinkedHashMap<String, Text>(capacity * 2, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Text> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Prepares cache for drawing to given graphics; has to be called at the beginning of frame,
+     * after rendering hints are set
+     * @param g2 2D graphics object
+     */
+    void begin(Graphics2D g2)
+    {
+        Font currentFont = g2.getFont();
+        FontRenderContext currentContext = g2.getFontRenderContext();
+
+        // layout depends on both, so cached glyphs would be wrong
+        if (!currentFont.equals(font) || !currentContext.equals(renderContext))
+        {
+            texts.clear();
+            font = currentFont;
+            renderContext = currentContext;
+        }
+    }
+
+    /**
+     * Retrieves laid out string, lays it out when not cached
+     * @param str string
+     * @return laid out string
+     */
+    Text get(String str)
+    {
+        Text text = texts.get(str);
+        if (text == null)
+        {
+            text = new Text(font.createGlyphVector(renderContext, str));
+            texts.put(str, text);
+        }
+        return text;
+    }
+
+    /**
+     * Draws string with current color
+     * @param g2 2D graphics object
+     * @param str string
+     * @param x left position
+     * @param y baseline position
+     */
+    void draw(Graphics2D g2, String str, int x, int y)
+    {
+        g2.drawGlyphVector(get(str).glyphs, x, y);
+    }
+
+    /**
+     * Draws string horizontally centered around given position
+     * @param g2 2D graphics object
+     * @param str string
+     * @param centerX center position
+     * @param y baseline position
+     */
+    void drawCentered(Graphics2D g2, String str, int centerX, int y)
+    {
+        Text text = get(str);
+        g2.drawGlyphVector(text.glyphs, centerX - text.width / 2, y);
+    }
+
+    /**
+     * Draws string aligned to the right
+     * @param g2 2D graphics object
+     * @param str string
+     * @param right right position
+     * @param y baseline position
+     */
+    void drawRightAligned(Graphics2D g2, String str, int right, int y)
+    {
+        Text text = get(str);
+        g2.drawGlyphVector(text.glyphs, right - text.width, y);
+    }
+}
@@ -0,0 +1,17 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+/**
+ * Immutable event decoded from game packet by networking thread; it's applied to game
+ * storage later by game tick
+ *
+ * @author martin.ubl
+ */
+interface WorldEvent
+{
+    /**
+     * Applies event to game - called only from game tick
+     * @param window game window the event belongs to
+     * @param storage game storage
+     */
+    public void apply(GameWindow window, GameStorage storage);
+}
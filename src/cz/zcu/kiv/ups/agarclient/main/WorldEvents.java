@@ -0,0 +1,430 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import cz.zcu.kiv.ups.agarclient.enums.ObjectTypeId;
+import cz.zcu.kiv.ups.agarclient.misc.Log;
+
+/**
+ * All world events, which could be decoded from game packets
+ *
+ * @author martin.ubl
+ */
+final class WorldEvents
+{
+    private WorldEvents()
+    {
+    }
+
+    /**
+     * Player details, as present in world and new player packets
+     */
+    static final class PlayerInfo
+    {
+        final int id;
+        final String name;
+        final int size;
+        final float x;
+        final float y;
+        final int color;
+        final boolean moving;
+        final float angle;
+
+        PlayerInfo(int id, String name, int size, float x, float y, int color, boolean moving, float angle)
+        {
+            this.id = id;
+            this.name = name;
+            this.size = size;
+            this.x = x;
+            this.y = y;
+            this.color = color;
+            this.moving = moving;
+            this.angle = angle;
+        }
+    }
+
+    /**
+     * New world or world update
+     */
+    static final class WorldUpdate implements WorldEvent
+    {
+        /** map width, used only for new world */
+        final float mapWidth;
+        /** map height, used only for new world */
+        final float mapHeight;
+        /** local player details, null for world update */
+        final PlayerInfo local;
+        /** is local player dead? */
+        final boolean localDead;
+        /** players present */
+        final PlayerInfo[] players;
+        /** object IDs */
+        final int[] objIds;
+        /** object X positions */
+        final float[] objX;
+        /** object Y positions */
+        final float[] objY;
+        /** object type IDs */
+        final byte[] objTypes;
+        /** object parameters */
+        final int[] objParams;
+
+        WorldUpdate(float mapWidth, float mapHeight, PlayerInfo local, boolean localDead, PlayerInfo[] players,
+                int[] objIds, float[] objX, float[] objY, byte[] objTypes, int[] objParams)
+        {
+            this.mapWidth = mapWidth;
+            this.mapHeight = mapHeight;
+            this.local = local;
+            this.localDead = localDead;
+            this.players = players;
+            this.objIds = objIds;
+            this.objX = objX;
+            this.objY = objY;
+            this.objTypes = objTypes;
+            this.objParams = objParams;
+        }
+
+        /**
+         * Is this the new world (with local player details), replacing the whole state?
+         * @return is new world?
+         */
+        boolean isNewWorld()
+        {
+            return local != null;
+        }
+
+        @Override
+        public void apply(GameWindow window, GameStorage storage)
+        {
+            // "our details" are present only in new world packet
+            if (local != null)
+            {
+                storage.setMapSize(mapWidth, mapHeight);
+
+                // store local player
+                LocalPlayer plr = new LocalPlayer(local.id, local.x, local.y, (byte) 0, local.color, local.size, local.name, local.moving, local.angle);
+                storage.setLocalPlayer(plr);
+
+                // this will integrate player to grid map
+                storage.movePlayer(plr, local.x, local.y);
+                storage.setPlayerSize(plr, local.size);
+            }
+
+            // resolve all players
+            for (PlayerInfo info : players)
+            {
+                // create player
+                if (info.id != Main.getPlayerId())
+                    storage.upsertPlayerObject(info.id, info.x, info.y, info.color, info.size, info.name, info.moving, info.angle);
+            }
+
+            // create objects
+            for (int i = 0; i < objIds.length; i++)
+                storage.upsertWorldObject(objIds[i], objX[i], objY[i], objTypes[i], objParams[i]);
+
+            window.getCanvas().setWeAreDead(localDead);
+            window.getCanvas().setConnectionLostState(0);
+        }
+    }
+
+    /**
+     * Remote player position update
+     */
+    static final class MoveHeartbeat implements WorldEvent
+    {
+        final int id;
+        final float x;
+        final float y;
+
+        MoveHeartbeat(int id, float x, float y)
+        {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public void apply(GameWindow window, GameStorage storage)
+        {
+            // find player and set position
+            PlayerObject plr = storage.findPlayer(id);
+            if (plr != null && id != Main.getPlayerId())
+                storage.movePlayer(plr, x, y);
+        }
+    }
+
+    /**
+     * Remote player move direction change
+     */
+    static final class MoveDirection implements WorldEvent
+    {
+        final int id;
+        final float angle;
+
+        MoveDirection(int id, float angle)
+        {
+            this.id = id;
+            this.angle = angle;
+        }
+
+        @Override
+        public void apply(GameWindow window, GameStorage storage)
+        {
+            // find player and set move angle
+            PlayerObject plr = storage.findPlayer(id);
+            if (plr != null && id != Main.getPlayerId())
+                plr.moveAngle = angle;
+        }
+    }
+
+    /**
+     * Remote player movement start
+     */
+    static final class MoveStart implements WorldEvent
+    {
+        final int id;
+        final float angle;
+
+        MoveStart(int id, float angle)
+        {
+            this.id = id;
+            this.angle = angle;
+        }
+
+        @Override
+        public void apply(GameWindow window, GameStorage storage)
+        {
+            // find player, set move angle and moving flag
+            PlayerObject plr = storage.findPlayer(id);
+            if (plr != null && id != Main.getPlayerId())
+            {
+                plr.moveAngle = angle;
+                plr.moving = true;
+            }
+        }
+    }
+
+    /**
+     * Remote player movement stop
+     */
+    static final class MoveStop implements WorldEvent
+    {
+        final int id;
+        final float x;
+        final float y;
+
+        MoveStop(int id, float x, float y)
+        {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public void apply(GameWindow window, GameStorage storage)
+        {
+            // find player, set position and unset moving flag
+            PlayerObject plr = storage.findPlayer(id);
+            if (plr != null && id != Main.getPlayerId())
+            {
+                storage.movePlayer(plr, x, y);
+                plr.moving = false;
+            }
+        }
+    }
+
+    /**
+     * New remote player
+     */
+    static final class NewPlayer implements WorldEvent
+    {
+        final PlayerInfo info;
+
+        NewPlayer(PlayerInfo info)
+        {
+            this.info = info;
+        }
+
+        @Override
+        public void apply(GameWindow window, GameStorage storage)
+        {
+            // create player, if it's not us
+            if (info.id == Main.getPlayerId())
+                return;
+
+            if (Log.isDebugEnabled())
+                Log.debug("Creating player "+info.name+" at "+info.x+" ; "+info.y);
+            storage.upsertPlayerObject(info.id, info.x, info.y, info.color, info.size, info.name, info.moving, info.angle);
+        }
+    }
+
+    /**
+     * New world object
+     */
+    static final class NewObject implements WorldEvent
+    {
+        final int id;
+        final float x;
+        final float y;
+        final byte type;
+        final int param;
+
+        NewObject(int id, float x, float y, byte type, int param)
+        {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.type = type;
+            this.param = param;
+        }
+
+        @Override
+        public void apply(GameWindow window, GameStorage storage)
+        {
+            storage.upsertWorldObject(id, x, y, type, param);
+        }
+    }
+
+    /**
+     * Object eaten by player
+     */
+    static final class ObjectEaten implements WorldEvent
+    {
+        final int eaterId;
+        final int sizeChange;
+
+        ObjectEaten(int eaterId, int sizeChange)
+        {
+            this.eaterId = eaterId;
+            this.sizeChange = sizeChange;
+        }
+
+        @Override
+        public void apply(GameWindow window, GameStorage storage)
+        {
+            if (eaterId == Main.getPlayerId())
+            {
+                storage.changePlayerSize(storage.getLocalPlayer(), sizeChange);
+            }
+            else
+            {
+                PlayerObject plr = storage.findPlayer(eaterId);
+                if (plr != null)
+                    plr.size += sizeChange;
+                else if (Log.isDebugEnabled())
+                    Log.debug("Could not find player "+eaterId);
+            }
+        }
+    }
+
+    /**
+     * Player eaten by another player
+     */
+    static final class PlayerEaten implements WorldEvent
+    {
+        final int subjectId;
+        final int eaterId;
+        final int sizeChange;
+
+        PlayerEaten(int subjectId, int eaterId, int sizeChange)
+        {
+            this.subjectId = subjectId;
+            this.eaterId = eaterId;
+            this.sizeChange = sizeChange;
+        }
+
+        @Override
+        public void apply(GameWindow window, GameStorage storage)
+        {
+            if (subjectId == Main.getPlayerId())
+            {
+                // we had been eaten :-(
+                window.getCanvas().setWeAreDead(true);
+                return;
+            }
+
+            PlayerObject plr = storage.findPlayer(subjectId);
+            if (plr != null)
+                storage.removePlayerObject(plr);
+
+            if (eaterId == Main.getPlayerId())
+                storage.changePlayerSize(storage.getLocalPlayer(), sizeChange);
+            else
+            {
+                plr = storage.findPlayer(subjectId);
+                if (plr != null)
+                    storage.changePlayerSize(plr, sizeChange);
+            }
+        }
+    }
+
+    /**
+     * Object or player destroyed
+     */
+    static final class DestroyObject implements WorldEvent
+    {
+        final int id;
+        final byte type;
+
+        DestroyObject(int id, byte type)
+        {
+            this.id = id;
+            this.type = type;
+        }
+
+        @Override
+        public void apply(GameWindow window, GameStorage storage)
+        {
+            if (type == ObjectTypeId.PACKET_OBJECT_TYPE_WORLDOBJECT.val())
+            {
+                if (storage.removeWorldObject(id))
+                {
+                    // TODO: animation?
+                }
+            }
+            else if (type == ObjectTypeId.PACKET_OBJECT_TYPE_PLAYER.val())
+            {
+                PlayerObject obj = storage.findPlayer(id);
+                if (obj != null)
+                {
+                    storage.removePlayerObject(obj);
+                    // TODO: animation?
+                }
+            }
+        }
+    }
+
+    /**
+     * Player left the game
+     */
+    static final class PlayerExit implements WorldEvent
+    {
+        final int id;
+
+        PlayerExit(int id)
+        {
+            this.id = id;
+        }
+
+        @Override
+        public void apply(GameWindow window, GameStorage storage)
+        {
+            PlayerObject obj = storage.findPlayer(id);
+            if (obj != null)
+            {
+                storage.removePlayerObject(obj);
+                // TODO: chat message about player leave
+            }
+        }
+    }
+
+    /**
+     * Wipe of the whole world (i.e. when connection is lost)
+     */
+    static final class WipeAll implements WorldEvent
+    {
+        @Override
+        public void apply(GameWindow window, GameStorage storage)
+        {
+            storage.wipeAll();
+        }
+    }
+}
@@ -46,6 +46,13 @@ public class WorldObject
             return super.equals(obj);
     }
 
+    @Override
+    public int hashCode()
+    {
+        // consistent with equals - objects are identified by their ID
+        return id;
+    }
+
     /**
      * Is object colliding with local player?
      * @return is colliding?
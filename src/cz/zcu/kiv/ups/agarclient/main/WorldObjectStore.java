@@ -0,0 +1,277 @@
+package cz.zcu.kiv.ups.agarclient.main;
+
+import java.util.Arrays;
+
+import cz.zcu.kiv.ups.agarclient.misc.IntIntMap;
+
+/**
+ * Columnar storage of world objects (food, bonuses, traps - everything except players).
+ * Every object is just a slot in parallel arrays, so there's no per-object header, and
+ * full scans read memory linearly. Slots of removed objects are reused by new objects.
+ *
+ * @author martin.ubl
+ */
+class WorldObjectStore
+{
+    /** initial slot count */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** object IDs */
+    private int[] ids = new int[INITIAL_CAPACITY];
+    /** X positions */
+    private float[] xs = new float[INITIAL_CAPACITY];
+    /** Y positions */
+    private float[] ys = new float[INITIAL_CAPACITY];
+    /** object type ids */
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    /** object parameters */
+    private int[] params = new int[INITIAL_CAPACITY];
+    /** bitset of used slots */
+    private long[] used = new long[INITIAL_CAPACITY / 64];
+    /** bitset of objects colliding with local player */
+    private long[] intersect = new long[INITIAL_CAPACITY / 64];
+
+    /** count of slots ever used; all used slots are below this limit */
+    private int slotLimit = 0;
+    /** stack of free slots below slot limit */
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    /** count of free slots */
+    private int freeCount = 0;
+    /** count of stored objects */
+    private int count = 0;
+
+    /** slots indexed by object ID */
+    private final IntIntMap slotIndex = new IntIntMap(INITIAL_CAPACITY);
+
+    /**
+     * Retrieves count of stored objects
+     * @return count of objects
+     */
+    int size()
+    {
+        return count;
+    }
+
+    /**
+     * Finds slot of object
+     * @param id object ID
+     * @return slot, or -1 if not present
+     */
+    int findSlot(int id)
+    {
+        return slotIndex.get(id);
+    }
+
+    /**
+     * Adds object; the ID must not be present yet
+     * @param id object ID
+     * @param x position X
+     * @param y position Y
+     * @param type type id
+     * @param param parameter
+     * @return slot of added object
+     */
+    int add(int id, float x, float y, byte type, int param)
+    {
+        int slot;
+
+        if (freeCount > 0)
+            slot = freeSlots[--freeCount];
+        else
+        {
+            if (slotLimit == ids.length)
+                grow(ids.length * 2);
+            slot = slotLimit++;
+        }
+
+        ids[slot] = id;
+        update(slot, x, y, type, param);
+        used[slot >> 6] |= 1L << slot;
+
+        slotIndex.put(id, slot);
+        count++;
+        return slot;
+    }
+
+    /**
+     * Updates object in slot; local intersection is cleared
+     * @param slot slot
+     * @param x position X
+     * @param y position Y
+     * @param type type id
+     * @param param parameter
+     */
+    void update(int slot, float x, float y, byte type, int param)
+    {
+        xs[slot] = x;
+        ys[slot] = y;
+        types[slot] = type;
+        params[slot] = param;
+        intersect[slot >> 6] &= ~(1L << slot);
+    }
+
+    /**
+     * Removes object in slot
+     * @param slot slot
+     * @return was the slot used?
+     */
+    boolean remove(int slot)
+    {
+        if (!isUsed(slot))
+            return false;
+
+        used[slot >> 6] &= ~(1L << slot);
+        intersect[slot >> 6] &= ~(1L << slot);
+        slotIndex.remove(ids[slot]);
+
+        freeSlots[freeCount++] = slot;
+        count--;
+        return true;
+    }
+
+    /**
+     * Removes all objects
+     */
+    void clear()
+    {
+        Arrays.fill(used, 0L);
+        Arrays.fill(intersect, 0L);
+        slotIndex.clear();
+        slotLimit = 0;
+        freeCount = 0;
+        count = 0;
+    }
+
+    /**
+     * Grows all columns
+     * @param capacity new slot count
+     */
+    private void grow(int capacity)
+    {
+        ids = Arrays.copyOf(ids, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        types = Arrays.copyOf(types, capacity);
+        params = Arrays.copyOf(params, capacity);
+        used = Arrays.copyOf(used, capacity / 64);
+        intersect = Arrays.copyOf(intersect, capacity / 64);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+    }
+
+    /**
+     * Is the slot used?
+     * @param slot slot
+     * @return is used?
+     */
+    boolean isUsed(int slot)
+    {
+        return slot >= 0 && slot < slotLimit && (used[slot >> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Finds first used slot starting at given slot; used for iterating over all objects:
+     * for (int s = store.nextSlot(0); s >= 0; s = store.nextSlot(s + 1))
+     * @param from first slot to be checked
+     * @return used slot, or -1 if there's none
+     */
+    int nextSlot(int from)
+    {
+        if (from >= slotLimit)
+            return -1;
+
+        int word = from >> 6;
+        long bits = used[word] & (-1L << from);
+
+        while (true)
+        {
+            if (bits != 0)
+            {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+                return (slot < slotLimit) ? slot : -1;
+            }
+
+            if (++word >= used.length || (word << 6) >= slotLimit)
+                return -1;
+
+            bits = used[word];
+        }
+    }
+
+    /**
+     * Retrieves count of slots ever used; all used slots are below this limit
+     * @return slot limit
+     */
+    int getSlotLimit()
+    {
+        return slotLimit;
+    }
+
+    /**
+     * Is object in slot colliding with local player?
+     * @param slot slot
+     * @return is colliding?
+     */
+    boolean isIntersecting(int slot)
+    {
+        return (intersect[slot >> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Marks object in slot as colliding with local player
+     * @param slot slot
+     */
+    void setIntersecting(int slot)
+    {
+        intersect[slot >> 6] |= 1L << slot;
+    }
+
+    /**
+     * Retrieves object ID
+     * @param slot slot
+     * @return object ID
+     */
+    int getId(int slot)
+    {
+        return ids[slot];
+    }
+
+    /**
+     * Retrieves position X
+     * @param slot slot
+     * @return position X
+     */
+    float getX(int slot)
+    {
+        return xs[slot];
+    }
+
+    /**
+     * Retrieves position Y
+     * @param slot slot
+     * @return position Y
+     */
+    float getY(int slot)
+    {
+        return ys[slot];
+    }
+
+    /**
+     * Retrieves object type id
+     * @param slot slot
+     * @return type id
+     */
+    byte getType(int slot)
+    {
+        return types[slot];
+    }
+
+    /**
+     * Retrieves object parameter
+     * @param slot slot
+     * @return parameter
+     */
+    int getParam(int slot)
+    {
+        return params[slot];
+    }
+}
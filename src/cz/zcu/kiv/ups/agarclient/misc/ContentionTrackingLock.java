@@ -0,0 +1,47 @@
+package cz.zcu.kiv.ups.agarclient.misc;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reentrant lock, which measures time spent waiting for it; uncontended acquisition costs just
+ * a tryLock, the clock is read only when the lock is held by another thread. Meant for locks
+ * shared by game loop and UI thread, others should stay plain monitors.
+ *
+ * @author martin.ubl
+ */
+public class ContentionTrackingLock extends ReentrantLock
+{
+    private static final long serialVersionUID = 1L;
+
+    /** wait statistics, registered as management bean */
+    private final transient LockWaitStats stats;
+
+    /**
+     * Creates lock and registers its statistics
+     * @param name lock name
+     */
+    public ContentionTrackingLock(String name)
+    {
+        stats = new LockWaitStats(name);
+    }
+
+    @Override
+    public void lock()
+    {
+        if (tryLock())
+            return;
+
+        long waitStart = System.nanoTime();
+        super.lock();
+        stats.contended(System.nanoTime() - waitStart);
+    }
+
+    /**
+     * Retrieves wait statistics
+     * @return statistics
+     */
+    public LockWaitStats getStats()
+    {
+        return stats;
+    }
+}
@@ -0,0 +1,210 @@
+package cz.zcu.kiv.ups.agarclient.misc;
+
+/**
+ * Base of hash maps with primitive int keys - open addressing with linear probing and backward
+ * shift deletion, so no tombstones are needed. Subclasses own the value array (of type A) and
+ * decide, which value marks a free slot.
+ *
+ * @author martin.ubl
+ */
+abstract class IntHashTable<A>
+{
+    /** keys */
+    protected int[] keys;
+    /** values; free slots hold the value chosen by subclass */
+    protected A values;
+    /** mask for converting hash to slot index */
+    private int mask;
+    /** count of stored entries */
+    private int size = 0;
+
+    /**
+     * Creates table able to hold given count of entries without resizing
+     * @param expected expected count of entries
+     */
+    protected IntHashTable(int expected)
+    {
+        allocate(Integer.highestOneBit(Math.max(expected * 2 - 1, 1)) << 1);
+    }
+
+    /**
+     * Creates value array with all slots free
+     * @param capacity slot count
+     * @return value array
+     */
+    protected abstract A newValues(int capacity);
+
+    /**
+     * Is the slot free?
+     * @param values value array
+     * @param index slot index
+     * @return is free?
+     */
+    protected abstract boolean isFree(A values, int index);
+
+    /**
+     * Moves value between slots; source slot is left as it is
+     * @param src source value array
+     * @param from source slot index
+     * @param dst destination value array
+     * @param to destination slot index
+     */
+    protected abstract void moveValue(A src, int from, A dst, int to);
+
+    /**
+     * Marks the slot free
+     * @param index slot index
+     */
+    protected abstract void free(int index);
+
+    /**
+     * Allocates slot arrays
+     * @param capacity slot count, power of two
+     */
+    private void allocate(int capacity)
+    {
+        keys = new int[capacity];
+        values = newValues(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Computes home slot of key
+     * @param key key
+     * @return slot index
+     */
+    private int slot(int key)
+    {
+        // spread sequential IDs over the whole table
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Finds slot containing key
+     * @param key key
+     * @return slot index, or -1 if not present
+     */
+    protected final int find(int key)
+    {
+        int i = slot(key);
+        while (!isFree(values, i))
+        {
+            if (keys[i] == key)
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds slot containing key, or the free slot, where the key belongs
+     * @param key key
+     * @return slot index
+     */
+    protected final int probe(int key)
+    {
+        int i = slot(key);
+        while (!isFree(values, i) && keys[i] != key)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    /**
+     * Stores key to free slot, which was returned by probe; the value has to be stored by caller
+     * afterwards, using returned slot index
+     * @param index free slot index
+     * @param key key
+     * @return slot index for value (differs from given one, if the table was resized)
+     */
+    protected final int insert(int index, int key)
+    {
+        size++;
+
+        // keep load factor under 1/2, so the probe sequences stay short
+        if (size * 2 > keys.length)
+        {
+            rehash(keys.length * 2);
+            index = probe(key);
+        }
+
+        keys[index] = key;
+        return index;
+    }
+
+    /**
+     * Removes entry at given slot
+     * @param gap slot index
+     */
+    protected final void removeAt(int gap)
+    {
+        free(gap);
+        size--;
+
+        // shift following entries of the probe sequence back, so no tombstones are needed
+        int i = (gap + 1) & mask;
+        while (!isFree(values, i))
+        {
+            // entry may fill the gap, if its home slot is not between the gap and its current slot
+            if (((i - slot(keys[i])) & mask) >= ((i - gap) & mask))
+            {
+                keys[gap] = keys[i];
+                moveValue(values, i, values, gap);
+                free(i);
+                gap = i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Is there a value stored under key?
+     * @param key key
+     * @return is present?
+     */
+    public boolean containsKey(int key)
+    {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Retrieves count of stored entries
+     * @return count of entries
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Removes all entries
+     */
+    public void clear()
+    {
+        for (int i = 0; i < keys.length; i++)
+            free(i);
+        size = 0;
+    }
+
+    /**
+     * Moves all entries to table of new capacity
+     * @param capacity new capacity, power of two
+     */
+    private void rehash(int capacity)
+    {
+        int[] oldKeys = keys;
+        A oldValues = values;
+
+        allocate(capacity);
+
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (isFree(oldValues, i))
+                continue;
+
+            int j = probe(oldKeys[i]);
+            keys[j] = oldKeys[i];
+            moveValue(oldValues, i, values, j);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package cz.zcu.kiv.ups.agarclient.misc;
+
+import java.util.Arrays;
+
+/**
+ * Map with primitive int keys and values, so nothing is boxed and lookup is just a few array
+ * reads. Only non-negative values are allowed, -1 marks free slot and is reported for missing
+ * values.
+ *
+ * @author martin.ubl
+ */
+public class IntIntMap extends IntHashTable<int[]>
+{
+    /** default initial capacity */
+    private static final int DEFAULT_CAPACITY = 64;
+    /** value of free slot */
+    private static final int FREE = -1;
+
+    /**
+     * Creates map with default capacity
+     */
+    public IntIntMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates map able to hold given count of entries without resizing
+     * @param expected expected count of entries
+     */
+    public IntIntMap(int expected)
+    {
+        super(expected);
+    }
+
+    @Override
+    protected int[] newValues(int capacity)
+    {
+        int[] vals = new int[capacity];
+        Arrays.fill(vals, FREE);
+        return vals;
+    }
+
+    @Override
+    protected boolean isFree(int[] vals, int index)
+    {
+        return vals[index] == FREE;
+    }
+
+    @Override
+    protected void moveValue(int[] src, int from, int[] dst, int to)
+    {
+        dst[to] = src[from];
+    }
+
+    @Override
+    protected void free(int index)
+    {
+        values[index] = FREE;
+    }
+
+    /**
+     * Retrieves value stored under key
+     * @param key key
+     * @return value, or -1 if not present
+     */
+    public int get(int key)
+    {
+        int i = find(key);
+        return (i < 0) ? FREE : values[i];
+    }
+
+    /**
+     * Stores value under key
+     * @param key key
+     * @param value value, must not be negative
+     * @return previous value, or -1 if there was none
+     */
+    public int put(int key, int value)
+    {
+        if (value < 0)
+            throw new IllegalArgumentException("Negative values are not allowed");
+
+        int i = probe(key);
+        int old = values[i];
+
+        if (old == FREE)
+            i = insert(i, key);
+
+        values[i] = value;
+        return old;
+    }
+
+    /**
+     * Removes value stored under key
+     * @param key key
+     * @return removed value, or -1 if there was none
+     */
+    public int remove(int key)
+    {
+        int i = find(key);
+        if (i < 0)
+            return FREE;
+
+        int old = values[i];
+        removeAt(i);
+        return old;
+    }
+}
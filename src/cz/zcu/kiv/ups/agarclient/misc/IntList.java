@@ -0,0 +1,92 @@
+package cz.zcu.kiv.ups.agarclient.misc;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, meant to be reused as an output buffer of queries
+ *
+ * @author martin.ubl
+ */
+public class IntList
+{
+    /** default initial capacity */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** elements, valid in range 0 - size-1 */
+    private int[] data;
+    /** count of elements */
+    private int size = 0;
+
+    /**
+     * Creates list with default capacity
+     */
+    public IntList()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates list with given initial capacity
+     * @param capacity initial capacity
+     */
+    public IntList(int capacity)
+    {
+        data = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Appends element
+     * @param value element
+     */
+    public void add(int value)
+    {
+        if (size == data.length)
+            data = Arrays.copyOf(data, size * 2);
+
+        data[size++] = value;
+    }
+
+    /**
+     * Retrieves element
+     * @param index index (0 - size-1)
+     * @return element
+     */
+    public int get(int index)
+    {
+        return data[index];
+    }
+
+    /**
+     * Retrieves count of elements
+     * @return count of elements
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Is the list empty?
+     * @return is empty?
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Sorts elements in ascending order
+     */
+    public void sort()
+    {
+        Arrays.sort(data, 0, size);
+    }
+
+    /**
+     * Removes all elements, keeps allocated capacity
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+}
@@ -0,0 +1,105 @@
+package cz.zcu.kiv.ups.agarclient.misc;
+
+/**
+ * Map with primitive int keys, so no keys are boxed and lookup is just a few array reads.
+ * Null values are not allowed, null slot marks free slot.
+ *
+ * @author martin.ubl
+ */
+public class IntObjectMap<V> extends IntHashTable<Object[]>
+{
+    /** default initial capacity */
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Creates map with default capacity
+     */
+    public IntObjectMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates map able to hold given count of entries without resizing
+     * @param expected expected count of entries
+     */
+    public IntObjectMap(int expected)
+    {
+        super(expected);
+    }
+
+    @Override
+    protected Object[] newValues(int capacity)
+    {
+        return new Object[capacity];
+    }
+
+    @Override
+    protected boolean isFree(Object[] vals, int index)
+    {
+        return vals[index] == null;
+    }
+
+    @Override
+    protected void moveValue(Object[] src, int from, Object[] dst, int to)
+    {
+        dst[to] = src[from];
+    }
+
+    @Override
+    protected void free(int index)
+    {
+        values[index] = null;
+    }
+
+    /**
+     * Retrieves value stored under key
+     * @param key key
+     * @return value, or null if not present
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key)
+    {
+        int i = find(key);
+        return (i < 0) ? null : (V) values[i];
+    }
+
+    /**
+     * Stores value under key
+     * @param key key
+     * @param value value, must not be null
+     * @return previous value, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value)
+    {
+        if (value == null)
+            throw new IllegalArgumentException("Null values are not allowed");
+
+        int i = probe(key);
+        V old = (V) values[i];
+
+        if (old == null)
+            i = insert(i, key);
+
+        values[i] = value;
+        return old;
+    }
+
+    /**
+     * Removes value stored under key
+     * @param key key
+     * @return removed value, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key)
+    {
+        int i = find(key);
+        if (i < 0)
+            return null;
+
+        V old = (V) values[i];
+        removeAt(i);
+        return old;
+    }
+}
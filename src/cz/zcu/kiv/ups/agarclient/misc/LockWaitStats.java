@@ -0,0 +1,104 @@
+package cz.zcu.kiv.ups.agarclient.misc;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Statistics of time spent waiting for a lock, filled by ContentionTrackingLock just when
+ * the lock had to be waited for
+ *
+ * @author martin.ubl
+ */
+public class LockWaitStats implements LockWaitStatsMBean
+{
+    /** prefix of name the statistics are registered under */
+    public static final String MBEAN_NAME_PREFIX = "cz.zcu.kiv.ups.agarclient:type=Lock,name=";
+
+    /** lock name */
+    private final String name;
+
+    /** acquisitions, that had to wait */
+    private final LongAdder contended = new LongAdder();
+    /** total wait time */
+    private final LongAdder waitNanos = new LongAdder();
+    /** longest wait time */
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Creates statistics and registers them as management bean
+     * @param name lock name
+     */
+    public LockWaitStats(String name)
+    {
+        this.name = name;
+
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(MBEAN_NAME_PREFIX + name));
+        }
+        catch (JMException e)
+        {
+            Log.warn("Could not register lock statistics of "+name+": "+e.toString());
+        }
+    }
+
+    /**
+     * Records acquisition, that had to wait for another thread
+     * @param waited wait time in nanoseconds
+     */
+    void contended(long waited)
+    {
+        contended.increment();
+        waitNanos.add(waited);
+
+        long max;
+        while (waited > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waited))
+            ;
+    }
+
+    /**
+     * Retrieves lock name
+     * @return lock name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public long getContendedAcquisitions()
+    {
+        return contended.sum();
+    }
+
+    @Override
+    public long getTotalWaitMicros()
+    {
+        return waitNanos.sum() / 1000;
+    }
+
+    @Override
+    public long getMaxWaitMicros()
+    {
+        return maxWaitNanos.get() / 1000;
+    }
+
+    @Override
+    public void reset()
+    {
+        contended.reset();
+        waitNanos.reset();
+        maxWaitNanos.set(0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return name+": "+getContendedAcquisitions()+" contended acquisitions, "
+                +getTotalWaitMicros()+"us total wait, "+getMaxWaitMicros()+"us max wait";
+    }
+}
@@ -0,0 +1,32 @@
+package cz.zcu.kiv.ups.agarclient.misc;
+
+/**
+ * Management interface of lock wait statistics
+ *
+ * @author martin.ubl
+ */
+public interface LockWaitStatsMBean
+{
+    /**
+     * Retrieves count of acquisitions, that had to wait for another thread
+     * @return contended acquisition count
+     */
+    public long getContendedAcquisitions();
+
+    /**
+     * Retrieves total time spent waiting for the lock
+     * @return wait time in microseconds
+     */
+    public long getTotalWaitMicros();
+
+    /**
+     * Retrieves longest single wait for the lock
+     * @return wait time in microseconds
+     */
+    public long getMaxWaitMicros();
+
+    /**
+     * Resets all counters
+     */
+    public void reset();
+}
@@ -0,0 +1,256 @@
+package cz.zcu.kiv.ups.agarclient.misc;
+
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simple client logging facade. Messages are put to ring buffer and printed by background
+ * appender thread, so the caller never waits for console output.
+ *
+ * Log level is set by "agarclient.log.level" system property (trace, debug, info, warn, error, off)
+ * and can't be changed at runtime, so the level checks are constant for JIT. Packet tracing is
+ * enabled separately for each opcode, either by "agarclient.log.opcodes" system property (comma
+ * separated list of opcode numbers, or "all") or at runtime.
+ *
+ * @author martin.ubl
+ */
+public final class Log
+{
+    /** trace level */
+    public static final int TRACE = 0;
+    /** debug level */
+    public static final int DEBUG = 1;
+    /** info level */
+    public static final int INFO = 2;
+    /** warning level */
+    public static final int WARN = 3;
+    /** error level */
+    public static final int ERROR = 4;
+    /** logging turned off */
+    public static final int OFF = 5;
+
+    /** level names used in output */
+    private static final String[] LEVEL_NAMES = { "TRACE", "DEBUG", "INFO", "WARN", "ERROR" };
+
+    /** minimal level of logged messages */
+    public static final int LEVEL = parseLevel(System.getProperty("agarclient.log.level"));
+
+    /** ring buffer capacity */
+    private static final int RING_CAPACITY = 4096;
+
+    /** ring buffer of messages waiting for appender */
+    private static final BlockingQueue<String> ring = new ArrayBlockingQueue<String>(RING_CAPACITY);
+    /** count of messages dropped due to full ring buffer */
+    private static final AtomicLong dropped = new AtomicLong(0);
+
+    /** bit mask of opcodes being traced */
+    private static volatile long opcodeTraceMask = parseOpcodeMask(System.getProperty("agarclient.log.opcodes"));
+
+    static
+    {
+        Thread appender = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                appenderLoop();
+            }
+        }, "Log appender");
+        appender.setDaemon(true);
+        appender.start();
+    }
+
+    private Log()
+    {
+    }
+
+    /**
+     * Parses log level name
+     * @param name level name
+     * @return level
+     */
+    private static int parseLevel(String name)
+    {
+        if (name == null)
+            return INFO;
+
+        for (int i = 0; i < LEVEL_NAMES.length; i++)
+        {
+            if (LEVEL_NAMES[i].equalsIgnoreCase(name))
+                return i;
+        }
+
+        return name.equalsIgnoreCase("off") ? OFF : INFO;
+    }
+
+    /**
+     * Parses list of traced opcodes
+     * @param list comma separated opcode numbers, or "all"
+     * @return opcode bit mask
+     */
+    private static long parseOpcodeMask(String list)
+    {
+        if (list == null || list.isEmpty())
+            return 0;
+        if (list.equalsIgnoreCase("all"))
+            return ~0L;
+
+        long mask = 0;
+        for (String part : list.split(","))
+        {
+            try
+            {
+                int opcode = Integer.decode(part.trim());
+                if (opcode >= 0 && opcode < 64)
+                    mask |= 1L << opcode;
+            }
+            catch (NumberFormatException e)
+            {
+                //
+            }
+        }
+
+        return mask;
+    }
+
+    /**
+     * Appender thread loop - prints messages from ring buffer
+     */
+    private static void appenderLoop()
+    {
+        while (true)
+        {
+            String msg;
+            try
+            {
+                msg = ring.take();
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+
+            long lost = dropped.getAndSet(0);
+            if (lost > 0)
+                System.err.println("[WARN] " + lost + " log messages dropped");
+
+            // errors and warnings go to error output
+            PrintStream out = (msg.startsWith("[E") || msg.startsWith("[W")) ? System.err : System.out;
+            out.println(msg);
+        }
+    }
+
+    /**
+     * Puts message to ring buffer; when the buffer is full, the message is dropped
+     * @param level message level
+     * @param msg message
+     */
+    private static void append(int level, String msg)
+    {
+        if (!ring.offer("[" + LEVEL_NAMES[level] + "] " + msg))
+            dropped.incrementAndGet();
+    }
+
+    /**
+     * Is debug level enabled?
+     * @return is enabled?
+     */
+    public static boolean isDebugEnabled()
+    {
+        return LEVEL <= DEBUG;
+    }
+
+    /**
+     * Is info level enabled?
+     * @return is enabled?
+     */
+    public static boolean isInfoEnabled()
+    {
+        return LEVEL <= INFO;
+    }
+
+    /**
+     * Is tracing of packets with given opcode enabled?
+     * @param opcode packet opcode
+     * @return is enabled?
+     */
+    public static boolean isOpcodeTraceEnabled(int opcode)
+    {
+        return ((opcodeTraceMask >>> opcode) & 1L) != 0 && opcode >= 0 && opcode < 64;
+    }
+
+    /**
+     * Enables or disables tracing of packets with given opcode
+     * @param opcode packet opcode
+     * @param enabled is tracing enabled?
+     */
+    public static synchronized void setOpcodeTrace(int opcode, boolean enabled)
+    {
+        if (opcode < 0 || opcode >= 64)
+            return;
+
+        if (enabled)
+            opcodeTraceMask |= 1L << opcode;
+        else
+            opcodeTraceMask &= ~(1L << opcode);
+    }
+
+    /**
+     * Enables or disables tracing of all packets
+     * @param enabled is tracing enabled?
+     */
+    public static synchronized void setOpcodeTraceAll(boolean enabled)
+    {
+        opcodeTraceMask = enabled ? ~0L : 0L;
+    }
+
+    /**
+     * Logs packet trace message; caller should check isOpcodeTraceEnabled before building the message
+     * @param msg message
+     */
+    public static void trace(String msg)
+    {
+        append(TRACE, msg);
+    }
+
+    /**
+     * Logs debug message; caller should check isDebugEnabled before building the message
+     * @param msg message
+     */
+    public static void debug(String msg)
+    {
+        if (LEVEL <= DEBUG)
+            append(DEBUG, msg);
+    }
+
+    /**
+     * Logs info message
+     * @param msg message
+     */
+    public static void info(String msg)
+    {
+        if (LEVEL <= INFO)
+            append(INFO, msg);
+    }
+
+    /**
+     * Logs warning
+     * @param msg message
+     */
+    public static void warn(String msg)
+    {
+        if (LEVEL <= WARN)
+            append(WARN, msg);
+    }
+
+    /**
+     * Logs error
+     * @param msg message
+     */
+    public static void error(String msg)
+    {
+        if (LEVEL <= ERROR)
+            append(ERROR, msg);
+    }
+}
@@ -0,0 +1,81 @@
+package cz.zcu.kiv.ups.agarclient.misc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free queue for exactly one producer thread and exactly one consumer thread.
+ * Items are stored in ring buffer; producer and consumer just publish their position.
+ *
+ * @author martin.ubl
+ */
+public class SpscQueue<T>
+{
+    /** ring buffer of items */
+    private final Object[] buffer;
+    /** mask for converting position to buffer index */
+    private final int mask;
+
+    /** position of next item to be read (written only by consumer) */
+    private final AtomicLong head = new AtomicLong(0);
+    /** position of next item to be written (written only by producer) */
+    private final AtomicLong tail = new AtomicLong(0);
+
+    /**
+     * Queue constructor
+     * @param capacity queue capacity, rounded up to power of two
+     */
+    public SpscQueue(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+
+        buffer = new Object[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Appends item to queue - called only by producer
+     * @param item item to be added
+     * @return false if the queue is full
+     */
+    public boolean offer(T item)
+    {
+        long t = tail.get();
+        if (t - head.get() == buffer.length)
+            return false;
+
+        buffer[(int) (t & mask)] = item;
+        // publish item to consumer
+        tail.lazySet(t + 1);
+
+        return true;
+    }
+
+    /**
+     * Retrieves and removes item from queue head - called only by consumer
+     * @return item or null, if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T poll()
+    {
+        long h = head.get();
+        if (h == tail.get())
+            return null;
+
+        int index = (int) (h & mask);
+        T item = (T) buffer[index];
+        buffer[index] = null;
+        // free the slot for producer
+        head.lazySet(h + 1);
+
+        return item;
+    }
+
+    /**
+     * Retrieves count of items in queue
+     * @return item count
+     */
+    public int size()
+    {
+        return (int) (tail.get() - head.get());
+    }
+}
@@ -0,0 +1,111 @@
+package cz.zcu.kiv.ups.agarclient.network;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Splits received byte stream to packets (opcode, size, contents). Received data are
+ * accumulated in receive buffer and packets are returned as views into it, so no data
+ * are copied
+ *
+ * @author martin.ubl
+ */
+public class FrameDecoder
+{
+    /** maximum size of single frame - header and contents of maximum (unsigned short) size */
+    public static final int MAX_FRAME_SIZE = GamePacket.HEADER_SIZE + 65535;
+
+    /** receive buffer, in "write mode" - position marks end of received data */
+    private final ByteBuffer buffer;
+    /** position of first not yet processed byte in receive buffer */
+    private int readPos = 0;
+    /** reusable view of received packet */
+    private final GamePacket view = GamePacket.createView();
+
+    /**
+     * Creates decoder with buffer for two packets of maximum size
+     */
+    public FrameDecoder()
+    {
+        this(2 * MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Creates decoder with buffer of given capacity
+     * @param capacity buffer capacity, has to fit at least one whole packet of maximum size
+     */
+    public FrameDecoder(int capacity)
+    {
+        if (capacity < MAX_FRAME_SIZE)
+            throw new IllegalArgumentException("Buffer capacity "+capacity+" is lower than maximum frame size");
+
+        buffer = ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Retrieves buffer, which received data are to be read into
+     * @return receive buffer
+     */
+    public ByteBuffer getBuffer()
+    {
+        return buffer;
+    }
+
+    /**
+     * Drops all received data
+     */
+    public void clear()
+    {
+        buffer.clear();
+        readPos = 0;
+    }
+
+    /**
+     * Is there at least one complete packet waiting in receive buffer?
+     * @return is complete packet available?
+     */
+    public boolean hasCompletePacket()
+    {
+        int available = buffer.position() - readPos;
+        if (available < GamePacket.HEADER_SIZE)
+            return false;
+
+        // there is always a way, how to get unsigned short range
+        int size = buffer.getShort(readPos + 2) & 0xFFFF;
+
+        return available >= GamePacket.HEADER_SIZE + size;
+    }
+
+    /**
+     * Reads next packet from receive buffer - should be called only if there's a complete
+     * packet waiting (see hasCompletePacket)
+     * @return packet view, valid until next call of this method or until the buffer is compacted
+     */
+    public GamePacket nextPacket()
+    {
+        int opcode = buffer.getShort(readPos);
+        int size = buffer.getShort(readPos + 2) & 0xFFFF;
+
+        // point the view to packet contents, and skip them
+        view.wrap(buffer, readPos + GamePacket.HEADER_SIZE, opcode, size);
+        readPos += GamePacket.HEADER_SIZE + size;
+
+        return view;
+    }
+
+    /**
+     * Moves unprocessed rest of receive buffer (incomplete packet, if any) to its beginning;
+     * all packet views are invalidated by this call
+     */
+    public void compact()
+    {
+        view.release();
+
+        if (readPos == 0)
+            return;
+
+        buffer.flip();
+        buffer.position(readPos);
+        buffer.compact();
+        readPos = 0;
+    }
+}
@@ -1,12 +1,10 @@
 package cz.zcu.kiv.ups.agarclient.network;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * Game packet class
@@ -15,6 +13,17 @@ import java.util.List;
  */
 public strictfp class GamePacket
 {
+    /** packet header size (opcode + size) */
+    public static final int HEADER_SIZE = 4;
+
+    /** initial write buffer size, enough for every common outgoing packet */
+    private static final int WRITE_BUFFER_INITIAL_SIZE = 128;
+    /** maximum count of packets kept in pool */
+    private static final int POOL_CAPACITY = 256;
+
+    /** pool of recycled outgoing packets */
+    private static final BlockingQueue<GamePacket> pool = new ArrayBlockingQueue<GamePacket>(POOL_CAPACITY);
+
     /** packet opcode */
     private short opcode = 0;
     /** packet contents size */
@@ -22,13 +31,15 @@ public strictfp class GamePacket
     /** packet read pos */
     private int readPos = 0;
 
-    /** write buffer for packet building */
-    private ByteArrayOutputStream writeBuffer;
-    /** write buffer "gateway" which i.e. formats to proper network endianity */
-    private DataOutputStream writeBufferGate;
+    /** write buffer for packet building, contains header space followed by contents */
+    private ByteBuffer writeBuffer;
 
-    /** read buffer used when receiving packet */
+    /** read buffer used when receiving packet; for packet views, it's shared receive buffer */
     private ByteBuffer readBuffer;
+    /** offset of packet contents in read buffer */
+    private int readOffset = 0;
+    /** is this packet just a view into shared receive buffer? */
+    private boolean isView = false;
 
     /**
      * Constructor for immediate parsed data
@@ -41,8 +52,71 @@ public strictfp class GamePacket
         this.opcode = opcode;
         this.size = size;
 
-        readBuffer = ByteBuffer.allocate(data.length).put(data);
-        readBuffer.rewind();
+        readBuffer = ByteBuffer.wrap(data);
+    }
+
+    /**
+     * Constructor for packet views
+     * @param buffer shared receive buffer
+     */
+    private GamePacket(ByteBuffer buffer)
+    {
+        readBuffer = buffer;
+        isView = true;
+    }
+
+    /**
+     * Creates reusable packet view; the view is pointed to received packet contents using
+     * wrap method, so no data are copied
+     * @return packet view
+     */
+    static GamePacket createView()
+    {
+        return new GamePacket((ByteBuffer) null);
+    }
+
+    /**
+     * Points packet view to packet contents in receive buffer
+     * @param buffer receive buffer (has to be backed by array)
+     * @param offset offset of packet contents in buffer
+     * @param opcode packet opcode
+     * @param size packet contents size
+     */
+    void wrap(ByteBuffer buffer, int offset, int opcode, int size)
+    {
+        this.readBuffer = buffer;
+        this.readOffset = offset;
+        this.opcode = (short) opcode;
+        this.size = (short) size;
+        this.readPos = 0;
+    }
+
+    /**
+     * Releases packet view after it was handled; its contents are no longer valid, as the receive
+     * buffer is reused for next packets
+     */
+    void release()
+    {
+        if (isView)
+            readBuffer = null;
+    }
+
+    /**
+     * Retrieves packet, which stays valid even after the handler returns; packet views are copied
+     * to their own buffer, other packets are returned as they are
+     * @return packet retained
+     */
+    public GamePacket retain()
+    {
+        if (!isView)
+            return this;
+
+        byte[] data = new byte[getSize()];
+        System.arraycopy(readBuffer.array(), readBuffer.arrayOffset() + readOffset, data, 0, data.length);
+
+        GamePacket pkt = new GamePacket(opcode, size, data);
+        pkt.readPos = readPos;
+        return pkt;
     }
 
     /**
@@ -50,8 +124,8 @@ public strictfp class GamePacket
      */
     public GamePacket()
     {
-        writeBuffer = new ByteArrayOutputStream();
-        writeBufferGate = new DataOutputStream(writeBuffer);
+        writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_INITIAL_SIZE);
+        writeBuffer.position(HEADER_SIZE);
     }
 
     /**
@@ -65,18 +139,67 @@ public strictfp class GamePacket
     }
 
     /**
-     * Retrieves raw byte array of packet contents, including opcode number and size
-     * @return raw packet byte array
+     * Retrieves packet from pool (or creates new one, if the pool is empty); the packet
+     * is returned to pool by network layer after being sent
+     * @param opcode packet opcode
+     * @return empty packet
+     */
+    public static GamePacket obtain(int opcode)
+    {
+        GamePacket pkt = pool.poll();
+        if (pkt == null)
+            pkt = new GamePacket();
+
+        pkt.setOpcode(opcode);
+        return pkt;
+    }
+
+    /**
+     * Resets packet contents and returns it to pool; the packet must not be used afterwards
      */
-    public byte[] getRaw()
+    public void recycle()
     {
-        // everything needs to be converted to network endianity in order to be sent
-        ByteBuffer obf = ByteBuffer.allocate(4 + size);
-        obf.putShort(opcode);
-        obf.putShort(size);
-        if (size > 0)
-            obf.put(writeBuffer.toByteArray());
-        return obf.array();
+        // received packets are not pooled
+        if (writeBuffer == null)
+            return;
+
+        writeBuffer.clear();
+        writeBuffer.position(HEADER_SIZE);
+        size = 0;
+
+        pool.offer(this);
+    }
+
+    /**
+     * Retrieves raw packet contents, including opcode number and size; returned buffer is
+     * the packet write buffer itself, so the packet must not be modified afterwards
+     * @return raw packet buffer, ready to be written
+     */
+    public ByteBuffer getRaw()
+    {
+        // ByteBuffer is big endian by default, so everything is already in network endianity
+        writeBuffer.putShort(0, opcode);
+        writeBuffer.putShort(2, size);
+
+        writeBuffer.limit(HEADER_SIZE + (size & 0xFFFF));
+        writeBuffer.position(0);
+        return writeBuffer;
+    }
+
+    /**
+     * Makes sure there's enough space for writing specified count of bytes
+     * @param count count of bytes to be written
+     */
+    private void ensureCapacity(int count)
+    {
+        if (writeBuffer.remaining() >= count)
+            return;
+
+        // grow to be able to contain at least the requested amount; packet keeps the bigger buffer for reuse
+        ByteBuffer nbuf = ByteBuffer.allocateDirect(Math.max(writeBuffer.capacity() * 2, writeBuffer.position() + count));
+        writeBuffer.flip();
+        nbuf.put(writeBuffer);
+        writeBuffer = nbuf;
     }
 
     /**
@@ -94,7 +217,7 @@ public strictfp class GamePacket
      */
     public int getSize()
     {
-        return size;
+        return size & 0xFFFF;
     }
 
     /**
@@ -103,7 +226,7 @@ public strictfp class GamePacket
      */
     public int getRealSize()
     {
-        return readBuffer.capacity();
+        return isView ? getSize() : readBuffer.capacity();
     }
 
     /**
@@ -130,13 +253,12 @@ public strictfp class GamePacket
      */
     public void putString(String str)
     {
-        try {
-            writeBufferGate.write(str.getBytes("UTF-8"));
-            writeBufferGate.write(0); // make sure the string is null terminated
-            size += str.getBytes("UTF-8").length + 1;
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+
+        ensureCapacity(bytes.length + 1);
+        writeBuffer.put(bytes);
+        writeBuffer.put((byte) 0); // make sure the string is null terminated
+        size += bytes.length + 1;
     }
 
     /**
@@ -145,11 +267,8 @@ public strictfp class GamePacket
      */
     public void putInt(int val)
     {
-        try {
-            writeBufferGate.writeInt(val);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        ensureCapacity(4);
+        writeBuffer.putInt(val);
         size += 4;
     }
 
@@ -159,11 +278,8 @@ public strictfp class GamePacket
      */
     public void putShort(short val)
     {
-        try {
-            writeBufferGate.writeShort(val);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        ensureCapacity(2);
+        writeBuffer.putShort(val);
         size += 2;
     }
 
@@ -173,11 +289,8 @@ public strictfp class GamePacket
      */
     public void putByte(int val)
     {
-        try {
-            writeBufferGate.write(val);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        ensureCapacity(1);
+        writeBuffer.put((byte) val);
         size += 1;
     }
 
@@ -187,46 +300,73 @@ public strictfp class GamePacket
      */
     public void putFloat(float val)
     {
-        try {
-            writeBufferGate.writeFloat(val);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        ensureCapacity(4);
+        writeBuffer.putFloat(val);
         size += 4;
     }
 
+    /**
+     * Makes sure the read of specified count of bytes won't go past packet contents
+     * @param count count of bytes to be read
+     */
+    private void checkRead(int count)
+    {
+        if (readPos + count > getSize())
+            throw new BufferUnderflowException();
+    }
+
+    /**
+     * Finds zero terminator of string starting at current read position
+     * @return position of terminator relative to packet contents
+     */
+    private int findStringTerminator()
+    {
+        byte[] arr = readBuffer.array();
+        int off = readBuffer.arrayOffset() + readOffset;
+        int end = getSize();
+
+        for (int i = readPos; i < end; i++)
+        {
+            if (arr[off + i] == '\0')
+                return i;
+        }
+
+        // string is not terminated within packet
+        throw new BufferUnderflowException();
+    }
+
     /**
      * Retrieves string from packet
      * @return string read
      */
     public String getString()
     {
-        byte c;
-        List<Byte> lbs = new ArrayList<Byte>();
+        return getString(null);
+    }
 
-        // read, until we reach zero terminator
-        while (true)
-        {
-            c = (byte)((readBuffer.get()) & 0xFF);
+    /**
+     * Retrieves string from packet, using cache for strings, which repeat often (i.e. player names)
+     * @param cache string cache to be used, may be null
+     * @return string read
+     */
+    public String getString(StringCache cache)
+    {
+        int len = findStringTerminator() - readPos;
 
-            if (c == '\0')
-                break;
+        // decode directly from read buffer contents
+        byte[] arr = readBuffer.array();
+        int off = readBuffer.arrayOffset() + readOffset + readPos;
 
-            lbs.add((byte)c);
-        }
+        String str;
+        if (cache != null)
+            str = cache.get(arr, off, len);
+        else
+            str = new String(arr, off, len, StandardCharsets.UTF_8);
 
-        // convert list of Bytes to array of primitive bytes
-        byte[] barr = new byte[lbs.size()];
-        int i = 0;
-        for (Byte b : lbs)
-            barr[i++] = b;
-
-        try {
-            return new String(barr, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            // just try at least some encoding
-            return new String(barr);
-        }
+        // skip string and its terminator
+        readPos += len + 1;
+
+        return str;
     }
 
     /**
@@ -235,8 +375,10 @@ public strictfp class GamePacket
      */
     public int getInt()
     {
+        checkRead(4);
+        int val = readBuffer.getInt(readOffset + readPos);
         readPos += 4;
-        return readBuffer.getInt();
+        return val;
     }
 
     /**
@@ -245,8 +387,10 @@ public strictfp class GamePacket
      */
     public short getShort()
     {
+        checkRead(2);
+        short val = readBuffer.getShort(readOffset + readPos);
         readPos += 2;
-        return readBuffer.getShort();
+        return val;
     }
 
     /**
@@ -255,8 +399,10 @@ public strictfp class GamePacket
      */
     public byte getByte()
     {
+        checkRead(1);
+        byte val = readBuffer.get(readOffset + readPos);
         readPos += 1;
-        return readBuffer.get();
+        return val;
     }
 
     /**
@@ -265,8 +411,10 @@ public strictfp class GamePacket
      */
     public float getFloat()
     {
+        checkRead(4);
+        float val = readBuffer.getFloat(readOffset + readPos);
         readPos += 4;
-        return readBuffer.getFloat();
+        return val;
     }
 
 }
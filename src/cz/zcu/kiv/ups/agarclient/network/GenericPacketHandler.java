@@ -8,30 +8,55 @@ import cz.zcu.kiv.ups.agarclient.enums.Opcodes;
 
 public class GenericPacketHandler implements NetworkStateReceiver
 {
+    /** table of packet handlers */
+    private final PacketDispatcher dispatcher = new PacketDispatcher();
+
+    /**
+     * Constructor - registers handlers of generic packets
+     */
+    public GenericPacketHandler()
+    {
+        dispatcher.register(Opcodes.SP_PING, this::handlePing);
+        dispatcher.register(Opcodes.SP_PING_PONG, this::handlePingPong);
+        dispatcher.register(Opcodes.SP_KICK, this::handleKick);
+    }
+
+    /**
+     * Handles ping packet
+     * @param packet received packet
+     */
+    private void handlePing(GamePacket packet)
+    {
+        // just send response, server will take care of rest
+        GamePacket gp = GamePacket.obtain(Opcodes.CP_PONG.val());
+        Networking.getInstance().sendPacket(gp);
+    }
+
+    /**
+     * Handles latency update packet
+     * @param packet received packet
+     */
+    private void handlePingPong(GamePacket packet)
+    {
+        int val = packet.getInt();
+        Main.setClientLatency(val);
+    }
+
+    /**
+     * Handles kick packet
+     * @param packet received packet
+     */
+    private void handleKick(GamePacket packet)
+    {
+        Networking.getInstance().disconnect();
+
+        JOptionPane.showMessageDialog(null, "Server ukončil relaci! Přihlašte se prosím znovu", "Odpojeno", JOptionPane.ERROR_MESSAGE);
+    }
+
     @Override
     public boolean OnPacketReceived(GamePacket packet)
     {
-        if (packet.getOpcode() == Opcodes.SP_PING.val())
-        {
-            // just send response, server will take care of rest
-            GamePacket gp = new GamePacket(Opcodes.CP_PONG.val());
-            Networking.getInstance().sendPacket(gp);
-        }
-        else if (packet.getOpcode() == Opcodes.SP_PING_PONG.val())
-        {
-            int val = packet.getInt();
-            Main.setClientLatency(val);
-        }
-        else if (packet.getOpcode() == Opcodes.SP_KICK.val())
-        {
-            Networking.getInstance().disconnect();
-
-            JOptionPane.showMessageDialog(null, "Server ukončil relaci! Přihlašte se prosím znovu", "Odpojeno", JOptionPane.ERROR_MESSAGE);
-        }
-        else
-            return false;
-
-        return true;
+        return dispatcher.dispatch(packet);
     }
 
     @Override
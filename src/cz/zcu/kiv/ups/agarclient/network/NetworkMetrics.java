@@ -0,0 +1,442 @@
+package cz.zcu.kiv.ups.agarclient.network;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import cz.zcu.kiv.ups.agarclient.enums.Opcodes;
+import cz.zcu.kiv.ups.agarclient.misc.Log;
+
+/**
+ * Network metrics - packet and byte counters for each opcode, decode times, queue depth,
+ * reconnects and time spent in each connection state. Counters are striped (LongAdder),
+ * so updating them from networking and writer thread does not cause contention.
+ *
+ * @author martin.ubl
+ */
+public class NetworkMetrics implements NetworkMetricsMBean
+{
+    /** name the metrics are registered under */
+    public static final String MBEAN_NAME = "cz.zcu.kiv.ups.agarclient:type=Networking";
+
+    /** count of known opcodes */
+    private static final int OPCODE_COUNT = Opcodes.OPCODE_MAX.val() + 1;
+    /** count of connection states */
+    private static final int STATE_COUNT = ConnectionState.values().length;
+
+    /** opcode names, indexed by opcode */
+    private static final String[] OPCODE_NAMES = new String[OPCODE_COUNT];
+    /** connection state names */
+    private static final String[] STATE_NAMES = new String[STATE_COUNT];
+
+    static
+    {
+        // first name wins, so the OPCODE_MAX alias does not replace the real one
+        for (Opcodes op : Opcodes.values())
+        {
+            if (OPCODE_NAMES[op.val()] == null)
+                OPCODE_NAMES[op.val()] = op.name();
+        }
+
+        for (ConnectionState st : ConnectionState.values())
+            STATE_NAMES[st.ordinal()] = st.name();
+    }
+
+    /** source of gauge values */
+    private final Networking networking;
+
+    /** received packets per opcode */
+    private final LongAdder[] packetsIn = createAdders(OPCODE_COUNT);
+    /** received bytes per opcode */
+    private final LongAdder[] bytesIn = createAdders(OPCODE_COUNT);
+    /** sent packets per opcode */
+    private final LongAdder[] packetsOut = createAdders(OPCODE_COUNT);
+    /** sent bytes per opcode */
+    private final LongAdder[] bytesOut = createAdders(OPCODE_COUNT);
+    /** decode and handling time per opcode */
+    private final LongAdder[] decodeNanos = createAdders(OPCODE_COUNT);
+
+    /** reconnect attempts */
+    private final LongAdder reconnectAttempts = new LongAdder();
+    /** successful reconnects */
+    private final LongAdder reconnects = new LongAdder();
+
+    /** time spent in each finished connection state period */
+    private final long[] stateNanos = new long[STATE_COUNT];
+    /** current connection state */
+    private ConnectionState currentState = ConnectionState.IDLE;
+    /** time of entering current connection state */
+    private long currentStateSince = System.nanoTime();
+
+    /** executor for periodic snapshots */
+    private ScheduledExecutorService snapshotExecutor = null;
+
+    /**
+     * Listener of periodic snapshots
+     */
+    public interface SnapshotListener
+    {
+        /**
+         * Called with every new snapshot
+         * @param current current snapshot
+         * @param previous previous snapshot, for computing rates
+         */
+        public void onSnapshot(Snapshot current, Snapshot previous);
+    }
+
+    /**
+     * Immutable snapshot of all metrics
+     */
+    public static final class Snapshot
+    {
+        /** time of snapshot (System.nanoTime) */
+        public final long timeNanos;
+        /** received packets per opcode */
+        public final long[] packetsIn;
+        /** received bytes per opcode */
+        public final long[] bytesIn;
+        /** sent packets per opcode */
+        public final long[] packetsOut;
+        /** sent bytes per opcode */
+        public final long[] bytesOut;
+        /** decode time per opcode */
+        public final long[] decodeNanos;
+        /** send queue depth */
+        public final int sendQueueDepth;
+        /** packets sent without response */
+        public final int noresponsePacketCount;
+        /** reconnect attempts */
+        public final long reconnectAttempts;
+        /** successful reconnects */
+        public final long reconnects;
+        /** time spent in each connection state */
+        public final long[] stateMillis;
+
+        private Snapshot(NetworkMetrics m)
+        {
+            timeNanos = System.nanoTime();
+            packetsIn = sum(m.packetsIn);
+            bytesIn = sum(m.bytesIn);
+            packetsOut = sum(m.packetsOut);
+            bytesOut = sum(m.bytesOut);
+            decodeNanos = sum(m.decodeNanos);
+            sendQueueDepth = m.getSendQueueDepth();
+            noresponsePacketCount = m.getNoresponsePacketCount();
+            reconnectAttempts = m.reconnectAttempts.sum();
+            reconnects = m.reconnects.sum();
+            stateMillis = m.getStateTimeMillis();
+        }
+
+        /**
+         * Computes rate of change per second since previous snapshot
+         * @param current current value
+         * @param previousValue value in previous snapshot
+         * @param previous previous snapshot
+         * @return rate per second
+         */
+        public double rate(long current, long previousValue, Snapshot previous)
+        {
+            long elapsed = timeNanos - previous.timeNanos;
+            if (elapsed <= 0)
+                return 0.0;
+
+            return (current - previousValue) * 1.0e9 / elapsed;
+        }
+
+        /**
+         * Computes average time of decoding single packet with given opcode since previous snapshot
+         * @param opcode packet opcode
+         * @param previous previous snapshot
+         * @return average decode time in nanoseconds
+         */
+        public double averageDecodeNanos(int opcode, Snapshot previous)
+        {
+            long count = packetsIn[opcode] - previous.packetsIn[opcode];
+            if (count <= 0)
+                return 0.0;
+
+            return (decodeNanos[opcode] - previous.decodeNanos[opcode]) / (double) count;
+        }
+    }
+
+    /**
+     * Metrics constructor
+     * @param networking networking instance, source of gauge values
+     */
+    NetworkMetrics(Networking networking)
+    {
+        this.networking = networking;
+    }
+
+    /**
+     * Creates array of counters
+     * @param count array size
+     * @return counters
+     */
+    private static LongAdder[] createAdders(int count)
+    {
+        LongAdder[] arr = new LongAdder[count];
+        for (int i = 0; i < count; i++)
+            arr[i] = new LongAdder();
+        return arr;
+    }
+
+    /**
+     * Sums array of counters
+     * @param adders counters
+     * @return counter values
+     */
+    private static long[] sum(LongAdder[] adders)
+    {
+        long[] arr = new long[adders.length];
+        for (int i = 0; i < adders.length; i++)
+            arr[i] = adders[i].sum();
+        return arr;
+    }
+
+    /**
+     * Registers metrics to platform MBean server
+     */
+    void registerMBean()
+    {
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(MBEAN_NAME));
+        }
+        catch (JMException e)
+        {
+            Log.warn("Could not register network metrics: "+e.toString());
+        }
+    }
+
+    /**
+     * Records received packet
+     * @param opcode packet opcode
+     * @param size packet size including header
+     * @param nanos time spent by decoding and handling the packet
+     */
+    void packetReceived(int opcode, int size, long nanos)
+    {
+        if (opcode < 0 || opcode >= OPCODE_COUNT)
+            return;
+
+        packetsIn[opcode].increment();
+        bytesIn[opcode].add(size);
+        decodeNanos[opcode].add(nanos);
+    }
+
+    /**
+     * Records sent packet
+     * @param opcode packet opcode
+     * @param size packet size including header
+     */
+    void packetSent(int opcode, int size)
+    {
+        if (opcode < 0 || opcode >= OPCODE_COUNT)
+            return;
+
+        packetsOut[opcode].increment();
+        bytesOut[opcode].add(size);
+    }
+
+    /**
+     * Records reconnect attempt
+     */
+    void reconnectAttempted()
+    {
+        reconnectAttempts.increment();
+    }
+
+    /**
+     * Records successful reconnect
+     */
+    void reconnected()
+    {
+        reconnects.increment();
+    }
+
+    /**
+     * Records connection state change
+     * @param state new state
+     */
+    synchronized void stateChanged(ConnectionState state)
+    {
+        long now = System.nanoTime();
+
+        stateNanos[currentState.ordinal()] += now - currentStateSince;
+        currentState = state;
+        currentStateSince = now;
+    }
+
+    /**
+     * Takes snapshot of all metrics
+     * @return snapshot
+     */
+    public Snapshot snapshot()
+    {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Starts taking snapshots periodically and passing them to listener
+     * @param periodMillis snapshot period
+     * @param listener snapshot listener
+     * @return handle for cancelling
+     */
+    public synchronized ScheduledFuture<?> scheduleSnapshots(long periodMillis, final SnapshotListener listener)
+    {
+        if (snapshotExecutor == null)
+        {
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(r, "Network metrics");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        final Snapshot[] last = { snapshot() };
+
+        return snapshotExecutor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run()
+            {
+                Snapshot current = snapshot();
+                listener.onSnapshot(current, last[0]);
+                last[0] = current;
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String[] getOpcodeNames()
+    {
+        return OPCODE_NAMES.clone();
+    }
+
+    @Override
+    public long[] getPacketsIn()
+    {
+        return sum(packetsIn);
+    }
+
+    @Override
+    public long[] getBytesIn()
+    {
+        return sum(bytesIn);
+    }
+
+    @Override
+    public long[] getPacketsOut()
+    {
+        return sum(packetsOut);
+    }
+
+    @Override
+    public long[] getBytesOut()
+    {
+        return sum(bytesOut);
+    }
+
+    @Override
+    public long[] getDecodeTimeNanos()
+    {
+        return sum(decodeNanos);
+    }
+
+    @Override
+    public long getTotalPacketsIn()
+    {
+        return total(packetsIn);
+    }
+
+    @Override
+    public long getTotalPacketsOut()
+    {
+        return total(packetsOut);
+    }
+
+    @Override
+    public long getTotalBytesIn()
+    {
+        return total(bytesIn);
+    }
+
+    @Override
+    public long getTotalBytesOut()
+    {
+        return total(bytesOut);
+    }
+
+    /**
+     * Sums all counters in array
+     * @param adders counters
+     * @return total value
+     */
+    private static long total(LongAdder[] adders)
+    {
+        long sum = 0;
+        for (LongAdder a : adders)
+            sum += a.sum();
+        return sum;
+    }
+
+    @Override
+    public int getSendQueueDepth()
+    {
+        return networking.getSendQueueDepth();
+    }
+
+    @Override
+    public int getNoresponsePacketCount()
+    {
+        return networking.getNoresponsePacketCount();
+    }
+
+    @Override
+    public long getReconnectAttemptCount()
+    {
+        return reconnectAttempts.sum();
+    }
+
+    @Override
+    public long getReconnectCount()
+    {
+        return reconnects.sum();
+    }
+
+    @Override
+    public String[] getStateNames()
+    {
+        return STATE_NAMES.clone();
+    }
+
+    @Override
+    public synchronized long[] getStateTimeMillis()
+    {
+        long[] arr = new long[STATE_COUNT];
+        for (int i = 0; i < STATE_COUNT; i++)
+            arr[i] = stateNanos[i] / 1000000L;
+
+        // include the time spent in current state so far
+        arr[currentState.ordinal()] += (System.nanoTime() - currentStateSince) / 1000000L;
+
+        return arr;
+    }
+
+    @Override
+    public synchronized String getCurrentState()
+    {
+        return currentState.name();
+    }
+}
@@ -0,0 +1,111 @@
+package cz.zcu.kiv.ups.agarclient.network;
+
+/**
+ * Management interface of network metrics
+ *
+ * @author martin.ubl
+ */
+public interface NetworkMetricsMBean
+{
+    /**
+     * Retrieves opcode names, indexed by opcode
+     * @return opcode names
+     */
+    public String[] getOpcodeNames();
+
+    /**
+     * Retrieves count of received packets for each opcode
+     * @return received packet counts
+     */
+    public long[] getPacketsIn();
+
+    /**
+     * Retrieves count of received bytes (including headers) for each opcode
+     * @return received byte counts
+     */
+    public long[] getBytesIn();
+
+    /**
+     * Retrieves count of sent packets for each opcode
+     * @return sent packet counts
+     */
+    public long[] getPacketsOut();
+
+    /**
+     * Retrieves count of sent bytes (including headers) for each opcode
+     * @return sent byte counts
+     */
+    public long[] getBytesOut();
+
+    /**
+     * Retrieves total time spent by decoding and handling received packets for each opcode
+     * @return time in nanoseconds
+     */
+    public long[] getDecodeTimeNanos();
+
+    /**
+     * Retrieves total count of received packets
+     * @return packet count
+     */
+    public long getTotalPacketsIn();
+
+    /**
+     * Retrieves total count of sent packets
+     * @return packet count
+     */
+    public long getTotalPacketsOut();
+
+    /**
+     * Retrieves total count of received bytes
+     * @return byte count
+     */
+    public long getTotalBytesIn();
+
+    /**
+     * Retrieves total count of sent bytes
+     * @return byte count
+     */
+    public long getTotalBytesOut();
+
+    /**
+     * Retrieves count of packets waiting to be sent
+     * @return packet count
+     */
+    public int getSendQueueDepth();
+
+    /**
+     * Retrieves count of packets sent since last received packet
+     * @return packet count
+     */
+    public int getNoresponsePacketCount();
+
+    /**
+     * Retrieves count of attempts to reconnect after connection loss
+     * @return attempt count
+     */
+    public long getReconnectAttemptCount();
+
+    /**
+     * Retrieves count of successful reconnects after connection loss
+     * @return reconnect count
+     */
+    public long getReconnectCount();
+
+    /**
+     * Retrieves connection state names, indexed the same way as state times
+     * @return state names
+     */
+    public String[] getStateNames();
+
+    /**
+     * Retrieves total time spent in each connection state (including the current one)
+     * @return time in milliseconds
+     */
+    public long[] getStateTimeMillis();
+
+    /**
+     * Retrieves current connection state name
+     * @return state name
+     */
+    public String getCurrentState();
+}
@@ -1,17 +1,24 @@
 package cz.zcu.kiv.ups.agarclient.network;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.Socket;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import cz.zcu.kiv.ups.agarclient.enums.Opcodes;
 import cz.zcu.kiv.ups.agarclient.main.Main;
 import cz.zcu.kiv.ups.agarclient.main.NetworkStateReceiver;
+import cz.zcu.kiv.ups.agarclient.misc.Log;
 
 /**
  * Networking class and thread
@@ -26,21 +33,29 @@ public class Networking extends Thread
     /** packet limit without response */
     private static final int SOCKET_NORESPONSE_PKT_LIMIT = 30;
 
+    /** packet header size (opcode + size) */
+    private static final int PACKET_HEADER_SIZE = GamePacket.HEADER_SIZE;
+    /** maximum count of packets waiting for writer thread */
+    private static final int SEND_QUEUE_CAPACITY = 1024;
+
     /** Only one networking class instance (singleton) */
     private static Networking INSTANCE = null;
 
-    /** client socket */
-    private Socket s;
-    /** socket input stream */
-    private InputStream istream;
-    /** socket output stream */
-    private OutputStream ostream;
+    /** client socket channel */
+    private volatile SocketChannel channel;
+    /** selector used for waiting for incoming data */
+    private Selector readSelector;
+    /** selector used for waiting for socket to be writable again */
+    private Selector writeSelector;
+
+    /** decoder of received data, accumulating partially received packets */
+    private final FrameDecoder frameDecoder = new FrameDecoder();
     /** remote port used */
     private int port;
     /** remote host address */
     private String host;
     /** is connected? */
-    private boolean isConnected = false;
+    private volatile boolean isConnected = false;
 
     /** flag for socket shutdown */
     private boolean isShuttingDown = false;
@@ -51,19 +66,32 @@ public class Networking extends Thread
     /** State of our connection to server */
     private ConnectionState connectionState = ConnectionState.IDLE;
 
-    /** packet send queue */
+    /** packet send queue, for packets sent before connection was established */
     private Queue<GamePacket> sendQueue = new LinkedList<GamePacket>();
 
+    /** outgoing packet queue, drained by writer thread */
+    private final BlockingQueue<GamePacket> outQueue = new ArrayBlockingQueue<GamePacket>(SEND_QUEUE_CAPACITY);
+    /** packets drained from outgoing queue to be written at once (accessed only by writer thread) */
+    private final List<GamePacket> sendBatch = new ArrayList<GamePacket>(SEND_QUEUE_CAPACITY);
+    /** raw buffers of batched packets, written by a single gathering write (accessed only by writer thread) */
+    private final ByteBuffer[] sendBuffers = new ByteBuffer[SEND_QUEUE_CAPACITY];
+    /** writer thread */
+    private Thread writerThread = null;
+
     /** registered state receiver */
     private NetworkStateReceiver stateReceiver = null;
     /** generic state receiver */
     private NetworkStateReceiver genericReceiver = new GenericPacketHandler();
 
+    /** network metrics */
+    private final NetworkMetrics metrics = new NetworkMetrics(this);
+
     /**
      * Implicit constructor, just have to be private due to singleton pattern used
      */
     private Networking()
     {
+        metrics.registerMBean();
     }
 
     /**
@@ -105,6 +133,40 @@ public class Networking extends Thread
         noresponsePacketCount = 0;
     }
 
+    /**
+     * Retrieves packet count sent without response
+     * @return packet count
+     */
+    int getNoresponsePacketCount()
+    {
+        return noresponsePacketCount;
+    }
+
+    /**
+     * Retrieves count of packets waiting to be sent
+     * @return packet count
+     */
+    int getSendQueueDepth()
+    {
+        int depth = outQueue.size();
+
+        synchronized (this)
+        {
+            depth += sendQueue.size();
+        }
+
+        return depth;
+    }
+
+    /**
+     * Retrieves network metrics
+     * @return metrics
+     */
+    public NetworkMetrics getMetrics()
+    {
+        return metrics;
+    }
+
     /**
      * Register network state receiver
      * @param receiver registered receiver
@@ -131,38 +193,51 @@ public class Networking extends Thread
     {
         try
         {
-            s = new Socket(host, port);
-
-            // sets socket i/o timeout
-            //s.setSoTimeout(SOCKET_IO_TIMEOUT);
+            // connect in blocking mode, there's nothing else to do until we are connected
+            channel = SocketChannel.open(new InetSocketAddress(host, port));
         }
         catch (IOException e)
         {
-            System.out.println("Connection to " + host + ":" + port + " refused");
+            Log.info("Connection to " + host + ":" + port + " refused");
             return false;
         }
-        catch (IllegalArgumentException e)
+        catch (UnresolvedAddressException e)
         {
-            System.out.println("Illegal port - not in allowed range 0 - 65535");
+            Log.info("Connection to " + host + ":" + port + " refused");
             return false;
         }
-        catch (NullPointerException e)
+        catch (IllegalArgumentException e)
         {
-            System.out.println("Hostname not supplied");
+            if (host == null)
+                Log.error("Hostname not supplied");
+            else
+                Log.error("Illegal port - not in allowed range 0 - 65535");
             return false;
         }
 
         try
         {
-            istream = s.getInputStream();
-            ostream = s.getOutputStream();
-
             // Set receive buffer size to maximum (unsigned) short value
-            // this will allow us to wait for whole packets instead of reading by fragments
-            s.setReceiveBufferSize(65535);
+            // this will allow the kernel to hold whole packets for us
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, 65535);
+
+            // switch to non-blocking mode and register for readiness notifications
+            channel.configureBlocking(false);
+
+            if (readSelector == null)
+                readSelector = Selector.open();
+            if (writeSelector == null)
+                writeSelector = Selector.open();
+
+            channel.register(readSelector, SelectionKey.OP_READ);
+            channel.register(writeSelector, SelectionKey.OP_WRITE);
+
+            // drop any leftovers from previous connection
+            frameDecoder.clear();
         }
         catch (Exception e)
         {
+            closeChannel();
             return false;
         }
 
@@ -170,56 +245,184 @@ public class Networking extends Thread
     }
 
     /**
-     * Sends packet - internal thread-safe method
-     * @param msg packet to be sent
+     * Closes socket channel (if any) and wakes up the selector, so the networking thread
+     * notices the change
+     */
+    private void closeChannel()
+    {
+        try
+        {
+            if (channel != null)
+                channel.close();
+        }
+        catch (IOException e)
+        {
+            //
+        }
+
+        if (readSelector != null)
+            readSelector.wakeup();
+    }
+
+    /**
+     * Is the socket channel open?
+     * @return is open?
+     */
+    private boolean isChannelOpen()
+    {
+        return channel != null && channel.isOpen();
+    }
+
+    /**
+     * Writes all buffers to socket using gathering writes; when the socket send buffer is full,
+     * waits for the socket to become writable again
+     * @param bufs buffers to be written
+     * @param count count of buffers used
+     * @throws IOException on write error or write timeout
+     */
+    private void _writeFully(ByteBuffer[] bufs, int count) throws IOException
+    {
+        int first = 0;
+
+        while (first < count)
+        {
+            if (channel.write(bufs, first, count - first) == 0)
+            {
+                // nothing was written, socket send buffer is full
+                if (writeSelector.select(SOCKET_IO_TIMEOUT) == 0)
+                    throw new IOException("Write timed out");
+
+                writeSelector.selectedKeys().clear();
+            }
+
+            // skip buffers written completely
+            while (first < count && !bufs[first].hasRemaining())
+                first++;
+        }
+    }
+
+    /**
+     * Sends all packets from batch using a single gathering write - called only from writer thread
+     * @param batch packets to be sent
      */
-    private void _sendPacket(GamePacket msg)
+    private void _sendPackets(List<GamePacket> batch)
     {
-        increaseNoresponsePackets();
+        // connection was lost while the packets were waiting, drop them
+        if (!isConnected)
+            return;
 
         try
         {
-            System.out.println("Sending: "+msg.getOpcode());
-            // write raw data and flush to be sent
-            ostream.write(msg.getRaw());
-            ostream.flush();
+            int count = 0;
+
+            for (GamePacket msg : batch)
+            {
+                increaseNoresponsePackets();
 
+                if (Log.isOpcodeTraceEnabled(msg.getOpcode()))
+                    Log.trace("Sending: "+msg.getOpcode());
+
+                // packets are written directly from their own buffers, no copying needed
+                sendBuffers[count++] = msg.getRaw();
+            }
+
+            _writeFully(sendBuffers, count);
+
+            for (GamePacket msg : batch)
+                metrics.packetSent(msg.getOpcode(), PACKET_HEADER_SIZE + msg.getSize());
+
+            // connection state change is reported by networking thread, once it notices the socket was closed
             if (noresponsePacketCount > SOCKET_NORESPONSE_PKT_LIMIT)
             {
-                System.out.println("Limit of non-responded packets reached, closing");
-                s.close();
-                isConnected = false;
-                _sendConnectionStateChange(ConnectionState.DISCONNECTED_RETRY);
+                Log.warn("Limit of non-responded packets reached, closing");
+                closeChannel();
             }
         }
         catch (Exception e)
         {
-            System.err.println("Write error: "+e.toString());
+            if (isChannelOpen())
+            {
+                Log.error("Write error: "+e.toString());
 
-            isConnected = false;
-            _sendConnectionStateChange(ConnectionState.DISCONNECTED_RETRY);
+                closeChannel();
+            }
+        }
+    }
 
-            return;
+    /**
+     * Writer thread loop - waits for packets in outgoing queue, and writes everything
+     * accumulated since last write as a single batch
+     */
+    private void _writerLoop()
+    {
+        while (true)
+        {
+            try
+            {
+                sendBatch.add(outQueue.take());
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+
+            // take everything else, what came in the meantime
+            outQueue.drainTo(sendBatch);
+
+            _sendPackets(sendBatch);
+
+            // return packets to pool
+            for (int i = 0; i < sendBatch.size(); i++)
+            {
+                sendBatch.get(i).recycle();
+                sendBuffers[i] = null;
+            }
+            sendBatch.clear();
+        }
+    }
+
+    /**
+     * Passes packet to writer thread; when the outgoing queue is full, the packet is dropped
+     * @param msg packet to be sent
+     */
+    private void _offerToWriter(GamePacket msg)
+    {
+        if (!outQueue.offer(msg))
+        {
+            Log.warn("Send queue full, dropping packet "+msg.getOpcode());
+            msg.recycle();
         }
     }
 
     /**
-     * Enqueues packet for sending
+     * Enqueues packet for sending; never blocks the caller
      * @param msg packet to be sent
      */
     public void sendPacket(GamePacket msg)
     {
         if (isConnected)
-            _sendPacket(msg);
-        else
         {
-			if (msg.getOpcode() > 0x07 && msg.getOpcode() < 0x25)
-				return;
+            _offerToWriter(msg);
+            return;
+        }
 
-            synchronized (this)
+        synchronized (this)
+        {
+            // connection may have been established in the meantime; backlog is drained with this
+            // monitor held before isConnected is set, so the packet still goes after it
+            if (isConnected)
             {
-                sendQueue.add(msg);
+                _offerToWriter(msg);
+                return;
             }
+
+			if (msg.getOpcode() > 0x07 && msg.getOpcode() < 0x25)
+			{
+				msg.recycle();
+				return;
+			}
+
+            sendQueue.add(msg);
         }
     }
 
@@ -242,85 +445,70 @@ public class Networking extends Thread
     }
 
     /**
-     * Reads packet from socket - warning, this method should be called only if we
-     * found out, that there's something waiting on input
-     *
-     * @return read packet
+     * Waits for incoming data and appends them to receive buffer; this call blocks
+     * (without consuming CPU) until there's something to read or the selector is woken up
      */
-    private GamePacket _readPacket()
+    private void _receiveData()
     {
-        int opcode = 0, size = 0;
-        byte[] header, data;
         try
         {
-            // allocate space for header
-            header = new byte[4];
-            // read header
-            istream.read(header, 0, 4);
-
-            // fix endianity
-            ByteBuffer bb = ByteBuffer.allocate(header.length);
-            bb.put(header);
-            bb.rewind();
-
-            // read header contents
-            opcode = bb.getShort();
-            bb.rewind();
-            size = bb.getInt() & 0xFFFF; // there is always a way, how to get unsigned short range
-
-            // wait for needed bytes count
-            while (istream.available() < size)
-                Thread.yield();
-
-            // read data (blocking call)
-            data = new byte[size];
-            istream.read(data, 0, size);
-
-            clearNoresponsePackets();
-
-            System.out.println("Receiving packet "+opcode);
-
-            if (opcode < Opcodes.OPCODE_NONE.val() || opcode > Opcodes.OPCODE_MAX.val())
-            {
-                isConnected = false;
-                s.close();
-                _sendConnectionStateChange(ConnectionState.CONNECTION_FAILED_SERVER_BAD);
-                return null;
-            }
+            if (readSelector.select() == 0)
+                return;
 
-            // build packet and return it
-            return new GamePacket((short)opcode, (short)size, data);
-        }
-        catch (SocketException e)
-        {
-            if (isConnected)
-            {
-                System.err.println("Read error "+e.toString());
+            readSelector.selectedKeys().clear();
 
-                isConnected = false;
-                _sendConnectionStateChange(ConnectionState.DISCONNECTED_RETRY);
-            }
+            // read everything available (or as much as fits into buffer)
+            int rd = channel.read(frameDecoder.getBuffer());
+            if (rd < 0)
+                throw new IOException("Connection closed by remote host");
         }
         catch (IOException e)
         {
             if (isConnected)
             {
-                System.err.println("Read error "+e.toString());
+                Log.error("Read error "+e.toString());
 
                 isConnected = false;
+                closeChannel();
                 _sendConnectionStateChange(ConnectionState.DISCONNECTED_RETRY);
             }
         }
         catch (Exception e)
         {
-            System.err.println("Generic read error: "+e.toString());
+            Log.error("Generic read error: "+e.toString());
+        }
+    }
+
+    /**
+     * Reads packet from receive buffer - warning, this method should be called only if we
+     * found out, that there's a complete packet waiting in buffer
+     *
+     * @return read packet - view into receive buffer, valid until the buffer is compacted
+     */
+    private GamePacket _readPacket()
+    {
+        GamePacket pkt = frameDecoder.nextPacket();
+        int opcode = pkt.getOpcode();
+
+        clearNoresponsePackets();
+
+        if (Log.isOpcodeTraceEnabled(opcode))
+            Log.trace("Receiving packet "+opcode);
+
+        if (opcode < Opcodes.OPCODE_NONE.val() || opcode > Opcodes.OPCODE_MAX.val())
+        {
+            isConnected = false;
+            closeChannel();
+            _sendConnectionStateChange(ConnectionState.CONNECTION_FAILED_SERVER_BAD);
+            return null;
         }
 
-        return null;
+        return pkt;
     }
 
     /**
-     * Reads packet from network socket and passes it by to hooked receiver
+     * Reads packet from network socket and passes it by to hooked receiver; handlers, which
+     * need to keep the packet after they return, have to retain it
      */
     private void _readAndDispatchPacket()
     {
@@ -329,14 +517,27 @@ public class Networking extends Thread
         if (pkt == null)
             return;
 
-        synchronized (this)
+        int opcode = pkt.getOpcode();
+        int size = pkt.getSize();
+        long start = System.nanoTime();
+
+        try
         {
-            // at first, try to handle by generic receiver. If successful, do not handle further
-            if (genericReceiver.OnPacketReceived(pkt))
-                return;
+            synchronized (this)
+            {
+                // at first, try to handle by generic receiver. If successful, do not handle further
+                if (genericReceiver.OnPacketReceived(pkt))
+                    return;
+
+                if (stateReceiver != null)
+                    stateReceiver.OnPacketReceived(pkt);
+            }
+        }
+        finally
+        {
+            pkt.release();
 
-            if (stateReceiver != null)
-                stateReceiver.OnPacketReceived(pkt);
+            metrics.packetReceived(opcode, PACKET_HEADER_SIZE + size, System.nanoTime() - start);
         }
     }
 
@@ -352,6 +553,7 @@ public class Networking extends Thread
             stateReceiver.OnConnectionStateChanged(state);
 
         connectionState = state;
+        metrics.stateChanged(state);
     }
 
     /**
@@ -361,6 +563,19 @@ public class Networking extends Thread
     {
         isShuttingDown = false;
 
+        if (writerThread == null)
+        {
+            writerThread = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    _writerLoop();
+                }
+            }, "Networking writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+
         if (!isAlive())
             start();
         else
@@ -378,6 +593,9 @@ public class Networking extends Thread
     public void shutDown()
     {
         isShuttingDown = true;
+
+        if (readSelector != null)
+            readSelector.wakeup();
     }
 
     /**
@@ -389,30 +607,19 @@ public class Networking extends Thread
         _sendConnectionStateChange(ConnectionState.DISCONNECTED);
         isConnected = false;
 
-        try
-        {
-            s.close();
-        }
-        catch (IOException e)
-        {
-            e.printStackTrace();
-        }
+        closeChannel();
     }
 
     public void simulateSessionTimeout()
     {
-        try {
-            s.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        closeChannel();
         isConnected = false;
         _sendConnectionStateChange(ConnectionState.DISCONNECTED_RETRY);
     }
 
     private void sendRestoreSession()
     {
-        GamePacket gp = new GamePacket(Opcodes.CP_RESTORE_SESSION.val());
+        GamePacket gp = GamePacket.obtain(Opcodes.CP_RESTORE_SESSION.val());
         gp.putString(Main.getSessionKey());
 		gp.putInt(Main.getPlayerId());
         sendPacket(gp);
@@ -423,6 +630,9 @@ public class Networking extends Thread
     {
         while (!isShuttingDown)
         {
+            if (connectionState == ConnectionState.DISCONNECTED_RETRY)
+                metrics.reconnectAttempted();
+
             // at first, attempt to connect to remote host
             if (!connectToServer())
             {
@@ -447,7 +657,7 @@ public class Networking extends Thread
                 {
                     try
                     {
-                        System.out.println("Connection to "+s.getInetAddress()+":"+s.getPort()+" failed, retrying in 3s");
+                        Log.info("Connection to "+host+":"+port+" failed, retrying in 3s");
                         Thread.sleep(3000);
                     }
                     catch (InterruptedException e)
@@ -459,27 +669,51 @@ public class Networking extends Thread
                 continue;
             }
 
-            System.out.println("Connected to "+s.getInetAddress()+":"+s.getPort());
+            Log.info("Connected to "+host+":"+port);
 
             if (connectionState == ConnectionState.DISCONNECTED_RETRY)
             {
-                System.out.println("Attempting to restore old session");
+                Log.info("Attempting to restore old session");
+                metrics.reconnected();
                 sendRestoreSession();
             }
 
             _sendConnectionStateChange(ConnectionState.CONNECTED);
 
-            isConnected = true;
+            // packets left from previous connection are no longer valid
+            GamePacket stale;
+            while ((stale = outQueue.poll()) != null)
+                stale.recycle();
 
-            // while there's some packets to be sent, send them
-            while (!isPacketQueueEmpty())
-                _sendPacket(getPacketToSend());
+            // pass packets sent before connecting to writer first, and only then let others send
+            // directly, so nothing overtakes login or session restore packet
+            synchronized (this)
+            {
+                GamePacket queued;
+                while ((queued = getPacketToSend()) != null)
+                    _offerToWriter(queued);
+
+                isConnected = true;
+            }
 
             // this loop will be repeated until there's a chance something will need to be sent/received to/from network
-            while (!s.isClosed() && !isShuttingDown && isConnected)
+            while (isChannelOpen() && !isShuttingDown && isConnected)
+            {
+                // wait for something to arrive on socket
+                _receiveData();
+
+                // dispatch all packets received completely, the incomplete rest stays in buffer
+                while (isConnected && frameDecoder.hasCompletePacket())
+                    _readAndDispatchPacket();
+
+                frameDecoder.compact();
+            }
+
+            // socket was closed by writer thread, report lost connection from here
+            if (isConnected && !isShuttingDown)
             {
-                // while there's something waiting on socket, read it and dispatch it
-                _readAndDispatchPacket();
+                isConnected = false;
+                _sendConnectionStateChange(ConnectionState.DISCONNECTED_RETRY);
             }
 
             // if we were disconnected by external signal (i.e. kicked by server), wait for another user-supplied signal
@@ -500,15 +734,7 @@ public class Networking extends Thread
         }
 
         // finally, close everything
-        try
-        {
-            if (s != null)
-                s.close();
-        }
-        catch (IOException e)
-        {
-            //
-        }
+        closeChannel();
 
         // and send state change
         _sendConnectionStateChange(ConnectionState.DISCONNECTED);
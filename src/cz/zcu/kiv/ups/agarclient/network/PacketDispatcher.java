@@ -0,0 +1,129 @@
+package cz.zcu.kiv.ups.agarclient.network;
+
+import cz.zcu.kiv.ups.agarclient.enums.Opcodes;
+
+/**
+ * Packet dispatcher - table of packet handlers indexed by opcode, so the dispatch is
+ * just a single array lookup. Also counts handled and unhandled packets for each opcode.
+ *
+ * @author martin.ubl
+ */
+public class PacketDispatcher
+{
+    /** size of handler table */
+    private static final int TABLE_SIZE = Opcodes.OPCODE_MAX.val() + 1;
+
+    /** handlers indexed by opcode */
+    private final PacketHandler[] handlers = new PacketHandler[TABLE_SIZE];
+
+    /** count of handled packets for each opcode */
+    private final long[] handledCounts = new long[TABLE_SIZE];
+    /** count of unhandled packets for each opcode */
+    private final long[] unhandledCounts = new long[TABLE_SIZE];
+    /** count of packets with opcode out of table range */
+    private long invalidCount = 0;
+
+    /**
+     * Registers handler for opcode; previously registered handler is replaced
+     * @param opcode packet opcode
+     * @param handler handler to be called
+     */
+    public void register(Opcodes opcode, PacketHandler handler)
+    {
+        handlers[opcode.val()] = handler;
+    }
+
+    /**
+     * Unregisters handler of opcode
+     * @param opcode packet opcode
+     */
+    public void unregister(Opcodes opcode)
+    {
+        handlers[opcode.val()] = null;
+    }
+
+    /**
+     * Passes packet to handler registered for its opcode
+     * @param packet received packet
+     * @return was the packet handled?
+     */
+    public boolean dispatch(GamePacket packet)
+    {
+        int opcode = packet.getOpcode();
+
+        if (opcode < 0 || opcode >= TABLE_SIZE)
+        {
+            invalidCount++;
+            return false;
+        }
+
+        PacketHandler handler = handlers[opcode];
+        if (handler == null)
+        {
+            unhandledCounts[opcode]++;
+            return false;
+        }
+
+        handler.handle(packet);
+        handledCounts[opcode]++;
+
+        return true;
+    }
+
+    /**
+     * Retrieves count of handled packets with given opcode
+     * @param opcode packet opcode
+     * @return count of handled packets
+     */
+    public long getHandledCount(Opcodes opcode)
+    {
+        return handledCounts[opcode.val()];
+    }
+
+    /**
+     * Retrieves count of received packets with given opcode, which had no handler
+     * @param opcode packet opcode
+     * @return count of unhandled packets
+     */
+    public long getUnhandledCount(Opcodes opcode)
+    {
+        return unhandledCounts[opcode.val()];
+    }
+
+    /**
+     * Retrieves count of packets with opcode out of known range
+     * @return count of invalid packets
+     */
+    public long getInvalidCount()
+    {
+        return invalidCount;
+    }
+
+    /**
+     * Retrieves human readable counts of handled and unhandled packets, for opcodes received at least once
+     * @return statistics
+     */
+    public String getStatistics()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for (Opcodes opcode : Opcodes.values())
+        {
+            int op = opcode.val();
+            // OPCODE_MAX shares value with the last real opcode
+            if (opcode == Opcodes.OPCODE_MAX || (handledCounts[op] == 0 && unhandledCounts[op] == 0))
+                continue;
+
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(opcode.name()).append(' ').append(handledCounts[op]);
+            if (unhandledCounts[op] > 0)
+                sb.append(" (").append(unhandledCounts[op]).append(" unhandled)");
+        }
+
+        if (sb.length() == 0)
+            sb.append("no packets");
+
+        return sb.append(", ").append(invalidCount).append(" invalid").toString();
+    }
+}
@@ -0,0 +1,15 @@
+package cz.zcu.kiv.ups.agarclient.network;
+
+/**
+ * Interface for handlers of single packet type (opcode)
+ *
+ * @author martin.ubl
+ */
+public interface PacketHandler
+{
+    /**
+     * Called when packet with registered opcode is received
+     * @param packet received packet
+     */
+    public void handle(GamePacket packet);
+}
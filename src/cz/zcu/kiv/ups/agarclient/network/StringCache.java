@@ -0,0 +1,64 @@
+package cz.zcu.kiv.ups.agarclient.network;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Cache of strings decoded from packets; strings, which repeat often (player names,
+ * room names), are not decoded again when received. The cache is direct-mapped, so it
+ * has fixed size and newer string simply replaces older one with colliding hash.
+ *
+ * Not thread-safe, each thread (receiver) should use its own instance.
+ *
+ * @author martin.ubl
+ */
+public class StringCache
+{
+    /** encoded contents of cached strings */
+    private final byte[][] keys;
+    /** cached strings */
+    private final String[] strings;
+    /** mask for converting hash to slot index */
+    private final int mask;
+
+    /**
+     * Cache constructor
+     * @param capacity count of cache slots, rounded up to power of two
+     */
+    public StringCache(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+
+        keys = new byte[size][];
+        strings = new String[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Retrieves string from cache, or decodes and caches it, if not present
+     * @param buf buffer containing UTF-8 encoded string
+     * @param off string offset in buffer
+     * @param len string length in bytes
+     * @return decoded string
+     */
+    public String get(byte[] buf, int off, int len)
+    {
+        int hash = 1;
+        for (int i = off; i < off + len; i++)
+            hash = 31 * hash + buf[i];
+
+        // spread higher bits to lower ones, the mask takes just a few of them
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        byte[] key = keys[slot];
+        if (key != null && Arrays.equals(key, 0, key.length, buf, off, off + len))
+            return strings[slot];
+
+        String str = new String(buf, off, len, StandardCharsets.UTF_8);
+
+        keys[slot] = Arrays.copyOfRange(buf, off, off + len);
+        strings[slot] = str;
+
+        return str;
+    }
+}